@@ -1,3 +1,4 @@
+import me.champeau.jmh.JmhParameters
 import org.ajoberstar.grgit.Grgit
 import org.cadixdev.gradle.licenser.LicenseExtension
 
@@ -9,6 +10,7 @@ plugins {
     id("idea")
     id("com.jfrog.artifactory")
     id("checkstyle")
+    id("me.champeau.jmh")
 }
 
 
@@ -53,6 +55,23 @@ dependencies {
     "testImplementation"("org.junit.jupiter:junit-jupiter-params:${Versions.JUPITER}")
     "testImplementation"("org.hamcrest:hamcrest:2.2")
     "testRuntimeOnly"("org.junit.jupiter:junit-jupiter-engine:${Versions.JUPITER}")
+
+    "jmhRuntimeOnly"("com.mysql:mysql-connector-j:8.0.32")
+}
+
+// Run with `gradlew jmh`. Narrow the run with -PjmhIncludes=<regex> and
+// -PjmhThreads=<count>, and benchmark MySQLCache as well by passing a
+// JDBC URL with -PjmhMysqlUrl=jdbc:mysql://...
+configure<JmhParameters> {
+    jmhVersion.set(Versions.JMH)
+    profilers.add("gc")
+    resultFormat.set("JSON")
+    (project.findProperty("jmhIncludes") as String?)?.let { includes.add(it) }
+    (project.findProperty("jmhThreads") as String?)?.let { threads.set(it.toInt()) }
+    (project.findProperty("jmhMysqlUrl") as String?)?.let {
+        jvmArgsAppend.add("-Dsquirrelid.jmh.mysql=$it")
+        benchmarkParameters.put("cacheType", project.objects.listProperty<String>().value(listOf("hashmap", "bounded", "sqlite", "sqlite-readers", "mysql")))
+    }
 }
 
 java {
@@ -36,4 +36,5 @@ dependencies {
     implementation("gradle.plugin.org.cadixdev.gradle:licenser:0.6.1")
     implementation("org.ajoberstar.grgit:grgit-gradle:4.1.0")
     implementation("org.jfrog.buildinfo:build-info-extractor-gradle:4.21.0")
+    implementation("me.champeau.jmh:jmh-gradle-plugin:0.7.0")
 }
@@ -2,4 +2,5 @@ object Versions {
     const val JUNIT = "4.13.2"
     const val JUPITER = "5.6.1"
     const val GUAVA = "31.1-jre"
+    const val JMH = "1.36"
 }
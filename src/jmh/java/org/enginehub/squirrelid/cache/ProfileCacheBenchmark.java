@@ -0,0 +1,198 @@
+/*
+ * SquirrelID, a UUID library for Minecraft
+ * Copyright (C) sk89q <http://www.sk89q.com>
+ * Copyright (C) SquirrelID team and contributors
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.enginehub.squirrelid.cache;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Iterables;
+import org.enginehub.squirrelid.Profile;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nullable;
+
+/**
+ * Measures the {@link ProfileCache} implementations with a varying number
+ * of stored entries and batch sizes.
+ *
+ * <p>The cache is shared by all benchmark threads, so running with more
+ * than one thread measures contention. {@link MySQLCache} is only
+ * included if a JDBC URL is given in the {@code squirrelid.jmh.mysql}
+ * system property.</p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ProfileCacheBenchmark {
+
+    private static final int FILL_BATCH_SIZE = 10000;
+
+    @Param({"hashmap", "bounded", "sqlite", "sqlite-readers"})
+    public String cacheType;
+
+    @Param({"1000", "1000000"})
+    public int entryCount;
+
+    @Param({"1", "100"})
+    public int batchSize;
+
+    private ProfileCache cache;
+    private UUID[] storedIds;
+    @Nullable private File file;
+    @Nullable private Connection connection;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException, SQLException {
+        switch (cacheType) {
+            case "hashmap":
+                cache = new HashMapCache();
+                break;
+            case "bounded":
+                cache = BoundedProfileCache.builder().maximumSize(entryCount).build();
+                break;
+            case "sqlite":
+                file = Files.createTempFile("squirrelid-jmh", ".sqlite").toFile();
+                cache = new SQLiteCache(file);
+                break;
+            case "sqlite-readers":
+                file = Files.createTempFile("squirrelid-jmh", ".sqlite").toFile();
+                cache = SQLiteCache.builder(file)
+                    .readerConnections(Runtime.getRuntime().availableProcessors())
+                    .build();
+                break;
+            case "mysql":
+                String url = System.getProperty("squirrelid.jmh.mysql");
+                if (url == null) {
+                    throw new IllegalStateException("Set squirrelid.jmh.mysql to a JDBC URL to benchmark MySQLCache");
+                }
+                connection = DriverManager.getConnection(url);
+                cache = MySQLCache.create(connection, "squirrelid_jmh");
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown cache type " + cacheType);
+        }
+
+        storedIds = new UUID[entryCount];
+        List<Profile> profiles = new ArrayList<>(Math.min(entryCount, FILL_BATCH_SIZE));
+        for (int i = 0; i < entryCount; i++) {
+            storedIds[i] = UUID.randomUUID();
+            profiles.add(new Profile(storedIds[i], "player" + i));
+            if (profiles.size() == FILL_BATCH_SIZE) {
+                cache.putAll(profiles);
+                profiles.clear();
+            }
+        }
+        cache.putAll(profiles);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws SQLException {
+        if (cache instanceof SQLiteCache sqlite) {
+            sqlite.close();
+        }
+        if (connection != null) {
+            connection.createStatement().execute("DROP TABLE squirrelid_jmh");
+            connection.close();
+        }
+        if (file != null && !file.delete()) {
+            file.deleteOnExit();
+        }
+    }
+
+    @Benchmark
+    public void put() {
+        Random random = ThreadLocalRandom.current();
+        cache.put(new Profile(storedIds[random.nextInt(entryCount)], "renamed" + random.nextInt(1000)));
+    }
+
+    @Benchmark
+    public void putAll() {
+        Random random = ThreadLocalRandom.current();
+        List<Profile> profiles = new ArrayList<>(batchSize);
+        for (int i = 0; i < batchSize; i++) {
+            profiles.add(new Profile(storedIds[random.nextInt(entryCount)], "renamed" + random.nextInt(1000)));
+        }
+        cache.putAll(profiles);
+    }
+
+    @Benchmark
+    public Profile getIfPresent() {
+        return cache.getIfPresent(storedIds[ThreadLocalRandom.current().nextInt(entryCount)]);
+    }
+
+    @Benchmark
+    public ImmutableMap<UUID, Profile> getAllPresent() {
+        return cache.getAllPresent(randomIds(batchSize));
+    }
+
+    @Benchmark
+    public Profile getByName() {
+        return cache.getByName("player" + ThreadLocalRandom.current().nextInt(entryCount));
+    }
+
+    @Benchmark
+    public ImmutableMap<UUID, Profile> getAllPresentWithMisses() {
+        return cache.getAllPresent(Iterables.concat(randomIds(batchSize / 2), missingIds(batchSize - batchSize / 2)));
+    }
+
+    private List<UUID> randomIds(int count) {
+        Random random = ThreadLocalRandom.current();
+        List<UUID> ids = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            ids.add(storedIds[random.nextInt(entryCount)]);
+        }
+        return ids;
+    }
+
+    private static List<UUID> missingIds(int count) {
+        Random random = ThreadLocalRandom.current();
+        List<UUID> ids = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            ids.add(new UUID(random.nextLong(), random.nextLong()));
+        }
+        return ids;
+    }
+
+}
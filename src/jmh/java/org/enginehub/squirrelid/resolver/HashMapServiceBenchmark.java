@@ -0,0 +1,109 @@
+/*
+ * SquirrelID, a UUID library for Minecraft
+ * Copyright (C) sk89q <http://www.sk89q.com>
+ * Copyright (C) SquirrelID team and contributors
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.enginehub.squirrelid.resolver;
+
+import com.google.common.collect.ImmutableList;
+import org.enginehub.squirrelid.Profile;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures lookups against a {@link HashMapService} with a varying number
+ * of entries and batch sizes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HashMapServiceBenchmark {
+
+    @Param({"1000", "1000000"})
+    public int entryCount;
+
+    @Param({"1", "100"})
+    public int batchSize;
+
+    private HashMapService service;
+    private String[] names;
+    private UUID[] ids;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        service = new HashMapService();
+        names = new String[entryCount];
+        ids = new UUID[entryCount];
+        for (int i = 0; i < entryCount; i++) {
+            names[i] = "player" + i;
+            ids[i] = UUID.randomUUID();
+            service.put(new Profile(ids[i], names[i]));
+        }
+    }
+
+    @Benchmark
+    public Profile findByName() throws IOException, InterruptedException {
+        return service.findByName(names[ThreadLocalRandom.current().nextInt(entryCount)]);
+    }
+
+    @Benchmark
+    public Profile findByUuid() throws IOException, InterruptedException {
+        return service.findByUuid(ids[ThreadLocalRandom.current().nextInt(entryCount)]);
+    }
+
+    @Benchmark
+    public ImmutableList<Profile> findAllByName() throws IOException, InterruptedException {
+        Random random = ThreadLocalRandom.current();
+        List<String> batch = new ArrayList<>(batchSize);
+        for (int i = 0; i < batchSize; i++) {
+            batch.add(names[random.nextInt(entryCount)]);
+        }
+        return service.findAllByName(batch);
+    }
+
+    @Benchmark
+    public ImmutableList<Profile> findAllByUuid() throws IOException, InterruptedException {
+        Random random = ThreadLocalRandom.current();
+        List<UUID> batch = new ArrayList<>(batchSize);
+        for (int i = 0; i < batchSize; i++) {
+            batch.add(ids[random.nextInt(entryCount)]);
+        }
+        return service.findAllByUuid(batch);
+    }
+
+}
@@ -20,8 +20,12 @@
 package org.enginehub.squirrelid.cache;
 
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import org.enginehub.squirrelid.Profile;
 
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
 import java.util.UUID;
 import javax.annotation.Nullable;
 
@@ -41,4 +45,22 @@ abstract class AbstractProfileCache implements ProfileCache {
         return getAllPresent(ImmutableList.of(uuid)).get(uuid);
     }
 
+    /**
+     * Key the found profiles by the names as they were requested.
+     *
+     * @param names the requested names
+     * @param found the found profiles, keyed by their lower case name
+     * @return a map of results
+     */
+    static ImmutableMap<String, Profile> byRequestedName(Iterable<String> names, Map<String, Profile> found) {
+        Map<String, Profile> results = new LinkedHashMap<>();
+        for (String name : names) {
+            Profile profile = found.get(name.toLowerCase(Locale.US));
+            if (profile != null) {
+                results.put(name, profile);
+            }
+        }
+        return ImmutableMap.copyOf(results);
+    }
+
 }
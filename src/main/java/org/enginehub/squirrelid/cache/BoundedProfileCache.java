@@ -0,0 +1,661 @@
+/*
+ * SquirrelID, a UUID library for Minecraft
+ * Copyright (C) sk89q <http://www.sk89q.com>
+ * Copyright (C) SquirrelID team and contributors
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.enginehub.squirrelid.cache;
+
+import com.google.common.base.Ticker;
+import com.google.common.cache.CacheStats;
+import com.google.common.collect.ImmutableMap;
+import org.enginehub.squirrelid.Profile;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.ToIntFunction;
+import javax.annotation.Nullable;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * An in-memory cache with a maximum size that evicts entries with the
+ * W-TinyLFU policy.
+ *
+ * <p>New entries go into a small window that is ordered by recency. An
+ * entry that falls out of the window is only admitted into the main part
+ * of the cache if it has been used more often recently than the entry it
+ * would replace, as estimated by a {@link FrequencySketch}. That keeps a
+ * scan of many one-off lookups from flushing out profiles that are used
+ * all the time. The main part is split into a probation and a protected
+ * segment, and entries are promoted to the protected segment when they
+ * are used again.</p>
+ *
+ * <p>Entries can also expire a fixed time after they were written or last
+ * read. Expired entries are never returned, and are removed when they are
+ * read, reached by eviction or by {@link #cleanUp()}.</p>
+ *
+ * <p>Names are indexed too, so profiles can be looked up by name. If
+ * several UUIDs were stored with the same name, the last one wins.</p>
+ *
+ * <p>Reads do not block each other. A read that cannot take the lock right
+ * away skips updating the eviction order rather than waiting.</p>
+ */
+public class BoundedProfileCache extends AbstractProfileCache {
+
+    private static final double WINDOW_RATIO = 0.01;
+    private static final double PROTECTED_RATIO = 0.8;
+
+    private final ConcurrentHashMap<UUID, Node> data = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Node> nameIndex = new ConcurrentHashMap<>();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final AccessOrder window = new AccessOrder();
+    private final AccessOrder probation = new AccessOrder();
+    private final AccessOrder protectedSegment = new AccessOrder();
+    private final WriteOrder writeOrder = new WriteOrder();
+    private final FrequencySketch sketch;
+    private final ToIntFunction<Profile> weigher;
+    private final long maximumWeight;
+    private final long windowMaximum;
+    private final long protectedMaximum;
+    private final long expireAfterWriteNanos;
+    private final long expireAfterAccessNanos;
+    private final Ticker ticker;
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+    private final LongAdder evictionCount = new LongAdder();
+    private long windowWeight;
+    private long mainWeight;
+    private long protectedWeight;
+
+    private BoundedProfileCache(Builder builder) {
+        this.maximumWeight = builder.maximumWeight;
+        this.weigher = builder.weigher;
+        this.windowMaximum = Math.max(1, (long) (maximumWeight * WINDOW_RATIO));
+        this.protectedMaximum = (long) ((maximumWeight - windowMaximum) * PROTECTED_RATIO);
+        this.expireAfterWriteNanos = builder.expireAfterWrite != null ? builder.expireAfterWrite.toNanos() : -1;
+        this.expireAfterAccessNanos = builder.expireAfterAccess != null ? builder.expireAfterAccess.toNanos() : -1;
+        this.ticker = builder.ticker;
+        this.sketch = new FrequencySketch(maximumWeight);
+    }
+
+    /**
+     * Create a new builder.
+     *
+     * @return a builder
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    @Override
+    public void putAll(Iterable<Profile> profiles) {
+        lock.lock();
+        try {
+            long now = ticker.read();
+            for (Profile profile : profiles) {
+                put(profile, now);
+            }
+            expire(now);
+            evict();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void put(Profile profile, long now) {
+        UUID uuid = profile.getUniqueId();
+        int weight = weigher.applyAsInt(profile);
+        checkState(weight >= 0, "Weigher returned a negative weight");
+        sketch.increment(uuid);
+
+        Node node = data.get(uuid);
+        if (node == null) {
+            node = new Node(uuid, profile.getName(), weight, now);
+            data.put(uuid, node);
+            nameIndex.put(profile.getName().toLowerCase(Locale.US), node);
+            node.segment = window;
+            window.addLast(node);
+            windowWeight += weight;
+            if (expireAfterWriteNanos >= 0) {
+                writeOrder.addLast(node);
+            }
+            return;
+        }
+
+        if (!node.name.equalsIgnoreCase(profile.getName())) {
+            nameIndex.remove(node.name.toLowerCase(Locale.US), node);
+        }
+        nameIndex.put(profile.getName().toLowerCase(Locale.US), node);
+        node.name = profile.getName();
+        node.writeTime = now;
+        node.accessTime = now;
+        if (expireAfterWriteNanos >= 0) {
+            writeOrder.moveToLast(node);
+        }
+        if (node.segment == window) {
+            windowWeight += weight - node.weight;
+        } else {
+            mainWeight += weight - node.weight;
+            if (node.segment == protectedSegment) {
+                protectedWeight += weight - node.weight;
+            }
+        }
+        node.weight = weight;
+        onAccess(node);
+    }
+
+    @Nullable
+    @Override
+    public Profile getIfPresent(UUID uuid) {
+        String name = get(uuid, ticker.read());
+        return name != null ? new Profile(uuid, name) : null;
+    }
+
+    @Override
+    public ImmutableMap<UUID, Profile> getAllPresent(Iterable<UUID> uuids) {
+        long now = ticker.read();
+        Map<UUID, Profile> results = new HashMap<>();
+        for (UUID uuid : uuids) {
+            String name = get(uuid, now);
+            if (name != null) {
+                results.put(uuid, new Profile(uuid, name));
+            }
+        }
+        return ImmutableMap.copyOf(results);
+    }
+
+    @Override
+    public ImmutableMap<String, Profile> getAllPresentByName(Iterable<String> names) {
+        long now = ticker.read();
+        Map<String, Profile> found = new HashMap<>();
+        for (String name : names) {
+            String key = name.toLowerCase(Locale.US);
+            Node node = nameIndex.get(key);
+            if (node == null) {
+                missCount.increment();
+                continue;
+            }
+            String current = get(node.uuid, now);
+            // The name may have changed since the index was read
+            if (current != null && current.equalsIgnoreCase(name)) {
+                found.put(key, new Profile(node.uuid, current));
+            }
+        }
+        return byRequestedName(names, found);
+    }
+
+    @Override
+    public ImmutableMap<UUID, Instant> getWriteTimes(Iterable<UUID> ids) {
+        // Write times are kept in ticker time, which only measures elapsed time
+        Instant wallNow = Clock.systemUTC().instant();
+        long now = ticker.read();
+        Map<UUID, Instant> results = new HashMap<>();
+        for (UUID uuid : ids) {
+            Node node = data.get(uuid);
+            if (node != null && !isExpired(node, now)) {
+                results.put(uuid, wallNow.minusNanos(now - node.writeTime));
+            }
+        }
+        return ImmutableMap.copyOf(results);
+    }
+
+    @Nullable
+    private String get(UUID uuid, long now) {
+        Node node = data.get(uuid);
+        if (node == null || isExpired(node, now)) {
+            missCount.increment();
+            if (node != null && lock.tryLock()) {
+                try {
+                    if (data.get(uuid) == node && isExpired(node, now)) {
+                        remove(node);
+                        evictionCount.increment();
+                    }
+                } finally {
+                    lock.unlock();
+                }
+            }
+            return null;
+        }
+
+        hitCount.increment();
+        node.accessTime = now;
+        String name = node.name;
+        if (lock.tryLock()) {
+            try {
+                if (data.get(uuid) == node) {
+                    sketch.increment(uuid);
+                    onAccess(node);
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+        return name;
+    }
+
+    /**
+     * Remove the entry for the given UUID.
+     *
+     * @param uuid the UUID
+     */
+    public void invalidate(UUID uuid) {
+        lock.lock();
+        try {
+            Node node = data.get(uuid);
+            if (node != null) {
+                remove(node);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Remove all entries.
+     */
+    public void invalidateAll() {
+        lock.lock();
+        try {
+            data.clear();
+            nameIndex.clear();
+            window.clear();
+            probation.clear();
+            protectedSegment.clear();
+            writeOrder.clear();
+            windowWeight = 0;
+            mainWeight = 0;
+            protectedWeight = 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Remove expired entries that are due for eviction now rather than
+     * waiting for the next write.
+     */
+    public void cleanUp() {
+        lock.lock();
+        try {
+            expire(ticker.read());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Get the number of entries, which may include expired entries that
+     * have not been removed yet.
+     *
+     * @return the number of entries
+     */
+    public long size() {
+        return data.size();
+    }
+
+    /**
+     * Get the total weight of the entries.
+     *
+     * @return the weight
+     */
+    public long getWeight() {
+        lock.lock();
+        try {
+            return windowWeight + mainWeight;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Get the number of hits, misses and evictions so far. Entries that
+     * expired are counted as evictions.
+     *
+     * @return the statistics
+     */
+    public CacheStats stats() {
+        return new CacheStats(hitCount.sum(), missCount.sum(), 0, 0, 0, evictionCount.sum());
+    }
+
+    private boolean isExpired(Node node, long now) {
+        return (expireAfterWriteNanos >= 0 && now - node.writeTime >= expireAfterWriteNanos)
+            || (expireAfterAccessNanos >= 0 && now - node.accessTime >= expireAfterAccessNanos);
+    }
+
+    /**
+     * Move an entry that was used to the end of its segment, promoting it
+     * to the protected segment if it was on probation.
+     */
+    private void onAccess(Node node) {
+        if (node.segment == probation) {
+            probation.remove(node);
+            node.segment = protectedSegment;
+            protectedSegment.addLast(node);
+            protectedWeight += node.weight;
+
+            while (protectedWeight > protectedMaximum && protectedSegment.head != null) {
+                Node demoted = protectedSegment.head;
+                protectedSegment.remove(demoted);
+                protectedWeight -= demoted.weight;
+                demoted.segment = probation;
+                probation.addLast(demoted);
+            }
+        } else {
+            node.segment.moveToLast(node);
+        }
+    }
+
+    /**
+     * Move entries that fall out of the window into the main segments,
+     * evicting whichever of the candidate and the victim is used less.
+     */
+    private void evict() {
+        long mainMaximum = maximumWeight - windowMaximum;
+        while (windowWeight > windowMaximum && window.head != null) {
+            Node candidate = window.head;
+            window.remove(candidate);
+            windowWeight -= candidate.weight;
+            candidate.segment = null;
+
+            boolean admitted = true;
+            while (mainWeight + candidate.weight > mainMaximum) {
+                Node victim = probation.head != null ? probation.head : protectedSegment.head;
+                if (victim == null || sketch.frequency(candidate.uuid) <= sketch.frequency(victim.uuid)) {
+                    admitted = false;
+                    break;
+                }
+                remove(victim);
+                evictionCount.increment();
+            }
+
+            if (admitted) {
+                candidate.segment = probation;
+                probation.addLast(candidate);
+                mainWeight += candidate.weight;
+            } else {
+                remove(candidate);
+                evictionCount.increment();
+            }
+        }
+
+        // Entries in the main segments can grow when they are replaced
+        while (mainWeight > mainMaximum) {
+            Node victim = probation.head != null ? probation.head : protectedSegment.head;
+            if (victim == null) {
+                break;
+            }
+            remove(victim);
+            evictionCount.increment();
+        }
+    }
+
+    /**
+     * Remove expired entries from the least recently written end of the
+     * write order and the least recently used end of every segment.
+     */
+    private void expire(long now) {
+        if (expireAfterWriteNanos < 0 && expireAfterAccessNanos < 0) {
+            return;
+        }
+        // Reads move entries within the segments but keep their write time
+        while (writeOrder.head != null && isExpired(writeOrder.head, now)) {
+            remove(writeOrder.head);
+            evictionCount.increment();
+        }
+        for (AccessOrder segment : new AccessOrder[] { window, probation, protectedSegment }) {
+            while (segment.head != null && isExpired(segment.head, now)) {
+                remove(segment.head);
+                evictionCount.increment();
+            }
+        }
+    }
+
+    private void remove(Node node) {
+        data.remove(node.uuid, node);
+        nameIndex.remove(node.name.toLowerCase(Locale.US), node);
+        if (node.segment == window) {
+            windowWeight -= node.weight;
+        } else if (node.segment != null) {
+            mainWeight -= node.weight;
+            if (node.segment == protectedSegment) {
+                protectedWeight -= node.weight;
+            }
+        }
+        if (node.segment != null) {
+            node.segment.remove(node);
+            node.segment = null;
+        }
+        if (expireAfterWriteNanos >= 0) {
+            writeOrder.remove(node);
+        }
+    }
+
+    /**
+     * Builds a {@link BoundedProfileCache}.
+     */
+    public static final class Builder {
+        private long maximumWeight = -1;
+        private ToIntFunction<Profile> weigher = profile -> 1;
+        @Nullable private Duration expireAfterWrite;
+        @Nullable private Duration expireAfterAccess;
+        private Ticker ticker = Ticker.systemTicker();
+
+        private Builder() {
+        }
+
+        /**
+         * Set the maximum number of entries.
+         *
+         * @param maximumSize the maximum number of entries
+         * @return this builder
+         */
+        public Builder maximumSize(long maximumSize) {
+            checkArgument(maximumSize >= 1, "maximumSize must be >= 1");
+            this.maximumWeight = maximumSize;
+            this.weigher = profile -> 1;
+            return this;
+        }
+
+        /**
+         * Set the maximum total weight of the entries.
+         *
+         * @param maximumWeight the maximum weight
+         * @param weigher a function that returns the weight of an entry, which must not be negative
+         * @return this builder
+         */
+        public Builder maximumWeight(long maximumWeight, ToIntFunction<Profile> weigher) {
+            checkArgument(maximumWeight >= 1, "maximumWeight must be >= 1");
+            checkNotNull(weigher);
+            this.maximumWeight = maximumWeight;
+            this.weigher = weigher;
+            return this;
+        }
+
+        /**
+         * Expire entries a fixed time after they were last written.
+         *
+         * @param duration the time to live
+         * @return this builder
+         */
+        public Builder expireAfterWrite(Duration duration) {
+            checkArgument(!duration.isNegative(), "duration must not be negative");
+            this.expireAfterWrite = duration;
+            return this;
+        }
+
+        /**
+         * Expire entries a fixed time after they were last read or written.
+         *
+         * @param duration the time to idle
+         * @return this builder
+         */
+        public Builder expireAfterAccess(Duration duration) {
+            checkArgument(!duration.isNegative(), "duration must not be negative");
+            this.expireAfterAccess = duration;
+            return this;
+        }
+
+        /**
+         * Set the source of time for expiration.
+         *
+         * @param ticker the ticker
+         * @return this builder
+         */
+        public Builder ticker(Ticker ticker) {
+            this.ticker = checkNotNull(ticker);
+            return this;
+        }
+
+        /**
+         * Create the cache.
+         *
+         * @return a new cache
+         */
+        public BoundedProfileCache build() {
+            checkState(maximumWeight >= 1, "maximumSize or maximumWeight must be set");
+            return new BoundedProfileCache(this);
+        }
+    }
+
+    /**
+     * A cache entry, which is linked into the segment it belongs to and,
+     * if entries expire after write, into the write order.
+     */
+    private static final class Node {
+        private final UUID uuid;
+        private volatile String name;
+        private volatile long writeTime;
+        private volatile long accessTime;
+        private int weight;
+        @Nullable private AccessOrder segment;
+        @Nullable private Node prev;
+        @Nullable private Node next;
+        @Nullable private Node writePrev;
+        @Nullable private Node writeNext;
+
+        private Node(UUID uuid, String name, int weight, long now) {
+            this.uuid = uuid;
+            this.name = name;
+            this.weight = weight;
+            this.writeTime = now;
+            this.accessTime = now;
+        }
+    }
+
+    /**
+     * A doubly linked list of entries from least to most recently used.
+     */
+    private static final class AccessOrder {
+        @Nullable private Node head;
+        @Nullable private Node tail;
+
+        private void addLast(Node node) {
+            node.prev = tail;
+            node.next = null;
+            if (tail != null) {
+                tail.next = node;
+            } else {
+                head = node;
+            }
+            tail = node;
+        }
+
+        private void remove(Node node) {
+            if (node.prev != null) {
+                node.prev.next = node.next;
+            } else {
+                head = node.next;
+            }
+            if (node.next != null) {
+                node.next.prev = node.prev;
+            } else {
+                tail = node.prev;
+            }
+            node.prev = null;
+            node.next = null;
+        }
+
+        private void moveToLast(Node node) {
+            if (tail != node) {
+                remove(node);
+                addLast(node);
+            }
+        }
+
+        private void clear() {
+            head = null;
+            tail = null;
+        }
+    }
+
+    /**
+     * A doubly linked list of entries from least to most recently written.
+     */
+    private static final class WriteOrder {
+        @Nullable private Node head;
+        @Nullable private Node tail;
+
+        private void addLast(Node node) {
+            node.writePrev = tail;
+            node.writeNext = null;
+            if (tail != null) {
+                tail.writeNext = node;
+            } else {
+                head = node;
+            }
+            tail = node;
+        }
+
+        private void remove(Node node) {
+            if (node.writePrev != null) {
+                node.writePrev.writeNext = node.writeNext;
+            } else if (head == node) {
+                head = node.writeNext;
+            }
+            if (node.writeNext != null) {
+                node.writeNext.writePrev = node.writePrev;
+            } else if (tail == node) {
+                tail = node.writePrev;
+            }
+            node.writePrev = null;
+            node.writeNext = null;
+        }
+
+        private void moveToLast(Node node) {
+            if (tail != node) {
+                remove(node);
+                addLast(node);
+            }
+        }
+
+        private void clear() {
+            head = null;
+            tail = null;
+        }
+    }
+
+}
@@ -0,0 +1,150 @@
+/*
+ * SquirrelID, a UUID library for Minecraft
+ * Copyright (C) sk89q <http://www.sk89q.com>
+ * Copyright (C) SquirrelID team and contributors
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.enginehub.squirrelid.cache;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * A query with an {@code IN (?, ...)} clause that is only ever run with a
+ * few fixed numbers of parameters, so that the database sees the same
+ * statements again and again and they can be prepared once.
+ *
+ * <p>Each chunk of keys uses the smallest statement that fits it, padded
+ * by repeating its last key. Inputs larger than the largest statement are
+ * split into several chunks.</p>
+ */
+final class BucketedQuery {
+
+    static final int[] BUCKET_SIZES = {1, 8, 32, 128};
+
+    private final String[] statements = new String[BUCKET_SIZES.length];
+
+    /**
+     * Create a new query.
+     *
+     * @param prefix the SQL before the parameter list, up to and including {@code IN (}
+     * @param suffix the SQL after the parameter list, starting with {@code )}
+     */
+    BucketedQuery(String prefix, String suffix) {
+        checkNotNull(prefix);
+        checkNotNull(suffix);
+        for (int i = 0; i < BUCKET_SIZES.length; i++) {
+            StringBuilder builder = new StringBuilder(prefix);
+            for (int j = 0; j < BUCKET_SIZES[i]; j++) {
+                builder.append(j == 0 ? "?" : ", ?");
+            }
+            statements[i] = builder.append(suffix).toString();
+        }
+    }
+
+    /**
+     * Run the query for all of the given keys.
+     *
+     * @param source the source of statements
+     * @param keys the keys, which should not contain duplicates
+     * @param binder sets a key as a parameter
+     * @param handler called for every returned row
+     * @param <K> the type of key
+     * @throws SQLException thrown on error
+     */
+    <K> void execute(StatementSource source, List<K> keys, KeyBinder<K> binder, RowHandler handler) throws SQLException {
+        int start = 0;
+        while (start < keys.size()) {
+            int remaining = keys.size() - start;
+            int bucket = 0;
+            while (bucket < BUCKET_SIZES.length - 1 && BUCKET_SIZES[bucket] < remaining) {
+                bucket++;
+            }
+            int size = BUCKET_SIZES[bucket];
+            int chunk = Math.min(size, remaining);
+
+            PreparedStatement stmt = source.prepare(statements[bucket]);
+            try {
+                for (int i = 0; i < size; i++) {
+                    binder.bind(stmt, i + 1, keys.get(start + Math.min(i, chunk - 1)));
+                }
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        handler.accept(rs);
+                    }
+                }
+            } finally {
+                source.release(stmt);
+            }
+            start += chunk;
+        }
+    }
+
+    /**
+     * Provides prepared statements for a connection.
+     */
+    @FunctionalInterface
+    interface StatementSource {
+
+        /**
+         * Get a statement for the given SQL.
+         *
+         * @param sql the SQL
+         * @return a statement
+         * @throws SQLException thrown on error
+         */
+        PreparedStatement prepare(String sql) throws SQLException;
+
+        /**
+         * Give back a statement once it has been used. By default it is
+         * closed.
+         *
+         * @param statement the statement
+         * @throws SQLException thrown on error
+         */
+        default void release(PreparedStatement statement) throws SQLException {
+            statement.close();
+        }
+
+    }
+
+    /**
+     * Sets a key as a parameter of a statement.
+     *
+     * @param <K> the type of key
+     */
+    @FunctionalInterface
+    interface KeyBinder<K> {
+
+        void bind(PreparedStatement statement, int index, K key) throws SQLException;
+
+    }
+
+    /**
+     * Reads a row of the result.
+     */
+    @FunctionalInterface
+    interface RowHandler {
+
+        void accept(ResultSet rs) throws SQLException;
+
+    }
+
+}
@@ -22,25 +22,64 @@ package org.enginehub.squirrelid.cache;
 import com.google.common.collect.ImmutableMap;
 import org.enginehub.squirrelid.Profile;
 
+import java.time.Clock;
+import java.time.Instant;
 import java.util.HashMap;
+import java.util.Locale;
 import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 
+import static com.google.common.base.Preconditions.checkNotNull;
+
 /**
  * A {@code MemoryCache} stores entries in a {@link ConcurrentMap}.
+ *
+ * <p>A second map from lower case names to UUIDs serves name lookups. If
+ * several UUIDs were stored with the same name, the last one wins. The
+ * time each entry was written is kept for
+ * {@link #getWriteTimes(Iterable)}.</p>
  */
 public class HashMapCache extends AbstractProfileCache {
 
     // Cannot use Guava because the cache classes are still @Beta
     // in Guava 10.0.1 and will change
     private final ConcurrentMap<UUID, String> cache = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, UUID> nameIndex = new ConcurrentHashMap<>();
+    private final ConcurrentMap<UUID, Instant> writeTimes = new ConcurrentHashMap<>();
+    private final Clock clock;
+
+    /**
+     * Create a new instance.
+     */
+    public HashMapCache() {
+        this(Clock.systemUTC());
+    }
+
+    /**
+     * Create a new instance.
+     *
+     * @param clock the clock that write times are read from
+     */
+    public HashMapCache(Clock clock) {
+        checkNotNull(clock);
+        this.clock = clock;
+    }
 
     @Override
     public void putAll(Iterable<Profile> profiles) {
-        for (Profile profile : profiles) {
-            cache.put(profile.getUniqueId(), profile.getName());
+        // Writers are serialized so that both maps are updated together
+        synchronized (nameIndex) {
+            Instant now = clock.instant();
+            for (Profile profile : profiles) {
+                String previous = cache.put(profile.getUniqueId(), profile.getName());
+                if (previous != null && !previous.equalsIgnoreCase(profile.getName())) {
+                    nameIndex.remove(previous.toLowerCase(Locale.US), profile.getUniqueId());
+                }
+                nameIndex.put(profile.getName().toLowerCase(Locale.US), profile.getUniqueId());
+                writeTimes.put(profile.getUniqueId(), now);
+            }
         }
     }
 
@@ -56,4 +95,33 @@ public class HashMapCache extends AbstractProfileCache {
         return ImmutableMap.copyOf(results);
     }
 
+    @Override
+    public ImmutableMap<String, Profile> getAllPresentByName(Iterable<String> names) {
+        Map<String, Profile> found = new HashMap<>();
+        for (String name : names) {
+            String key = name.toLowerCase(Locale.US);
+            UUID uuid = nameIndex.get(key);
+            if (uuid != null) {
+                String current = cache.get(uuid);
+                // The name may have changed since the index was read
+                if (current != null && current.equalsIgnoreCase(name)) {
+                    found.put(key, new Profile(uuid, current));
+                }
+            }
+        }
+        return byRequestedName(names, found);
+    }
+
+    @Override
+    public ImmutableMap<UUID, Instant> getWriteTimes(Iterable<UUID> ids) {
+        Map<UUID, Instant> results = new HashMap<>();
+        for (UUID uuid : ids) {
+            Instant written = writeTimes.get(uuid);
+            if (written != null) {
+                results.put(uuid, written);
+            }
+        }
+        return ImmutableMap.copyOf(results);
+    }
+
 }
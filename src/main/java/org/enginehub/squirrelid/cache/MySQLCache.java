@@ -19,56 +19,94 @@
 
 package org.enginehub.squirrelid.cache;
 
-import com.google.common.base.Joiner;
 import com.google.common.collect.ImmutableMap;
 import org.enginehub.squirrelid.Profile;
+import org.enginehub.squirrelid.util.UUIDs;
 
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.sql.Types;
+import java.time.Instant;
+import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 import javax.sql.DataSource;
 
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
 
 /**
  * An implementation of a UUID cache using a MySQL database. Please refer to {@link
  * #create(Connection, String)} and {@link #create(DataSource, String)} for instances of this
  * class.
  *
- * <p>The implementation performs all requests in a single thread, so calls may block for a short
- * period of time.</p>
+ * <p>When created with a {@link Connection}, the implementation performs all requests in a single
+ * thread, so calls may block for a short period of time. When created with a {@link DataSource},
+ * every call borrows its own connection and calls run concurrently. Lookups only ever use a few
+ * distinct statements, so a pool or driver that caches prepared statements (such as MySQL
+ * Connector/J with {@code cachePrepStmts=true}) reuses them across calls.</p>
+ *
+ * <p>UUIDs are stored as text unless the cache is created with binary UUIDs, which are stored as
+ * {@code BINARY(16)} in a separate table named after the table name with a {@code _binary}
+ * suffix. Profiles in the text table are still found, and can be moved over while the cache is in
+ * use with {@link #migrateLegacyRows(int)}.</p>
+ *
+ * <p>The time each row was written is stored in its {@code updated} column. Rows written before
+ * the column was added have no time.</p>
  */
 public class MySQLCache extends AbstractProfileCache {
 
     public static final String TABLE_NAME = "uuid_cache";
     private static final Logger log = Logger.getLogger(MySQLCache.class.getCanonicalName());
     private final String tableName;
+    private final String binaryTableName;
+    private final boolean binaryUuids;
     private final String queryString;
-    private DataSource dataSource;
-    private Connection connection;
+    private final BucketedQuery getByUuid;
+    private final BucketedQuery getByName;
+    private final BucketedQuery getByBinaryUuid;
+    private final BucketedQuery getByNameBinary;
+    private final BucketedQuery getUpdatedByUuid;
+    private final BucketedQuery getUpdatedByBinaryUuid;
+    private volatile boolean legacyRows;
+    @Nullable private final DataSource dataSource;
+    @Nullable private final Connection connection;
 
-    private MySQLCache(@Nonnull Object o, @Nonnull String tableName) throws SQLException {
+    private MySQLCache(@Nonnull Object o, @Nonnull String tableName, boolean binaryUuids) throws SQLException {
         checkNotNull(o);
         checkNotNull(tableName, "tableName cannot be null.");
         checkArgument(!tableName.isEmpty(), "tableName cannot be empty.");
 
         if (o instanceof Connection) {
             this.connection = ((Connection) o);
+            this.dataSource = null;
         } else {
+            this.connection = null;
             this.dataSource = ((DataSource) o);
         }
         this.tableName = tableName;
-        this.queryString = "REPLACE INTO `" + tableName + "` (uuid, name) VALUES (?, ?)";
+        this.binaryTableName = tableName + "_binary";
+        this.binaryUuids = binaryUuids;
+        this.queryString = "REPLACE INTO `" + (binaryUuids ? binaryTableName : tableName) + "` (uuid, name, updated) VALUES (?, ?, ?)";
+        this.getByUuid = new BucketedQuery("SELECT name, uuid FROM `" + tableName + "` WHERE uuid IN (", ")");
+        this.getByName = new BucketedQuery("SELECT name, uuid FROM `" + tableName + "` WHERE name IN (", ")");
+        this.getByBinaryUuid = new BucketedQuery("SELECT name, uuid FROM `" + binaryTableName + "` WHERE uuid IN (", ")");
+        this.getByNameBinary = new BucketedQuery("SELECT name, uuid FROM `" + binaryTableName + "` WHERE name IN (", ")");
+        this.getUpdatedByUuid = new BucketedQuery("SELECT uuid, updated FROM `" + tableName + "` WHERE uuid IN (", ")");
+        this.getUpdatedByBinaryUuid = new BucketedQuery("SELECT uuid, updated FROM `" + binaryTableName + "` WHERE uuid IN (", ")");
         createTable();
     }
 
@@ -85,7 +123,7 @@ public class MySQLCache extends AbstractProfileCache {
     public static MySQLCache create(@Nonnull DataSource dataSource)
         throws SQLException {
         checkNotNull(dataSource, "dataSource cannot be null.");
-        return new MySQLCache(dataSource, TABLE_NAME);
+        return new MySQLCache(dataSource, TABLE_NAME, false);
     }
 
     /**
@@ -101,7 +139,7 @@ public class MySQLCache extends AbstractProfileCache {
     public static MySQLCache create(@Nonnull DataSource dataSource, @Nonnull String tableName)
         throws SQLException {
         checkNotNull(dataSource, "dataSource cannot be null.");
-        return new MySQLCache(dataSource, tableName);
+        return new MySQLCache(dataSource, tableName, false);
     }
 
     /**
@@ -115,7 +153,7 @@ public class MySQLCache extends AbstractProfileCache {
     public static MySQLCache create(@Nonnull Connection connection)
         throws SQLException {
         checkNotNull(connection, "connection cannot be null.");
-        return new MySQLCache(connection, TABLE_NAME);
+        return new MySQLCache(connection, TABLE_NAME, false);
     }
 
     /**
@@ -129,7 +167,41 @@ public class MySQLCache extends AbstractProfileCache {
     public static MySQLCache create(@Nonnull Connection connection, @Nonnull String tableName)
         throws SQLException {
         checkNotNull(connection, "connection cannot be null.");
-        return new MySQLCache(connection, tableName);
+        return new MySQLCache(connection, tableName, false);
+    }
+
+    /**
+     * Creates an instance of {@link MySQLCache} with a {@link DataSource}, optionally storing UUIDs
+     * as {@code BINARY(16)}. The provided {@link DataSource} is used for getting a connection using
+     * {@link DataSource#getConnection()}. Once a {@link Connection} is done with, it is then closed,
+     * calling {@link Connection#close()}.
+     *
+     * @param dataSource data source to use for interacting with the mysql database
+     * @param tableName name of the table that caches names and uuids as text
+     * @param binaryUuids true to store uuids in binary, in the table with a {@code _binary} suffix
+     * @return the newly constructed {@link MySQLCache}
+     * @throws SQLException thrown if an error occurs whilst creating the tables
+     */
+    public static MySQLCache create(@Nonnull DataSource dataSource, @Nonnull String tableName, boolean binaryUuids)
+        throws SQLException {
+        checkNotNull(dataSource, "dataSource cannot be null.");
+        return new MySQLCache(dataSource, tableName, binaryUuids);
+    }
+
+    /**
+     * Creates an instance of {@link MySQLCache} with a {@link Connection}, optionally storing UUIDs
+     * as {@code BINARY(16)}.
+     *
+     * @param connection connection to use for interacting with the mysql database
+     * @param tableName name of the table that caches names and uuids as text
+     * @param binaryUuids true to store uuids in binary, in the table with a {@code _binary} suffix
+     * @return the newly constructed {@link MySQLCache}
+     * @throws SQLException thrown if an error occurs whilst creating the tables
+     */
+    public static MySQLCache create(@Nonnull Connection connection, @Nonnull String tableName, boolean binaryUuids)
+        throws SQLException {
+        checkNotNull(connection, "connection cannot be null.");
+        return new MySQLCache(connection, tableName, binaryUuids);
     }
 
     @Override
@@ -152,6 +224,28 @@ public class MySQLCache extends AbstractProfileCache {
         return ImmutableMap.of();
     }
 
+    @Override
+    public ImmutableMap<String, Profile> getAllPresentByName(Iterable<String> names) {
+        try {
+            return executeGetByName(names);
+        } catch (SQLException e) {
+            log.log(Level.WARNING, "Failed to execute queries", e);
+        }
+
+        return ImmutableMap.of();
+    }
+
+    @Override
+    public ImmutableMap<UUID, Instant> getWriteTimes(Iterable<UUID> ids) {
+        try {
+            return executeGetWriteTimes(ids);
+        } catch (SQLException e) {
+            log.log(Level.WARNING, "Failed to execute queries", e);
+        }
+
+        return ImmutableMap.of();
+    }
+
     /**
      * Create the necessary tables and indices if they do not exist yet. This method is called when
      * a
@@ -160,76 +254,328 @@ public class MySQLCache extends AbstractProfileCache {
      * @throws SQLException thrown on error
      */
     public void createTable() throws SQLException {
-        Connection conn = getConnection();
+        withConnection(conn -> {
+            createTable(conn);
+            return null;
+        });
+    }
+
+    private void createTable(Connection conn) throws SQLException {
         try (Statement stmt = conn.createStatement()) {
-            stmt.executeUpdate(
-                "CREATE TABLE IF NOT EXISTS `" + this.tableName + "` ("
-                    + "`uuid` CHAR(36) PRIMARY KEY NOT NULL, "
-                    + "`name` VARCHAR(16) NOT NULL UNIQUE KEY)");
+            if (binaryUuids) {
+                stmt.executeUpdate(
+                    "CREATE TABLE IF NOT EXISTS `" + this.binaryTableName + "` ("
+                        + "`uuid` BINARY(16) PRIMARY KEY NOT NULL, "
+                        + "`name` VARCHAR(16) NOT NULL UNIQUE KEY, "
+                        + "`updated` BIGINT NULL)");
+                addUpdatedColumn(stmt, this.binaryTableName);
+                try (ResultSet rs = stmt.executeQuery("SELECT 1 FROM `" + this.tableName + "` LIMIT 1")) {
+                    legacyRows = rs.next();
+                } catch (SQLException ignored) {
+                    // There is no text table
+                }
+                if (legacyRows) {
+                    addUpdatedColumn(stmt, this.tableName);
+                }
+            } else {
+                stmt.executeUpdate(
+                    "CREATE TABLE IF NOT EXISTS `" + this.tableName + "` ("
+                        + "`uuid` CHAR(36) PRIMARY KEY NOT NULL, "
+                        + "`name` VARCHAR(16) NOT NULL UNIQUE KEY, "
+                        + "`updated` BIGINT NULL)");
+                addUpdatedColumn(stmt, this.tableName);
+            }
         } catch (SQLException e) {
             throw new SQLException("Failed to create table.", e);
+        }
+    }
+
+    private static void addUpdatedColumn(Statement stmt, String table) {
+        try {
+            stmt.executeUpdate("ALTER TABLE `" + table + "` ADD COLUMN `updated` BIGINT NULL");
+        } catch (SQLException ignored) {
+            // Column may already exist
+        }
+    }
+
+    protected void executePut(Iterable<Profile> profiles) throws SQLException {
+        withConnection(conn -> {
+            executePut(conn, profiles);
+            return null;
+        });
+    }
+
+    private void executePut(Connection conn, Iterable<Profile> profiles) throws SQLException {
+        if (!binaryUuids || !legacyRows) {
+            executeReplace(conn, profiles);
+            return;
+        }
+
+        // The stale text rows must go in the same transaction as the new rows
+        boolean autoCommit = conn.getAutoCommit();
+        conn.setAutoCommit(false);
+        try {
+            executeReplace(conn, profiles);
+            // Text rows for these UUIDs or names are stale, and must not be migrated later
+            try (PreparedStatement delete = conn.prepareStatement("DELETE FROM `" + this.tableName + "` WHERE uuid = ? OR name = ?")) {
+                for (Profile profile : profiles) {
+                    delete.setString(1, profile.getUniqueId().toString());
+                    delete.setString(2, profile.getName());
+                    delete.addBatch();
+                }
+                delete.executeBatch();
+            }
+            conn.commit();
+        } catch (SQLException | RuntimeException e) {
+            conn.rollback();
+            throw e;
         } finally {
-            close(conn);
+            conn.setAutoCommit(autoCommit);
         }
     }
 
-    protected synchronized void executePut(Iterable<Profile> profiles) throws SQLException {
-        Connection conn = getConnection();
+    private void executeReplace(Connection conn, Iterable<Profile> profiles) throws SQLException {
         try (PreparedStatement stmt = conn.prepareStatement(this.queryString)) {
+            long now = System.currentTimeMillis();
             for (Profile profile : profiles) {
-                stmt.setString(1, profile.getUniqueId().toString());
+                if (binaryUuids) {
+                    stmt.setBytes(1, UUIDs.toBytes(profile.getUniqueId()));
+                } else {
+                    stmt.setString(1, profile.getUniqueId().toString());
+                }
                 stmt.setString(2, profile.getName());
+                stmt.setLong(3, now);
                 stmt.addBatch();
             }
             stmt.executeBatch();
-        } finally {
-            close(conn);
         }
     }
 
     protected ImmutableMap<UUID, Profile> executeGet(Iterable<UUID> ids) throws SQLException {
-        Iterator<UUID> it = ids.iterator();
+        Set<UUID> keys = new LinkedHashSet<>();
+        for (UUID uuid : ids) {
+            if (uuid != null) {
+                keys.add(uuid);
+            }
+        }
+
         // It was an empty collection
-        if (!it.hasNext()) {
+        if (keys.isEmpty()) {
             return ImmutableMap.of();
         }
 
-        StringBuilder builder = new StringBuilder();
-        // SELECT ... WHERE ... IN ('abc', 'def', 'ghi');
-        builder.append("SELECT name, uuid FROM `").append(this.tableName).append("` WHERE uuid IN ('");
-        Joiner.on("', '").skipNulls().appendTo(builder, ids);
-        builder.append("');");
-
-        synchronized (this) {
-            Connection conn = getConnection();
-            try (Statement stmt = conn.createStatement()) {
-                ResultSet rs = stmt.executeQuery(builder.toString());
-                Map<UUID, Profile> map = new HashMap<>();
-
-                while (rs.next()) {
+        List<UUID> keyList = new ArrayList<>(keys);
+        Map<UUID, Profile> map = new HashMap<>();
+        withConnection(conn -> {
+            // Read the text table first, so that a row that is migrated in between is not missed
+            if (!binaryUuids || legacyRows) {
+                getByUuid.execute(conn::prepareStatement, keyList, (stmt, index, uuid) -> stmt.setString(index, uuid.toString()), rs -> {
                     UUID uuid = UUID.fromString(rs.getString("uuid"));
                     map.put(uuid, new Profile(uuid, rs.getString("name")));
-                }
+                });
+            }
+            if (binaryUuids) {
+                getByBinaryUuid.execute(conn::prepareStatement, keyList, (stmt, index, uuid) -> stmt.setBytes(index, UUIDs.toBytes(uuid)), rs -> {
+                    UUID uuid = UUIDs.fromBytes(rs.getBytes("uuid"));
+                    map.put(uuid, new Profile(uuid, rs.getString("name")));
+                });
+            }
+            return null;
+        });
+        return ImmutableMap.copyOf(map);
+    }
+
+    /**
+     * Look up names with the unique key on the name column, which ignores
+     * case under MySQL's default collations.
+     */
+    protected ImmutableMap<String, Profile> executeGetByName(Iterable<String> names) throws SQLException {
+        List<String> keys = new ArrayList<>();
+        for (String name : names) {
+            checkNotNull(name, "Unexpected null name");
+            keys.add(name);
+        }
 
-                return ImmutableMap.copyOf(map);
-            } finally {
-                close(conn);
+        // It was an empty collection
+        if (keys.isEmpty()) {
+            return ImmutableMap.of();
+        }
+
+        List<String> distinct = new ArrayList<>(new LinkedHashSet<>(keys));
+        Map<String, Profile> found = new HashMap<>();
+        withConnection(conn -> {
+            if (!binaryUuids || legacyRows) {
+                getByName.execute(conn::prepareStatement, distinct, PreparedStatement::setString, rs -> {
+                    String name = rs.getString("name");
+                    found.put(name.toLowerCase(Locale.US), new Profile(UUID.fromString(rs.getString("uuid")), name));
+                });
+            }
+            if (binaryUuids) {
+                getByNameBinary.execute(conn::prepareStatement, distinct, PreparedStatement::setString, rs -> {
+                    String name = rs.getString("name");
+                    found.put(name.toLowerCase(Locale.US), new Profile(UUIDs.fromBytes(rs.getBytes("uuid")), name));
+                });
+            }
+            return null;
+        });
+        return byRequestedName(keys, found);
+    }
+
+    protected ImmutableMap<UUID, Instant> executeGetWriteTimes(Iterable<UUID> ids) throws SQLException {
+        Set<UUID> keys = new LinkedHashSet<>();
+        for (UUID uuid : ids) {
+            if (uuid != null) {
+                keys.add(uuid);
             }
         }
+
+        // It was an empty collection
+        if (keys.isEmpty()) {
+            return ImmutableMap.of();
+        }
+
+        List<UUID> keyList = new ArrayList<>(keys);
+        Map<UUID, Instant> map = new HashMap<>();
+        withConnection(conn -> {
+            if (!binaryUuids || legacyRows) {
+                getUpdatedByUuid.execute(conn::prepareStatement, keyList, (stmt, index, uuid) -> stmt.setString(index, uuid.toString()), rs -> {
+                    long updated = rs.getLong("updated");
+                    if (!rs.wasNull()) {
+                        map.put(UUID.fromString(rs.getString("uuid")), Instant.ofEpochMilli(updated));
+                    }
+                });
+            }
+            if (binaryUuids) {
+                getUpdatedByBinaryUuid.execute(conn::prepareStatement, keyList, (stmt, index, uuid) -> stmt.setBytes(index, UUIDs.toBytes(uuid)), rs -> {
+                    long updated = rs.getLong("updated");
+                    if (!rs.wasNull()) {
+                        map.put(UUIDs.fromBytes(rs.getBytes("uuid")), Instant.ofEpochMilli(updated));
+                    }
+                });
+            }
+            return null;
+        });
+        return ImmutableMap.copyOf(map);
+    }
+
+    /**
+     * Get whether there are profiles left in the table that stores UUIDs as text.
+     *
+     * @return true if there are profiles left to migrate
+     */
+    public boolean hasLegacyRows() {
+        return legacyRows;
+    }
+
+    /**
+     * Move profiles from the table that stores UUIDs as text into the binary table, in one
+     * transaction.
+     *
+     * <p>The cache can be used as normal while migrating. Call this repeatedly, for example from a
+     * background task, until it returns 0. Progress is kept in the database, so a migration that is
+     * interrupted carries on where it stopped. The emptied text table is left in place.</p>
+     *
+     * @param batchSize the maximum number of profiles to move
+     * @return the number of rows moved, which is 0 once there are none left
+     * @throws SQLException thrown on error
+     */
+    public int migrateLegacyRows(int batchSize) throws SQLException {
+        checkState(binaryUuids, "Only a cache with binary UUIDs can migrate");
+        checkArgument(batchSize >= 1, "batchSize must be >= 1");
+        if (!legacyRows) {
+            return 0;
+        }
+
+        return withConnection(conn -> executeMigrate(conn, batchSize));
     }
 
-    private Connection getConnection() throws SQLException {
-        if (this.connection != null) {
-            return this.connection;
+    private int executeMigrate(Connection conn, int batchSize) throws SQLException {
+        boolean autoCommit = conn.getAutoCommit();
+        conn.setAutoCommit(false);
+        try {
+            List<String> rawIds = new ArrayList<>();
+            List<Profile> profiles = new ArrayList<>();
+            List<Long> updateTimes = new ArrayList<>();
+            try (PreparedStatement stmt = conn.prepareStatement("SELECT uuid, name, updated FROM `" + this.tableName + "` LIMIT ?")) {
+                stmt.setInt(1, batchSize);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        String rawId = rs.getString("uuid");
+                        rawIds.add(rawId);
+                        try {
+                            profiles.add(new Profile(UUID.fromString(rawId), rs.getString("name")));
+                            long updated = rs.getLong("updated");
+                            updateTimes.add(rs.wasNull() ? null : updated);
+                        } catch (IllegalArgumentException e) {
+                            log.log(Level.FINE, "Dropping a cached profile with an invalid UUID", e);
+                        }
+                    }
+                }
+            }
+
+            if (rawIds.isEmpty()) {
+                legacyRows = false;
+                conn.commit();
+                return 0;
+            }
+
+            // Rows written since are newer than the text ones
+            try (PreparedStatement stmt = conn.prepareStatement("INSERT IGNORE INTO `" + this.binaryTableName + "` (uuid, name, updated) VALUES (?, ?, ?)")) {
+                for (int i = 0; i < profiles.size(); i++) {
+                    Profile profile = profiles.get(i);
+                    Long updated = updateTimes.get(i);
+                    stmt.setBytes(1, UUIDs.toBytes(profile.getUniqueId()));
+                    stmt.setString(2, profile.getName());
+                    if (updated != null) {
+                        stmt.setLong(3, updated);
+                    } else {
+                        stmt.setNull(3, Types.BIGINT);
+                    }
+                    stmt.addBatch();
+                }
+                stmt.executeBatch();
+            }
+            try (PreparedStatement stmt = conn.prepareStatement("DELETE FROM `" + this.tableName + "` WHERE uuid = ?")) {
+                for (String rawId : rawIds) {
+                    stmt.setString(1, rawId);
+                    stmt.addBatch();
+                }
+                stmt.executeBatch();
+            }
+            conn.commit();
+            return rawIds.size();
+        } catch (SQLException | RuntimeException e) {
+            conn.rollback();
+            throw e;
+        } finally {
+            conn.setAutoCommit(autoCommit);
         }
-        return this.dataSource.getConnection();
     }
 
-    private void close(Connection connection) throws SQLException {
-        // Close the current connection if it was provided by the DataSource.
+    /**
+     * Run work on a connection. A connection from the {@link DataSource} is borrowed for this call
+     * alone and closed afterwards, so calls run concurrently. Calls on a single shared
+     * {@link Connection} take turns.
+     *
+     * @param work the work
+     * @param <T> the type of result
+     * @return the result
+     * @throws SQLException thrown on error
+     */
+    private <T> T withConnection(ConnectionWork<T> work) throws SQLException {
         if (this.dataSource != null) {
-            connection.close();
+            try (Connection conn = this.dataSource.getConnection()) {
+                return work.execute(conn);
+            }
         }
+        synchronized (this) {
+            return work.execute(this.connection);
+        }
+    }
+
+    @FunctionalInterface
+    private interface ConnectionWork<T> {
+        T execute(Connection connection) throws SQLException;
     }
 
     /**
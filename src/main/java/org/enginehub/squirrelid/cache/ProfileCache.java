@@ -19,9 +19,11 @@
 
 package org.enginehub.squirrelid.cache;
 
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import org.enginehub.squirrelid.Profile;
 
+import java.time.Instant;
 import java.util.UUID;
 import javax.annotation.Nullable;
 
@@ -73,4 +75,51 @@ public interface ProfileCache {
      */
     ImmutableMap<UUID, Profile> getAllPresent(Iterable<UUID> ids);
 
+    /**
+     * Query the cache for the last known profile with the given name,
+     * ignoring case.
+     *
+     * <p>If the operation fails, an error will be logged but no exception
+     * will be thrown.</p>
+     *
+     * @param name the name
+     * @return the profile or {@code null} if it is not known
+     */
+    @Nullable
+    default Profile getByName(String name) {
+        return getAllPresentByName(ImmutableList.of(name)).get(name);
+    }
+
+    /**
+     * Query the cache for the last known profiles with the given names,
+     * ignoring case.
+     *
+     * <p>If the operation fails, an error will be logged but no exception
+     * will be thrown. Caches that cannot look up names return an empty
+     * map.</p>
+     *
+     * @param names a list of names to query
+     * @return a map of results keyed by the names as given, which may not
+     *     have a key for every given name
+     */
+    default ImmutableMap<String, Profile> getAllPresentByName(Iterable<String> names) {
+        return ImmutableMap.of();
+    }
+
+    /**
+     * Query the cache for when the profiles of the given UUIDs were last
+     * written.
+     *
+     * <p>If the operation fails, an error will be logged but no exception
+     * will be thrown. Caches that do not record when profiles were written
+     * return an empty map.</p>
+     *
+     * @param ids a list of UUIDs to query
+     * @return a map of write times, which has no key for UUIDs that are
+     *     not cached or whose write time is not known
+     */
+    default ImmutableMap<UUID, Instant> getWriteTimes(Iterable<UUID> ids) {
+        return ImmutableMap.of();
+    }
+
 }
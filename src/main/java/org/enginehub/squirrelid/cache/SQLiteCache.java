@@ -21,6 +21,7 @@ package org.enginehub.squirrelid.cache;
 
 import com.google.common.collect.ImmutableMap;
 import org.enginehub.squirrelid.Profile;
+import org.enginehub.squirrelid.util.UUIDs;
 
 import java.io.File;
 import java.io.IOException;
@@ -30,25 +31,74 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.sql.Types;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import javax.annotation.Nullable;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
 
 /**
  * An implementation of a UUID cache using a SQLite database.
  *
  * <p>The implementation performs all requests in a single thread, so
- * calls may block for a short period of time.</p>
+ * calls may block for a short period of time, unless the cache is built
+ * with {@link Builder#readerConnections(int) reader connections}, in which
+ * case lookups run in parallel and only writes are serialized. Each call to
+ * {@link #putAll(Iterable)} is written in one transaction. The connections
+ * are closed by {@link #close()}.</p>
+ *
+ * <p>By default the database uses write-ahead logging with
+ * {@link Synchronous#NORMAL} syncing, which can lose the last writes on
+ * power loss but never corrupts the database. Use {@link #builder(File)}
+ * to choose otherwise.</p>
+ *
+ * <p>UUIDs are stored as text unless the cache is built with
+ * {@link Builder#binaryUuids(boolean) binary UUIDs}, which are stored as
+ * 16 bytes in a separate {@code uuid_cache_binary} table. Profiles in the
+ * old {@code uuid_cache} table are still found, and can be moved over
+ * while the cache is in use with {@link #migrateLegacyRows(int)}.</p>
+ *
+ * <p>The time each row was written is stored in its {@code updated}
+ * column. Rows written before the column was added have no time.</p>
  */
-public class SQLiteCache extends AbstractProfileCache {
+public class SQLiteCache extends AbstractProfileCache implements AutoCloseable {
 
     private static final Logger log = Logger.getLogger(SQLiteCache.class.getCanonicalName());
+    private static final BucketedQuery GET_BY_UUID = new BucketedQuery(
+        "SELECT name, uuid FROM uuid_cache WHERE uuid IN (", ")");
+    // REPLACE gives rewritten rows a new rowid, so the last row for a name is the latest
+    private static final BucketedQuery GET_BY_NAME = new BucketedQuery(
+        "SELECT name, uuid FROM uuid_cache WHERE name COLLATE NOCASE IN (", ") ORDER BY rowid");
+    private static final BucketedQuery GET_BY_BINARY_UUID = new BucketedQuery(
+        "SELECT name, uuid FROM uuid_cache_binary WHERE uuid IN (", ")");
+    private static final BucketedQuery GET_BY_NAME_BINARY = new BucketedQuery(
+        "SELECT name, uuid FROM uuid_cache_binary WHERE name COLLATE NOCASE IN (", ") ORDER BY rowid");
+    private static final BucketedQuery GET_UPDATED_BY_UUID = new BucketedQuery(
+        "SELECT uuid, updated FROM uuid_cache WHERE uuid IN (", ")");
+    private static final BucketedQuery GET_UPDATED_BY_BINARY_UUID = new BucketedQuery(
+        "SELECT uuid, updated FROM uuid_cache_binary WHERE uuid IN (", ")");
     private final Connection connection;
+    private final boolean binaryUuids;
+    private volatile boolean legacyRows;
     private final PreparedStatement updateStatement;
+    private final StatementCache sharedStatements;
+    @Nullable private final BlockingQueue<StatementCache> readers;
+    private final int readerConnections;
 
     /**
      * Create a new instance.
@@ -57,17 +107,29 @@ public class SQLiteCache extends AbstractProfileCache {
      * @throws IOException if the database failed
      */
     public SQLiteCache(File file) throws IOException {
-        checkNotNull(file);
+        this(builder(file));
+    }
 
+    private SQLiteCache(Builder builder) throws IOException {
+        this.binaryUuids = builder.binaryUuids;
+        String url = "jdbc:sqlite:" + builder.file.getAbsolutePath();
         try {
             Class.forName("org.sqlite.JDBC");
-            connection = DriverManager.getConnection("jdbc:sqlite:" + file.getAbsolutePath());
+            connection = DriverManager.getConnection(url);
         } catch (ClassNotFoundException e) {
             throw new IOException("SQLite JDBC support is not installed");
         } catch (SQLException e) {
             throw new IOException("Failed to connect to cache file", e);
         }
 
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute("PRAGMA journal_mode = " + builder.journalMode.name());
+            stmt.execute("PRAGMA synchronous = " + builder.synchronous.name());
+            stmt.execute("PRAGMA busy_timeout = " + builder.busyTimeout.toMillis());
+        } catch (SQLException e) {
+            throw new IOException("Failed to configure the database", e);
+        }
+
         try {
             createTable();
         } catch (SQLException e) {
@@ -75,10 +137,42 @@ public class SQLiteCache extends AbstractProfileCache {
         }
 
         try {
-            updateStatement = connection.prepareStatement("INSERT OR REPLACE INTO uuid_cache (uuid, name) VALUES (?, ?)");
+            updateStatement = connection.prepareStatement(binaryUuids
+                ? "INSERT OR REPLACE INTO uuid_cache_binary (uuid, name, updated) VALUES (?, ?, ?)"
+                : "INSERT OR REPLACE INTO uuid_cache (uuid, name, updated) VALUES (?, ?, ?)");
         } catch (SQLException e) {
             throw new IOException("Failed to prepare statements", e);
         }
+        sharedStatements = new StatementCache(connection);
+
+        readerConnections = builder.readerConnections;
+        if (builder.readerConnections > 0) {
+            readers = new ArrayBlockingQueue<>(builder.readerConnections);
+            try {
+                for (int i = 0; i < builder.readerConnections; i++) {
+                    Connection reader = DriverManager.getConnection(url);
+                    try (Statement stmt = reader.createStatement()) {
+                        stmt.execute("PRAGMA query_only = true");
+                        stmt.execute("PRAGMA busy_timeout = " + builder.busyTimeout.toMillis());
+                    }
+                    readers.add(new StatementCache(reader));
+                }
+            } catch (SQLException e) {
+                throw new IOException("Failed to open reader connections", e);
+            }
+        } else {
+            readers = null;
+        }
+    }
+
+    /**
+     * Create a new builder.
+     *
+     * @param file the path to a SQLite file to use
+     * @return a builder
+     */
+    public static Builder builder(File file) {
+        return new Builder(file);
     }
 
     /**
@@ -99,19 +193,53 @@ public class SQLiteCache extends AbstractProfileCache {
     private void createTable() throws SQLException {
         Connection conn = getConnection();
         Statement stmt = conn.createStatement();
+        if (binaryUuids) {
+            stmt.executeUpdate(
+                "CREATE TABLE IF NOT EXISTS uuid_cache_binary (\n"
+                    + "  uuid BLOB(16) PRIMARY KEY NOT NULL,\n"
+                    + "  name CHAR(32) NOT NULL,\n"
+                    + "  updated INTEGER)");
+            addUpdatedColumn(stmt, "uuid_cache_binary");
+            stmt.executeUpdate("CREATE INDEX IF NOT EXISTS binary_name_nocase_index ON uuid_cache_binary (name COLLATE NOCASE)");
+            try (ResultSet rs = stmt.executeQuery("SELECT 1 FROM uuid_cache LIMIT 1")) {
+                legacyRows = rs.next();
+            } catch (SQLException ignored) {
+                // There is no old table
+            }
+            if (legacyRows) {
+                addUpdatedColumn(stmt, "uuid_cache");
+                // Name lookups still read the old table until it is migrated
+                stmt.executeUpdate("CREATE INDEX IF NOT EXISTS name_nocase_index ON uuid_cache (name COLLATE NOCASE)");
+            }
+            stmt.close();
+            return;
+        }
+
         stmt.executeUpdate(
             "CREATE TABLE IF NOT EXISTS uuid_cache (\n"
                 + "  uuid CHAR(36) PRIMARY KEY NOT NULL,\n"
-                + "  name CHAR(32) NOT NULL)");
+                + "  name CHAR(32) NOT NULL,\n"
+                + "  updated INTEGER)");
+        addUpdatedColumn(stmt, "uuid_cache");
 
         try {
             stmt.executeUpdate("CREATE INDEX name_index ON uuid_cache (name)");
         } catch (SQLException ignored) {
             // Index may already exist
         }
+        // Name lookups ignore case, which the index above cannot serve
+        stmt.executeUpdate("CREATE INDEX IF NOT EXISTS name_nocase_index ON uuid_cache (name COLLATE NOCASE)");
         stmt.close();
     }
 
+    private static void addUpdatedColumn(Statement stmt, String table) throws SQLException {
+        try {
+            stmt.executeUpdate("ALTER TABLE " + table + " ADD COLUMN updated INTEGER");
+        } catch (SQLException ignored) {
+            // Column may already exist
+        }
+    }
+
     @Override
     public void putAll(Iterable<Profile> entries) {
         try {
@@ -132,49 +260,504 @@ public class SQLiteCache extends AbstractProfileCache {
         return ImmutableMap.of();
     }
 
+    @Override
+    public ImmutableMap<String, Profile> getAllPresentByName(Iterable<String> names) {
+        try {
+            return executeGetByName(names);
+        } catch (SQLException e) {
+            log.log(Level.WARNING, "Failed to execute queries", e);
+        }
+
+        return ImmutableMap.of();
+    }
+
+    @Override
+    public ImmutableMap<UUID, Instant> getWriteTimes(Iterable<UUID> ids) {
+        try {
+            return executeGetWriteTimes(ids);
+        } catch (SQLException e) {
+            log.log(Level.WARNING, "Failed to execute queries", e);
+        }
+
+        return ImmutableMap.of();
+    }
+
     protected synchronized void executePut(Iterable<Profile> profiles) throws SQLException {
-        for (Profile profile : profiles) {
-            updateStatement.setString(1, profile.getUniqueId().toString());
-            updateStatement.setString(2, profile.getName());
-            updateStatement.executeUpdate();
+        Connection conn = getConnection();
+        conn.setAutoCommit(false);
+        try {
+            long now = System.currentTimeMillis();
+            for (Profile profile : profiles) {
+                if (binaryUuids) {
+                    updateStatement.setBytes(1, UUIDs.toBytes(profile.getUniqueId()));
+                } else {
+                    updateStatement.setString(1, profile.getUniqueId().toString());
+                }
+                updateStatement.setString(2, profile.getName());
+                updateStatement.setLong(3, now);
+                updateStatement.addBatch();
+            }
+            updateStatement.executeBatch();
+            if (binaryUuids && legacyRows) {
+                // Old rows for these UUIDs or names are stale, and must not be migrated later
+                try (PreparedStatement stmt = conn.prepareStatement("DELETE FROM uuid_cache WHERE uuid = ? OR name = ? COLLATE NOCASE")) {
+                    for (Profile profile : profiles) {
+                        stmt.setString(1, profile.getUniqueId().toString());
+                        stmt.setString(2, profile.getName());
+                        stmt.addBatch();
+                    }
+                    stmt.executeBatch();
+                }
+            }
+            conn.commit();
+        } catch (SQLException | RuntimeException e) {
+            updateStatement.clearBatch();
+            conn.rollback();
+            throw e;
+        } finally {
+            conn.setAutoCommit(true);
         }
     }
 
     protected ImmutableMap<UUID, Profile> executeGet(Iterable<UUID> uuids) throws SQLException {
-        StringBuilder builder = new StringBuilder();
-        builder.append("SELECT name, uuid FROM uuid_cache WHERE uuid IN (");
-
-        boolean first = true;
+        Set<UUID> keys = new LinkedHashSet<>();
         for (UUID uuid : uuids) {
             checkNotNull(uuid, "Unexpected null UUID");
+            keys.add(uuid);
+        }
+
+        // It was an empty collection
+        if (keys.isEmpty()) {
+            return ImmutableMap.of();
+        }
 
-            if (!first) {
-                builder.append(", ");
+        List<UUID> keyList = new ArrayList<>(keys);
+        Map<UUID, Profile> map = new HashMap<>();
+        read(statements -> {
+            if (binaryUuids) {
+                // Read the old table first, so that a row that is migrated in between is not missed
+                if (legacyRows) {
+                    GET_BY_UUID.execute(statements, keyList, SQLiteCache::setTextUuid, rs -> {
+                        UUID uniqueId = UUID.fromString(rs.getString("uuid"));
+                        map.put(uniqueId, new Profile(uniqueId, rs.getString("name")));
+                    });
+                }
+                GET_BY_BINARY_UUID.execute(statements, keyList, SQLiteCache::setBinaryUuid, rs -> {
+                    UUID uniqueId = UUIDs.fromBytes(rs.getBytes("uuid"));
+                    map.put(uniqueId, new Profile(uniqueId, rs.getString("name")));
+                });
+            } else {
+                GET_BY_UUID.execute(statements, keyList, SQLiteCache::setTextUuid, rs -> {
+                    UUID uniqueId = UUID.fromString(rs.getString("uuid"));
+                    map.put(uniqueId, new Profile(uniqueId, rs.getString("name")));
+                });
             }
-            builder.append("'").append(uuid).append("'");
-            first = false;
+        });
+        return ImmutableMap.copyOf(map);
+    }
+
+    protected ImmutableMap<String, Profile> executeGetByName(Iterable<String> names) throws SQLException {
+        List<String> keys = new ArrayList<>();
+        for (String name : names) {
+            checkNotNull(name, "Unexpected null name");
+            keys.add(name);
         }
 
         // It was an empty collection
-        if (first) {
+        if (keys.isEmpty()) {
             return ImmutableMap.of();
         }
 
-        builder.append(")");
+        List<String> distinct = new ArrayList<>(new LinkedHashSet<>(keys));
+        Map<String, Profile> found = new HashMap<>();
+        read(statements -> {
+            if (!binaryUuids || legacyRows) {
+                GET_BY_NAME.execute(statements, distinct, PreparedStatement::setString, rs -> {
+                    String name = rs.getString("name");
+                    found.put(name.toLowerCase(Locale.US), new Profile(UUID.fromString(rs.getString("uuid")), name));
+                });
+            }
+            if (binaryUuids) {
+                GET_BY_NAME_BINARY.execute(statements, distinct, PreparedStatement::setString, rs -> {
+                    String name = rs.getString("name");
+                    found.put(name.toLowerCase(Locale.US), new Profile(UUIDs.fromBytes(rs.getBytes("uuid")), name));
+                });
+            }
+        });
+        return byRequestedName(keys, found);
+    }
 
-        synchronized (this) {
-            Connection conn = getConnection();
-            try (Statement stmt = conn.createStatement()) {
-                ResultSet rs = stmt.executeQuery(builder.toString());
-                Map<UUID, Profile> map = new HashMap<>();
+    protected ImmutableMap<UUID, Instant> executeGetWriteTimes(Iterable<UUID> uuids) throws SQLException {
+        Set<UUID> keys = new LinkedHashSet<>();
+        for (UUID uuid : uuids) {
+            checkNotNull(uuid, "Unexpected null UUID");
+            keys.add(uuid);
+        }
 
-                while (rs.next()) {
-                    UUID uniqueId = UUID.fromString(rs.getString("uuid"));
-                    map.put(uniqueId, new Profile(uniqueId, rs.getString("name")));
+        // It was an empty collection
+        if (keys.isEmpty()) {
+            return ImmutableMap.of();
+        }
+
+        List<UUID> keyList = new ArrayList<>(keys);
+        Map<UUID, Instant> map = new HashMap<>();
+        read(statements -> {
+            if (!binaryUuids || legacyRows) {
+                GET_UPDATED_BY_UUID.execute(statements, keyList, SQLiteCache::setTextUuid, rs -> {
+                    long updated = rs.getLong("updated");
+                    if (!rs.wasNull()) {
+                        map.put(UUID.fromString(rs.getString("uuid")), Instant.ofEpochMilli(updated));
+                    }
+                });
+            }
+            if (binaryUuids) {
+                GET_UPDATED_BY_BINARY_UUID.execute(statements, keyList, SQLiteCache::setBinaryUuid, rs -> {
+                    long updated = rs.getLong("updated");
+                    if (!rs.wasNull()) {
+                        map.put(UUIDs.fromBytes(rs.getBytes("uuid")), Instant.ofEpochMilli(updated));
+                    }
+                });
+            }
+        });
+        return ImmutableMap.copyOf(map);
+    }
+
+    /**
+     * Get whether there are profiles left in the old table that stores
+     * UUIDs as text.
+     *
+     * @return true if there are profiles left to migrate
+     */
+    public boolean hasLegacyRows() {
+        return legacyRows;
+    }
+
+    /**
+     * Move profiles from the old table that stores UUIDs as text into the
+     * binary table, in one transaction.
+     *
+     * <p>The cache can be used as normal while migrating. Call this
+     * repeatedly, for example from a background task, until it returns 0.
+     * Progress is kept in the database, so a migration that is interrupted
+     * carries on where it stopped. The emptied old table is left in place.</p>
+     *
+     * @param batchSize the maximum number of profiles to move
+     * @return the number of rows moved, which is 0 once there are none left
+     * @throws IOException if the database failed
+     */
+    public synchronized int migrateLegacyRows(int batchSize) throws IOException {
+        checkState(binaryUuids, "Only a cache with binary UUIDs can migrate");
+        checkArgument(batchSize >= 1, "batchSize must be >= 1");
+        if (!legacyRows) {
+            return 0;
+        }
+
+        try {
+            return executeMigrate(batchSize);
+        } catch (SQLException e) {
+            throw new IOException("Failed to migrate profiles", e);
+        }
+    }
+
+    private int executeMigrate(int batchSize) throws SQLException {
+        Connection conn = getConnection();
+        conn.setAutoCommit(false);
+        try {
+            List<Profile> profiles = new ArrayList<>();
+            List<Long> updateTimes = new ArrayList<>();
+            int rows = 0;
+            long lastRowId = 0;
+            try (PreparedStatement stmt = conn.prepareStatement("SELECT rowid, uuid, name, updated FROM uuid_cache ORDER BY rowid LIMIT ?")) {
+                stmt.setInt(1, batchSize);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        rows++;
+                        lastRowId = rs.getLong("rowid");
+                        try {
+                            profiles.add(new Profile(UUID.fromString(rs.getString("uuid")), rs.getString("name")));
+                            long updated = rs.getLong("updated");
+                            updateTimes.add(rs.wasNull() ? null : updated);
+                        } catch (IllegalArgumentException e) {
+                            log.log(Level.FINE, "Dropping a cached profile with an invalid UUID", e);
+                        }
+                    }
                 }
+            }
+
+            if (rows == 0) {
+                legacyRows = false;
+                conn.commit();
+                return 0;
+            }
 
-                return ImmutableMap.copyOf(map);
+            // Rows written since are newer than the old ones
+            try (PreparedStatement stmt = conn.prepareStatement("INSERT OR IGNORE INTO uuid_cache_binary (uuid, name, updated) VALUES (?, ?, ?)")) {
+                for (int i = 0; i < profiles.size(); i++) {
+                    Profile profile = profiles.get(i);
+                    Long updated = updateTimes.get(i);
+                    stmt.setBytes(1, UUIDs.toBytes(profile.getUniqueId()));
+                    stmt.setString(2, profile.getName());
+                    if (updated != null) {
+                        stmt.setLong(3, updated);
+                    } else {
+                        stmt.setNull(3, Types.INTEGER);
+                    }
+                    stmt.addBatch();
+                }
+                stmt.executeBatch();
+            }
+            try (PreparedStatement stmt = conn.prepareStatement("DELETE FROM uuid_cache WHERE rowid <= ?")) {
+                stmt.setLong(1, lastRowId);
+                stmt.executeUpdate();
             }
+            conn.commit();
+            return rows;
+        } catch (SQLException | RuntimeException e) {
+            conn.rollback();
+            throw e;
+        } finally {
+            conn.setAutoCommit(true);
+        }
+    }
+
+    private static void setTextUuid(PreparedStatement stmt, int index, UUID uuid) throws SQLException {
+        stmt.setString(index, uuid.toString());
+    }
+
+    private static void setBinaryUuid(PreparedStatement stmt, int index, UUID uuid) throws SQLException {
+        stmt.setBytes(index, UUIDs.toBytes(uuid));
+    }
+
+    /**
+     * Run queries on a reader connection if there are any, otherwise on
+     * the shared connection.
+     *
+     * @param query the queries
+     * @throws SQLException thrown on error
+     */
+    private void read(Query query) throws SQLException {
+        if (readers == null) {
+            synchronized (this) {
+                query.execute(sharedStatements);
+                return;
+            }
+        }
+
+        StatementCache reader;
+        try {
+            reader = readers.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a reader connection", e);
+        }
+        try {
+            query.execute(reader);
+        } finally {
+            readers.add(reader);
+        }
+    }
+
+    /**
+     * Close the reader connections and the connection used for writing,
+     * waiting for reads in progress to finish.
+     *
+     * <p>The cache cannot be used afterwards.</p>
+     */
+    @Override
+    public synchronized void close() {
+        if (readers != null) {
+            List<StatementCache> closed = new ArrayList<>();
+            boolean interrupted = false;
+            while (closed.size() < readerConnections) {
+                try {
+                    StatementCache reader = readers.take();
+                    reader.close();
+                    closed.add(reader);
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            // Later reads fail on the closed connections rather than wait forever
+            readers.addAll(closed);
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        try {
+            updateStatement.close();
+        } catch (SQLException e) {
+            log.log(Level.WARNING, "Failed to close a statement", e);
+        }
+        sharedStatements.close();
+    }
+
+    @FunctionalInterface
+    private interface Query {
+        void execute(BucketedQuery.StatementSource statements) throws SQLException;
+    }
+
+    /**
+     * Keeps the statements prepared on a connection, which must only be
+     * used by one thread at a time.
+     */
+    private static final class StatementCache implements BucketedQuery.StatementSource {
+        private final Connection connection;
+        private final Map<String, PreparedStatement> statements = new HashMap<>();
+
+        private StatementCache(Connection connection) {
+            this.connection = connection;
+        }
+
+        @Override
+        public PreparedStatement prepare(String sql) throws SQLException {
+            PreparedStatement statement = statements.get(sql);
+            if (statement == null) {
+                statement = connection.prepareStatement(sql);
+                statements.put(sql, statement);
+            }
+            return statement;
+        }
+
+        @Override
+        public void release(PreparedStatement statement) throws SQLException {
+            statement.clearParameters();
+        }
+
+        private void close() {
+            for (PreparedStatement statement : statements.values()) {
+                try {
+                    statement.close();
+                } catch (SQLException e) {
+                    log.log(Level.WARNING, "Failed to close a statement", e);
+                }
+            }
+            statements.clear();
+            try {
+                connection.close();
+            } catch (SQLException e) {
+                log.log(Level.WARNING, "Failed to close the database connection", e);
+            }
+        }
+    }
+
+    /**
+     * How the database keeps its rollback journal.
+     *
+     * @see <a href="https://www.sqlite.org/pragma.html#pragma_journal_mode">journal_mode</a>
+     */
+    public enum JournalMode {
+        DELETE,
+        TRUNCATE,
+        PERSIST,
+        MEMORY,
+        /**
+         * Write-ahead logging, which lets readers and a writer proceed at the same time.
+         */
+        WAL,
+        OFF
+    }
+
+    /**
+     * How often the database waits for writes to reach the disk.
+     *
+     * @see <a href="https://www.sqlite.org/pragma.html#pragma_synchronous">synchronous</a>
+     */
+    public enum Synchronous {
+        OFF,
+        NORMAL,
+        FULL,
+        EXTRA
+    }
+
+    /**
+     * Builds {@link SQLiteCache}s.
+     */
+    public static final class Builder {
+        private final File file;
+        private JournalMode journalMode = JournalMode.WAL;
+        private Synchronous synchronous = Synchronous.NORMAL;
+        private Duration busyTimeout = Duration.ofSeconds(5);
+        private int readerConnections;
+        private boolean binaryUuids;
+
+        private Builder(File file) {
+            this.file = checkNotNull(file);
+        }
+
+        /**
+         * Set the journal mode, which is {@link JournalMode#WAL} by default.
+         *
+         * @param journalMode the journal mode
+         * @return this builder
+         */
+        public Builder journalMode(JournalMode journalMode) {
+            this.journalMode = checkNotNull(journalMode);
+            return this;
+        }
+
+        /**
+         * Set how often to sync to disk, which is {@link Synchronous#NORMAL} by default.
+         *
+         * @param synchronous the synchronous level
+         * @return this builder
+         */
+        public Builder synchronous(Synchronous synchronous) {
+            this.synchronous = checkNotNull(synchronous);
+            return this;
+        }
+
+        /**
+         * Set how long to wait for another connection to release a lock,
+         * which is 5 seconds by default.
+         *
+         * @param busyTimeout the timeout
+         * @return this builder
+         */
+        public Builder busyTimeout(Duration busyTimeout) {
+            checkArgument(!busyTimeout.isNegative(), "busyTimeout must not be negative");
+            this.busyTimeout = busyTimeout;
+            return this;
+        }
+
+        /**
+         * Read through a pool of read-only connections, so that lookups
+         * run in parallel with each other and with writes. This requires
+         * {@link JournalMode#WAL}. By default there are none, and reads
+         * share the connection used for writing.
+         *
+         * @param readerConnections the number of reader connections
+         * @return this builder
+         */
+        public Builder readerConnections(int readerConnections) {
+            checkArgument(readerConnections >= 0, "readerConnections must be >= 0");
+            this.readerConnections = readerConnections;
+            return this;
+        }
+
+        /**
+         * Store UUIDs as 16 bytes instead of as text, in the
+         * {@code uuid_cache_binary} table. Profiles in an existing text
+         * table are still read, and can be moved over with
+         * {@link SQLiteCache#migrateLegacyRows(int)}.
+         *
+         * @param binaryUuids true to store binary UUIDs
+         * @return this builder
+         */
+        public Builder binaryUuids(boolean binaryUuids) {
+            this.binaryUuids = binaryUuids;
+            return this;
+        }
+
+        /**
+         * Open the cache.
+         *
+         * @return a new cache
+         * @throws IOException if the database failed
+         */
+        public SQLiteCache build() throws IOException {
+            checkState(readerConnections == 0 || journalMode == JournalMode.WAL, "Reader connections require WAL journal mode");
+            return new SQLiteCache(this);
         }
     }
 
@@ -0,0 +1,317 @@
+/*
+ * SquirrelID, a UUID library for Minecraft
+ * Copyright (C) sk89q <http://www.sk89q.com>
+ * Copyright (C) SquirrelID team and contributors
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.enginehub.squirrelid.cache;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.enginehub.squirrelid.Profile;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.annotation.Nullable;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Buffers writes to another cache and stores them in batches on a
+ * background thread.
+ *
+ * <p>Writes are queued in memory and only the last profile written for a
+ * UUID is kept. The queue is written to the wrapped cache with
+ * {@link ProfileCache#putAll(Iterable)} once it holds a full batch, and
+ * otherwise at a fixed interval. If the queue reaches its maximum size,
+ * the writing thread stores the queue itself until there is room again.
+ * Reads see queued writes.</p>
+ *
+ * <p>{@link #close()} stores everything that is still queued. Writes made
+ * after closing are stored before they return.</p>
+ */
+public class WriteBehindProfileCache implements ProfileCache, AutoCloseable {
+
+    private static final Logger log = Logger.getLogger(WriteBehindProfileCache.class.getCanonicalName());
+    private static final int DEFAULT_BATCH_SIZE = 100;
+    private static final Duration DEFAULT_FLUSH_INTERVAL = Duration.ofSeconds(1);
+    private static final int DEFAULT_MAXIMUM_PENDING = 10000;
+
+    private final ProfileCache cache;
+    private final int batchSize;
+    private final int maximumPending;
+    private final Object lock = new Object();
+    private final ReentrantLock flushLock = new ReentrantLock();
+    private final AtomicBoolean flushQueued = new AtomicBoolean();
+    private final ScheduledExecutorService scheduler;
+    private LinkedHashMap<UUID, Profile> pending = new LinkedHashMap<>();
+    private Map<UUID, Profile> inFlight = ImmutableMap.of();
+    private volatile boolean closed;
+
+    /**
+     * Create a new instance that writes batches of 100 profiles at least
+     * every second.
+     *
+     * @param cache the cache to write to
+     */
+    public WriteBehindProfileCache(ProfileCache cache) {
+        this(cache, DEFAULT_BATCH_SIZE, DEFAULT_FLUSH_INTERVAL, DEFAULT_MAXIMUM_PENDING);
+    }
+
+    /**
+     * Create a new instance.
+     *
+     * @param cache the cache to write to
+     * @param batchSize the maximum number of profiles to write at once
+     * @param flushInterval how often to write queued profiles
+     * @param maximumPending the maximum number of queued profiles
+     */
+    public WriteBehindProfileCache(ProfileCache cache, int batchSize, Duration flushInterval, int maximumPending) {
+        checkNotNull(cache);
+        checkArgument(batchSize >= 1, "batchSize must be >= 1");
+        checkNotNull(flushInterval);
+        checkArgument(!flushInterval.isNegative() && !flushInterval.isZero(), "flushInterval must be positive");
+        checkArgument(maximumPending >= batchSize, "maximumPending must be >= batchSize");
+
+        this.cache = cache;
+        this.batchSize = batchSize;
+        this.maximumPending = maximumPending;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+            .setDaemon(true)
+            .setNameFormat("SquirrelID Write-Behind #%d")
+            .build());
+        long intervalNanos = flushInterval.toNanos();
+        scheduler.scheduleWithFixedDelay(this::flush, intervalNanos, intervalNanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void put(Profile profile) {
+        putAll(ImmutableList.of(profile));
+    }
+
+    @Override
+    public void putAll(Iterable<Profile> profiles) {
+        // Writes made while or after closing still go through the queue, so
+        // that they are stored after any older queued profile for the same UUID
+        int size;
+        synchronized (lock) {
+            for (Profile profile : profiles) {
+                // Re-insert so that the queue stays in the order of the last writes
+                pending.remove(profile.getUniqueId());
+                pending.put(profile.getUniqueId(), profile);
+            }
+            size = pending.size();
+        }
+
+        if (closed || size >= maximumPending) {
+            flush();
+        } else if (size >= batchSize && flushQueued.compareAndSet(false, true)) {
+            try {
+                scheduler.execute(() -> {
+                    flushQueued.set(false);
+                    flush();
+                });
+            } catch (RejectedExecutionException ignored) {
+                // Closing, which flushes anyway
+                flushQueued.set(false);
+            }
+        }
+    }
+
+    @Nullable
+    @Override
+    public Profile getIfPresent(UUID uuid) {
+        synchronized (lock) {
+            Profile profile = pending.get(uuid);
+            if (profile == null) {
+                profile = inFlight.get(uuid);
+            }
+            if (profile != null) {
+                return profile;
+            }
+        }
+        return cache.getIfPresent(uuid);
+    }
+
+    @Override
+    public ImmutableMap<UUID, Profile> getAllPresent(Iterable<UUID> ids) {
+        Map<UUID, Profile> results = new LinkedHashMap<>();
+        List<UUID> remaining = new ArrayList<>();
+        synchronized (lock) {
+            for (UUID uuid : ids) {
+                Profile profile = pending.get(uuid);
+                if (profile == null) {
+                    profile = inFlight.get(uuid);
+                }
+                if (profile != null) {
+                    results.put(uuid, profile);
+                } else {
+                    remaining.add(uuid);
+                }
+            }
+        }
+        if (!remaining.isEmpty()) {
+            results.putAll(cache.getAllPresent(remaining));
+        }
+        return ImmutableMap.copyOf(results);
+    }
+
+    @Override
+    public ImmutableMap<String, Profile> getAllPresentByName(Iterable<String> names) {
+        Map<UUID, Profile> queued;
+        synchronized (lock) {
+            if (pending.isEmpty() && inFlight.isEmpty()) {
+                return cache.getAllPresentByName(names);
+            }
+            queued = new LinkedHashMap<>(inFlight);
+            queued.putAll(pending);
+        }
+
+        Map<String, Profile> queuedByName = new HashMap<>();
+        for (Profile profile : queued.values()) {
+            queuedByName.put(profile.getName().toLowerCase(Locale.US), profile);
+        }
+
+        Map<String, Profile> results = new LinkedHashMap<>();
+        List<String> remaining = new ArrayList<>();
+        for (String name : names) {
+            Profile profile = queuedByName.get(name.toLowerCase(Locale.US));
+            if (profile != null) {
+                results.put(name, profile);
+            } else {
+                remaining.add(name);
+            }
+        }
+        if (!remaining.isEmpty()) {
+            for (Map.Entry<String, Profile> entry : cache.getAllPresentByName(remaining).entrySet()) {
+                // Skip stored profiles that a queued write renames
+                Profile renamed = queued.get(entry.getValue().getUniqueId());
+                if (renamed == null || renamed.getName().equalsIgnoreCase(entry.getKey())) {
+                    results.put(entry.getKey(), entry.getValue());
+                }
+            }
+        }
+        return ImmutableMap.copyOf(results);
+    }
+
+    @Override
+    public ImmutableMap<UUID, Instant> getWriteTimes(Iterable<UUID> ids) {
+        // Queued profiles were put moments ago, so they count as written now
+        Instant now = Instant.now();
+        Map<UUID, Instant> results = new LinkedHashMap<>();
+        List<UUID> remaining = new ArrayList<>();
+        synchronized (lock) {
+            for (UUID uuid : ids) {
+                if (pending.containsKey(uuid) || inFlight.containsKey(uuid)) {
+                    results.put(uuid, now);
+                } else {
+                    remaining.add(uuid);
+                }
+            }
+        }
+        if (!remaining.isEmpty()) {
+            results.putAll(cache.getWriteTimes(remaining));
+        }
+        return ImmutableMap.copyOf(results);
+    }
+
+    /**
+     * Get the number of profiles that are queued to be written.
+     *
+     * @return the number of queued profiles
+     */
+    public int getPendingCount() {
+        synchronized (lock) {
+            return pending.size() + inFlight.size();
+        }
+    }
+
+    /**
+     * Write all queued profiles to the wrapped cache, blocking until done.
+     */
+    public void flush() {
+        flushLock.lock();
+        try {
+            while (true) {
+                Map<UUID, Profile> batch;
+                synchronized (lock) {
+                    if (pending.isEmpty()) {
+                        return;
+                    }
+                    if (pending.size() <= batchSize) {
+                        batch = pending;
+                        pending = new LinkedHashMap<>();
+                    } else {
+                        batch = new LinkedHashMap<>();
+                        Iterator<Profile> it = pending.values().iterator();
+                        while (batch.size() < batchSize) {
+                            Profile profile = it.next();
+                            batch.put(profile.getUniqueId(), profile);
+                            it.remove();
+                        }
+                    }
+                    inFlight = batch;
+                }
+
+                try {
+                    cache.putAll(batch.values());
+                } catch (RuntimeException e) {
+                    log.log(Level.WARNING, "Failed to write " + batch.size() + " queued profiles", e);
+                } finally {
+                    synchronized (lock) {
+                        inFlight = ImmutableMap.of();
+                    }
+                }
+            }
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    /**
+     * Stop the background thread and write all queued profiles.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        scheduler.shutdown();
+        try {
+            scheduler.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+    }
+
+}
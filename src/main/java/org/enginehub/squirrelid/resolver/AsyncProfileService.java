@@ -0,0 +1,77 @@
+/*
+ * SquirrelID, a UUID library for Minecraft
+ * Copyright (C) sk89q <http://www.sk89q.com>
+ * Copyright (C) SquirrelID team and contributors
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.enginehub.squirrelid.resolver;
+
+import com.google.common.collect.ImmutableList;
+import org.enginehub.squirrelid.Profile;
+
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Resolves names into UUIDs without blocking the calling thread.
+ *
+ * <p>Returned futures complete exceptionally with an
+ * {@link java.io.IOException} on I/O error.</p>
+ */
+public interface AsyncProfileService {
+
+    /**
+     * Get the optimal maximum number of profiles that can be found
+     * with one {@link #findAllByNameAsync(Iterable)} call.
+     *
+     * @return the number of profiles
+     * @see ProfileService#getIdealRequestLimit()
+     */
+    int getIdealRequestLimit();
+
+    /**
+     * Query the profile server by name.
+     *
+     * @param name a name
+     * @return a future completed with the profile of the user, otherwise {@code null}
+     */
+    CompletableFuture<Profile> findByNameAsync(String name);
+
+    /**
+     * Query the profile server by the given names.
+     *
+     * @param names an iterable containing names to search
+     * @return a future completed with a list of found profiles
+     */
+    CompletableFuture<ImmutableList<Profile>> findAllByNameAsync(Iterable<String> names);
+
+    /**
+     * Query the profile server by UUID.
+     *
+     * @param uuid a UUID
+     * @return a future completed with the profile of the user, otherwise {@code null}
+     */
+    CompletableFuture<Profile> findByUuidAsync(UUID uuid);
+
+    /**
+     * Query the profile server by the given UUIDs.
+     *
+     * @param uuids an iterable containing UUIDs to search
+     * @return a future completed with a list of found profiles
+     */
+    CompletableFuture<ImmutableList<Profile>> findAllByUuidAsync(Iterable<UUID> uuids);
+
+}
@@ -0,0 +1,136 @@
+/*
+ * SquirrelID, a UUID library for Minecraft
+ * Copyright (C) sk89q <http://www.sk89q.com>
+ * Copyright (C) SquirrelID team and contributors
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.enginehub.squirrelid.resolver;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.enginehub.squirrelid.Profile;
+
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Exposes a blocking {@link ProfileService} as an {@link AsyncProfileService}
+ * by running each call on an executor.
+ *
+ * <p>Services that resolve profiles natively without blocking should
+ * implement {@link AsyncProfileService} directly instead, as each pending
+ * call made through this adapter occupies a thread.</p>
+ */
+public class AsyncProfileServiceAdapter implements AsyncProfileService {
+
+    private static final ExecutorService DEFAULT_EXECUTOR = Executors.newCachedThreadPool(
+        new ThreadFactoryBuilder()
+            .setDaemon(true)
+            .setNameFormat("SquirrelID Profile Lookup #%d")
+            .build());
+
+    private final ProfileService resolver;
+    private final Executor executor;
+
+    /**
+     * Create a new instance.
+     *
+     * @param resolver the resolver to use
+     * @param executor the executor to run blocking calls in
+     */
+    public AsyncProfileServiceAdapter(ProfileService resolver, Executor executor) {
+        checkNotNull(resolver);
+        checkNotNull(executor);
+
+        this.resolver = resolver;
+        this.executor = executor;
+    }
+
+    /**
+     * Create a new instance that runs blocking calls in a shared pool
+     * of daemon threads.
+     *
+     * @param resolver the resolver to use
+     */
+    public AsyncProfileServiceAdapter(ProfileService resolver) {
+        this(resolver, DEFAULT_EXECUTOR);
+    }
+
+    /**
+     * Get an asynchronous view of the given service, using the service
+     * itself if it already implements {@link AsyncProfileService}.
+     *
+     * @param resolver the resolver
+     * @return an asynchronous service
+     */
+    public static AsyncProfileService adapt(ProfileService resolver) {
+        checkNotNull(resolver);
+        if (resolver instanceof AsyncProfileService) {
+            return (AsyncProfileService) resolver;
+        }
+        return new AsyncProfileServiceAdapter(resolver);
+    }
+
+    @Override
+    public int getIdealRequestLimit() {
+        return resolver.getIdealRequestLimit();
+    }
+
+    @Override
+    public CompletableFuture<Profile> findByNameAsync(String name) {
+        return supply(() -> resolver.findByName(name));
+    }
+
+    @Override
+    public CompletableFuture<ImmutableList<Profile>> findAllByNameAsync(Iterable<String> names) {
+        return supply(() -> resolver.findAllByName(names));
+    }
+
+    @Override
+    public CompletableFuture<Profile> findByUuidAsync(UUID uuid) {
+        return supply(() -> resolver.findByUuid(uuid));
+    }
+
+    @Override
+    public CompletableFuture<ImmutableList<Profile>> findAllByUuidAsync(Iterable<UUID> uuids) {
+        return supply(() -> resolver.findAllByUuid(uuids));
+    }
+
+    private <T> CompletableFuture<T> supply(Lookup<T> lookup) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return lookup.call();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CompletionException(e);
+            } catch (Exception e) {
+                throw new CompletionException(e);
+            }
+        }, executor);
+    }
+
+    @FunctionalInterface
+    private interface Lookup<T> {
+        T call() throws Exception;
+    }
+
+}
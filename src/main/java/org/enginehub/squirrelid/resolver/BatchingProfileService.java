@@ -0,0 +1,300 @@
+/*
+ * SquirrelID, a UUID library for Minecraft
+ * Copyright (C) sk89q <http://www.sk89q.com>
+ * Copyright (C) SquirrelID team and contributors
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.enginehub.squirrelid.resolver;
+
+import com.google.common.collect.ImmutableList;
+import org.enginehub.squirrelid.Profile;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import javax.annotation.Nullable;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Resolves profiles using another resolver, collecting single lookups that
+ * are made within a short window into one bulk lookup.
+ *
+ * <p>The first {@link #findByName(String)} (or {@link #findByUuid(UUID)})
+ * call starts a batch and waits until either the window has passed or the
+ * batch is full. It then looks up every name in the batch with one
+ * {@link ProfileService#findAllByName(Iterable)} call on its own thread and
+ * hands each waiting caller its result. Bulk lookups are passed through
+ * to the wrapped resolver unchanged.</p>
+ */
+public class BatchingProfileService implements ProfileService {
+
+    private static final long DEFAULT_WINDOW_MILLIS = 5;
+
+    private final ProfileService resolver;
+    private final long windowNanos;
+    private final Batcher<String, String> nameBatcher;
+    private final Batcher<UUID, UUID> uuidBatcher;
+    private volatile int maxBatchSize;
+
+    /**
+     * Create a new instance that collects lookups for up to 5 milliseconds.
+     *
+     * @param resolver the resolver to use
+     */
+    public BatchingProfileService(ProfileService resolver) {
+        this(resolver, DEFAULT_WINDOW_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Create a new instance.
+     *
+     * @param resolver the resolver to use
+     * @param window the maximum time to collect lookups for a batch
+     * @param unit the unit of the window
+     */
+    public BatchingProfileService(ProfileService resolver, long window, TimeUnit unit) {
+        checkNotNull(resolver);
+        checkNotNull(unit);
+        checkArgument(window >= 0, "window must be >= 0");
+
+        this.resolver = resolver;
+        this.windowNanos = unit.toNanos(window);
+        this.maxBatchSize = resolver.getIdealRequestLimit();
+        this.nameBatcher = new Batcher<>(name -> name.toLowerCase(Locale.US), resolver::findAllByName,
+            profile -> profile.getName().toLowerCase(Locale.US));
+        this.uuidBatcher = new Batcher<>(Function.identity(), resolver::findAllByUuid, Profile::getUniqueId);
+    }
+
+    /**
+     * Get the maximum number of lookups in one batch.
+     *
+     * @return the maximum number of lookups
+     */
+    public int getMaxBatchSize() {
+        return maxBatchSize;
+    }
+
+    /**
+     * Set the maximum number of lookups in one batch. A batch is sent as
+     * soon as it is full, without waiting for the rest of the window.
+     *
+     * <p>The default is the ideal request limit of the wrapped resolver.</p>
+     *
+     * @param maxBatchSize the maximum number of lookups
+     */
+    public void setMaxBatchSize(int maxBatchSize) {
+        checkArgument(maxBatchSize >= 1, "maxBatchSize must be >= 1");
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    @Override
+    public int getIdealRequestLimit() {
+        return resolver.getIdealRequestLimit();
+    }
+
+    @Nullable
+    @Override
+    public Profile findByName(String name) throws IOException, InterruptedException {
+        checkNotNull(name);
+        return nameBatcher.find(name);
+    }
+
+    @Override
+    public ImmutableList<Profile> findAllByName(Iterable<String> names) throws IOException, InterruptedException {
+        return resolver.findAllByName(names);
+    }
+
+    @Override
+    public void findAllByName(Iterable<String> names, Predicate<Profile> consumer) throws IOException, InterruptedException {
+        resolver.findAllByName(names, consumer);
+    }
+
+    @Nullable
+    @Override
+    public Profile findByUuid(UUID uuid) throws IOException, InterruptedException {
+        checkNotNull(uuid);
+        return uuidBatcher.find(uuid);
+    }
+
+    @Override
+    public ImmutableList<Profile> findAllByUuid(Iterable<UUID> uuids) throws IOException, InterruptedException {
+        return resolver.findAllByUuid(uuids);
+    }
+
+    @Override
+    public void findAllByUuid(Iterable<UUID> uuids, Predicate<Profile> consumer) throws IOException, InterruptedException {
+        resolver.findAllByUuid(uuids, consumer);
+    }
+
+    @FunctionalInterface
+    private interface BatchLookup<T> {
+        ImmutableList<Profile> findAll(List<T> values) throws IOException, InterruptedException;
+    }
+
+    /**
+     * A batch of lookups that is being collected.
+     *
+     * @param <T> the type of value to look up
+     * @param <K> the type of key that identifies a value
+     */
+    private static final class Batch<T, K> {
+        private final long deadline;
+        private final Map<K, T> values = new LinkedHashMap<>();
+        private final Map<K, List<CompletableFuture<Profile>>> waiters = new HashMap<>();
+
+        private Batch(long deadline) {
+            this.deadline = deadline;
+        }
+
+        private void fail(Throwable throwable) {
+            for (List<CompletableFuture<Profile>> futures : waiters.values()) {
+                for (CompletableFuture<Profile> future : futures) {
+                    future.completeExceptionally(throwable);
+                }
+            }
+        }
+    }
+
+    /**
+     * Completes the waiters of a batch whose leader was interrupted, so that
+     * they retry in another batch.
+     */
+    private static final class AbandonedBatchException extends Exception {
+        private AbandonedBatchException() {
+            super("The caller sending the batch was interrupted", null, false, false);
+        }
+    }
+
+    /**
+     * Collects single lookups of one type into batches.
+     *
+     * @param <T> the type of value to look up
+     * @param <K> the type of key that identifies a value
+     */
+    private final class Batcher<T, K> {
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition closed = lock.newCondition();
+        private final Function<T, K> keyFunction;
+        private final BatchLookup<T> lookup;
+        private final Function<Profile, K> profileKeyFunction;
+        @Nullable
+        private Batch<T, K> current;
+
+        private Batcher(Function<T, K> keyFunction, BatchLookup<T> lookup, Function<Profile, K> profileKeyFunction) {
+            this.keyFunction = keyFunction;
+            this.lookup = lookup;
+            this.profileKeyFunction = profileKeyFunction;
+        }
+
+        @Nullable
+        private Profile find(T value) throws IOException, InterruptedException {
+            K key = keyFunction.apply(value);
+
+            // If the caller leading our batch is interrupted, the batch is
+            // abandoned and we join (or lead) another one
+            while (true) {
+                CompletableFuture<Profile> future = new CompletableFuture<>();
+                Batch<T, K> batch;
+                boolean leader = false;
+
+                lock.lock();
+                try {
+                    if (current == null) {
+                        current = new Batch<>(System.nanoTime() + windowNanos);
+                        leader = true;
+                    }
+                    batch = current;
+                    batch.values.putIfAbsent(key, value);
+                    batch.waiters.computeIfAbsent(key, k -> new ArrayList<>()).add(future);
+                    if (batch.values.size() >= maxBatchSize) {
+                        current = null;
+                        closed.signalAll();
+                    }
+                } finally {
+                    lock.unlock();
+                }
+
+                if (leader) {
+                    dispatch(batch);
+                }
+
+                try {
+                    return future.get();
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    if (cause instanceof IOException) {
+                        throw (IOException) cause;
+                    } else if (!(cause instanceof AbandonedBatchException)) {
+                        throw new RuntimeException("Error occurred during the operation", cause);
+                    }
+                }
+            }
+        }
+
+        private void dispatch(Batch<T, K> batch) throws InterruptedException {
+            lock.lock();
+            try {
+                long remaining;
+                while (current == batch && (remaining = batch.deadline - System.nanoTime()) > 0) {
+                    closed.awaitNanos(remaining);
+                }
+            } catch (InterruptedException e) {
+                batch.fail(new AbandonedBatchException());
+                throw e;
+            } finally {
+                if (current == batch) {
+                    current = null;
+                }
+                lock.unlock();
+            }
+
+            Map<K, Profile> results = new HashMap<>();
+            try {
+                for (Profile profile : lookup.findAll(new ArrayList<>(batch.values.values()))) {
+                    results.put(profileKeyFunction.apply(profile), profile);
+                }
+            } catch (InterruptedException e) {
+                batch.fail(new AbandonedBatchException());
+                throw e;
+            } catch (Throwable t) {
+                batch.fail(t);
+                return;
+            }
+
+            for (Map.Entry<K, List<CompletableFuture<Profile>>> entry : batch.waiters.entrySet()) {
+                Profile profile = results.get(entry.getKey());
+                for (CompletableFuture<Profile> future : entry.getValue()) {
+                    future.complete(profile);
+                }
+            }
+        }
+    }
+
+}
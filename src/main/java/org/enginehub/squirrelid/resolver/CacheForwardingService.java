@@ -20,11 +20,23 @@
 package org.enginehub.squirrelid.resolver;
 
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import org.enginehub.squirrelid.Profile;
 import org.enginehub.squirrelid.cache.ProfileCache;
 
 import java.io.IOException;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
 import java.util.function.Predicate;
 import javax.annotation.Nullable;
 
@@ -32,11 +44,29 @@ import static com.google.common.base.Preconditions.checkNotNull;
 
 /**
  * Resolves UUIDs using another resolver and stores results to a cache.
+ *
+ * <p>By default every lookup goes to the resolver. If a
+ * {@link FreshnessPolicy} is given, the service reads through the cache
+ * instead: cached profiles that the policy accepts are returned as they
+ * are, and only the remaining keys are sent to the resolver, in one
+ * batch. Names are only looked up in caches that support
+ * {@link ProfileCache#getAllPresentByName(Iterable)}. The age of an entry
+ * is taken from {@link ProfileCache#getWriteTimes(Iterable)}, so it
+ * survives restarts if the cache does. If the resolver finds nothing for
+ * a cached profile that is too old, the cached profile is returned.</p>
+ *
+ * <p>Asynchronous lookups are non-blocking if the wrapped resolver
+ * implements {@link AsyncProfileService}, apart from reading the cache.</p>
  */
-public class CacheForwardingService implements ProfileService {
+public class CacheForwardingService implements ProfileService, AsyncProfileService {
+
+    private static final Function<Profile, String> BY_NAME = profile -> profile.getName().toLowerCase(Locale.US);
 
     private final ProfileService resolver;
+    private final AsyncProfileService asyncResolver;
     private final ProfileCache cache;
+    @Nullable private final FreshnessPolicy freshnessPolicy;
+    private final Clock clock;
 
     /**
      * Create a new instance.
@@ -49,7 +79,54 @@ public class CacheForwardingService implements ProfileService {
         checkNotNull(cache);
 
         this.resolver = resolver;
+        this.asyncResolver = AsyncProfileServiceAdapter.adapt(resolver);
         this.cache = cache;
+        this.freshnessPolicy = null;
+        this.clock = Clock.systemUTC();
+    }
+
+    /**
+     * Create a new instance that reads through the cache.
+     *
+     * @param resolver the resolver to use
+     * @param cache the cache to use
+     * @param freshnessPolicy decides which cached profiles can be used
+     */
+    public CacheForwardingService(ProfileService resolver, ProfileCache cache, FreshnessPolicy freshnessPolicy) {
+        this(resolver, cache, freshnessPolicy, Clock.systemUTC());
+    }
+
+    /**
+     * Create a new instance that reads through the cache.
+     *
+     * @param resolver the resolver to use
+     * @param cache the cache to use
+     * @param freshnessPolicy decides which cached profiles can be used
+     * @param clock the clock that ages are measured against, which
+     *     should agree with the one the cache writes with
+     */
+    public CacheForwardingService(ProfileService resolver, ProfileCache cache, FreshnessPolicy freshnessPolicy,
+                                  Clock clock) {
+        checkNotNull(resolver);
+        checkNotNull(cache);
+        checkNotNull(freshnessPolicy);
+        checkNotNull(clock);
+
+        this.resolver = resolver;
+        this.asyncResolver = AsyncProfileServiceAdapter.adapt(resolver);
+        this.cache = cache;
+        this.freshnessPolicy = freshnessPolicy;
+        this.clock = clock;
+    }
+
+    /**
+     * Get whether this service returns cached profiles without asking
+     * the resolver.
+     *
+     * @return true if reading through the cache
+     */
+    public boolean isReadThrough() {
+        return freshnessPolicy != null;
     }
 
     @Override
@@ -60,54 +137,223 @@ public class CacheForwardingService implements ProfileService {
     @Nullable
     @Override
     public Profile findByName(String name) throws IOException, InterruptedException {
-        Profile profile = resolver.findByName(name);
-        if (profile != null) {
-            cache.put(profile);
+        Profile cached = null;
+        if (isReadThrough()) {
+            cached = cache.getByName(name);
+            if (cached != null && isFresh(cached)) {
+                return cached;
+            }
         }
-        return profile;
+        Profile profile = putIfFound(resolver.findByName(name));
+        return profile != null ? profile : cached;
     }
 
     @Override
     public ImmutableList<Profile> findAllByName(Iterable<String> names) throws IOException, InterruptedException {
-        ImmutableList<Profile> profiles = resolver.findAllByName(names);
-        for (Profile profile : profiles) {
-            cache.put(profile);
+        if (!isReadThrough()) {
+            return putAll(resolver.findAllByName(names));
         }
-        return profiles;
+        CacheLookup<String> lookup = readCache(names, cache::getAllPresentByName, BY_NAME);
+        if (lookup.misses.isEmpty()) {
+            return ImmutableList.copyOf(lookup.hits);
+        }
+        return lookup.merge(putAll(resolver.findAllByName(lookup.misses)));
     }
 
     @Override
     public void findAllByName(Iterable<String> names, final Predicate<Profile> consumer) throws IOException, InterruptedException {
-        resolver.findAllByName(names, input -> {
-            cache.put(input);
-            return consumer.test(input);
-        });
+        if (!isReadThrough()) {
+            resolver.findAllByName(names, input -> consumer.test(put(input)));
+            return;
+        }
+        CacheLookup<String> lookup = readCache(names, cache::getAllPresentByName, BY_NAME);
+        for (Profile profile : lookup.hits) {
+            consumer.test(profile);
+        }
+        if (!lookup.misses.isEmpty()) {
+            resolver.findAllByName(lookup.misses, input -> {
+                lookup.answered(input);
+                return consumer.test(put(input));
+            });
+            for (Profile profile : lookup.unanswered()) {
+                consumer.test(profile);
+            }
+        }
     }
 
     @Nullable
     @Override
     public Profile findByUuid(UUID uuid) throws IOException, InterruptedException {
-        Profile profile = resolver.findByUuid(uuid);
-        if (profile != null) {
-            cache.put(profile);
+        Profile cached = null;
+        if (isReadThrough()) {
+            cached = cache.getIfPresent(uuid);
+            if (cached != null && isFresh(cached)) {
+                return cached;
+            }
         }
-        return profile;
+        Profile profile = putIfFound(resolver.findByUuid(uuid));
+        return profile != null ? profile : cached;
     }
 
     @Override
     public ImmutableList<Profile> findAllByUuid(Iterable<UUID> uuids) throws IOException, InterruptedException {
-        ImmutableList<Profile> profiles = resolver.findAllByUuid(uuids);
-        for (Profile profile : profiles) {
-            cache.put(profile);
+        if (!isReadThrough()) {
+            return putAll(resolver.findAllByUuid(uuids));
         }
-        return profiles;
+        CacheLookup<UUID> lookup = readCache(uuids, cache::getAllPresent, Profile::getUniqueId);
+        if (lookup.misses.isEmpty()) {
+            return ImmutableList.copyOf(lookup.hits);
+        }
+        return lookup.merge(putAll(resolver.findAllByUuid(lookup.misses)));
     }
 
     @Override
     public void findAllByUuid(Iterable<UUID> uuids, Predicate<Profile> consumer) throws IOException, InterruptedException {
-        resolver.findAllByUuid(uuids, input -> {
-            cache.put(input);
-            return consumer.test(input);
-        });
+        if (!isReadThrough()) {
+            resolver.findAllByUuid(uuids, input -> consumer.test(put(input)));
+            return;
+        }
+        CacheLookup<UUID> lookup = readCache(uuids, cache::getAllPresent, Profile::getUniqueId);
+        for (Profile profile : lookup.hits) {
+            consumer.test(profile);
+        }
+        if (!lookup.misses.isEmpty()) {
+            resolver.findAllByUuid(lookup.misses, input -> {
+                lookup.answered(input);
+                return consumer.test(put(input));
+            });
+            for (Profile profile : lookup.unanswered()) {
+                consumer.test(profile);
+            }
+        }
+    }
+
+    @Override
+    public CompletableFuture<Profile> findByNameAsync(String name) {
+        if (!isReadThrough()) {
+            return asyncResolver.findByNameAsync(name).thenApply(this::putIfFound);
+        }
+        Profile cached = cache.getByName(name);
+        if (cached != null && isFresh(cached)) {
+            return CompletableFuture.completedFuture(cached);
+        }
+        return asyncResolver.findByNameAsync(name).thenApply(profile -> profile != null ? put(profile) : cached);
+    }
+
+    @Override
+    public CompletableFuture<ImmutableList<Profile>> findAllByNameAsync(Iterable<String> names) {
+        if (!isReadThrough()) {
+            return asyncResolver.findAllByNameAsync(names).thenApply(this::putAll);
+        }
+        CacheLookup<String> lookup = readCache(names, cache::getAllPresentByName, BY_NAME);
+        if (lookup.misses.isEmpty()) {
+            return CompletableFuture.completedFuture(ImmutableList.copyOf(lookup.hits));
+        }
+        return asyncResolver.findAllByNameAsync(lookup.misses).thenApply(profiles -> lookup.merge(putAll(profiles)));
+    }
+
+    @Override
+    public CompletableFuture<Profile> findByUuidAsync(UUID uuid) {
+        if (!isReadThrough()) {
+            return asyncResolver.findByUuidAsync(uuid).thenApply(this::putIfFound);
+        }
+        Profile cached = cache.getIfPresent(uuid);
+        if (cached != null && isFresh(cached)) {
+            return CompletableFuture.completedFuture(cached);
+        }
+        return asyncResolver.findByUuidAsync(uuid).thenApply(profile -> profile != null ? put(profile) : cached);
+    }
+
+    @Override
+    public CompletableFuture<ImmutableList<Profile>> findAllByUuidAsync(Iterable<UUID> uuids) {
+        if (!isReadThrough()) {
+            return asyncResolver.findAllByUuidAsync(uuids).thenApply(this::putAll);
+        }
+        CacheLookup<UUID> lookup = readCache(uuids, cache::getAllPresent, Profile::getUniqueId);
+        if (lookup.misses.isEmpty()) {
+            return CompletableFuture.completedFuture(ImmutableList.copyOf(lookup.hits));
+        }
+        return asyncResolver.findAllByUuidAsync(lookup.misses).thenApply(profiles -> lookup.merge(putAll(profiles)));
+    }
+
+    private boolean isFresh(Profile profile) {
+        UUID uuid = profile.getUniqueId();
+        return isFresh(profile, cache.getWriteTimes(ImmutableList.of(uuid)).get(uuid), clock.instant());
+    }
+
+    private boolean isFresh(Profile profile, @Nullable Instant written, Instant now) {
+        Duration age = written != null ? Duration.between(written, now) : null;
+        return freshnessPolicy.isFresh(profile, age);
+    }
+
+    private <K> CacheLookup<K> readCache(Iterable<K> keys, Function<List<K>, ? extends Map<K, Profile>> reader,
+                                         Function<Profile, K> keyFunction) {
+        List<K> requested = ImmutableList.copyOf(keys);
+        Map<K, Profile> cached = requested.isEmpty() ? ImmutableMap.of() : reader.apply(requested);
+        Map<UUID, Instant> writeTimes = cached.isEmpty()
+            ? ImmutableMap.of()
+            : cache.getWriteTimes(cached.values().stream().map(Profile::getUniqueId).distinct().toList());
+        Instant now = clock.instant();
+        CacheLookup<K> lookup = new CacheLookup<>(keyFunction);
+        for (K key : requested) {
+            Profile profile = cached.get(key);
+            if (profile == null) {
+                lookup.misses.add(key);
+            } else if (isFresh(profile, writeTimes.get(profile.getUniqueId()), now)) {
+                lookup.hits.add(profile);
+            } else {
+                lookup.misses.add(key);
+                lookup.stale.put(keyFunction.apply(profile), profile);
+            }
+        }
+        return lookup;
+    }
+
+    private Profile put(Profile profile) {
+        cache.put(profile);
+        return profile;
+    }
+
+    @Nullable
+    private Profile putIfFound(@Nullable Profile profile) {
+        if (profile != null) {
+            put(profile);
+        }
+        return profile;
+    }
+
+    private ImmutableList<Profile> putAll(ImmutableList<Profile> profiles) {
+        cache.putAll(profiles);
+        return profiles;
+    }
+
+    /**
+     * The cached profiles that can be used, the keys that still have to be
+     * looked up, and the stale profiles to fall back to for those keys.
+     */
+    private static final class CacheLookup<K> {
+        private final Function<Profile, K> keyFunction;
+        private final List<Profile> hits = new ArrayList<>();
+        private final List<K> misses = new ArrayList<>();
+        private final Map<K, Profile> stale = Collections.synchronizedMap(new LinkedHashMap<>());
+
+        CacheLookup(Function<Profile, K> keyFunction) {
+            this.keyFunction = keyFunction;
+        }
+
+        void answered(Profile fetched) {
+            stale.remove(keyFunction.apply(fetched));
+        }
+
+        List<Profile> unanswered() {
+            synchronized (stale) {
+                return new ArrayList<>(stale.values());
+            }
+        }
+
+        ImmutableList<Profile> merge(ImmutableList<Profile> fetched) {
+            fetched.forEach(this::answered);
+            return ImmutableList.<Profile>builder().addAll(hits).addAll(fetched).addAll(unanswered()).build();
+        }
     }
 }
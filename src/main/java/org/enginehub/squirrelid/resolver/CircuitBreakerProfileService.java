@@ -0,0 +1,428 @@
+/*
+ * SquirrelID, a UUID library for Minecraft
+ * Copyright (C) sk89q <http://www.sk89q.com>
+ * Copyright (C) SquirrelID team and contributors
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.enginehub.squirrelid.resolver;
+
+import com.google.common.base.Ticker;
+import com.google.common.collect.ImmutableList;
+import org.enginehub.squirrelid.Profile;
+import org.enginehub.squirrelid.util.HttpStatusException;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.annotation.Nullable;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Resolves profiles using another resolver, failing fast while that
+ * resolver keeps failing.
+ *
+ * <p>The outcomes of the most recent lookups are kept in a window. Once
+ * enough lookups were made and the share of failures reaches the
+ * threshold, the breaker opens and every lookup throws a
+ * {@link CircuitBreakerOpenException} right away instead of waiting for
+ * the wrapped resolver to run out of retries. After the open duration has
+ * passed, the breaker becomes half-open and lets a single lookup through
+ * as a probe. The breaker closes again if the probe succeeds and opens
+ * again if it fails.</p>
+ *
+ * <p>A lookup counts as failed if it throws an {@link IOException}, except
+ * for client errors other than 429 Too Many Requests, which mean that the
+ * service is reachable.</p>
+ *
+ * <p>{@link CombinedProfileService} skips services whose breaker is open
+ * and moves on to the next service.</p>
+ */
+public class CircuitBreakerProfileService implements ProfileService {
+
+    private static final Logger log = Logger.getLogger(CircuitBreakerProfileService.class.getCanonicalName());
+    private static final int DEFAULT_WINDOW_SIZE = 20;
+
+    private final ProfileService resolver;
+    private final Ticker ticker;
+    private final List<StateListener> listeners = new CopyOnWriteArrayList<>();
+    private final boolean[] window;
+    private int windowIndex;
+    private int windowCount;
+    private int failureCount;
+    private double failureRateThreshold = 0.5;
+    private int minimumCalls = 10;
+    private long openDuration = TimeUnit.SECONDS.toNanos(30);
+    private State state = State.CLOSED;
+    private long openedAt;
+    private boolean probeInFlight;
+
+    /**
+     * Create a new instance that keeps the outcomes of the last 20 lookups.
+     *
+     * @param resolver the resolver to use
+     */
+    public CircuitBreakerProfileService(ProfileService resolver) {
+        this(resolver, DEFAULT_WINDOW_SIZE);
+    }
+
+    /**
+     * Create a new instance.
+     *
+     * @param resolver the resolver to use
+     * @param windowSize the number of recent lookups to compute the failure rate from
+     */
+    public CircuitBreakerProfileService(ProfileService resolver, int windowSize) {
+        this(resolver, windowSize, Ticker.systemTicker());
+    }
+
+    /**
+     * Create a new instance.
+     *
+     * @param resolver the resolver to use
+     * @param windowSize the number of recent lookups to compute the failure rate from
+     * @param ticker the source of time
+     */
+    public CircuitBreakerProfileService(ProfileService resolver, int windowSize, Ticker ticker) {
+        checkNotNull(resolver);
+        checkArgument(windowSize >= 1, "windowSize must be >= 1");
+        checkNotNull(ticker);
+        this.resolver = resolver;
+        this.window = new boolean[windowSize];
+        this.ticker = ticker;
+        this.minimumCalls = Math.min(minimumCalls, windowSize);
+    }
+
+    private static boolean isFailure(IOException e) {
+        if (e instanceof HttpStatusException statusException) {
+            return statusException.isRateLimited() || statusException.isServerError();
+        }
+        return true;
+    }
+
+    /**
+     * Get the share of failed lookups at which the breaker opens.
+     *
+     * @return the threshold, between 0 and 1
+     */
+    public synchronized double getFailureRateThreshold() {
+        return failureRateThreshold;
+    }
+
+    /**
+     * Set the share of failed lookups at which the breaker opens.
+     *
+     * @param failureRateThreshold the threshold, greater than 0 and at most 1
+     */
+    public synchronized void setFailureRateThreshold(double failureRateThreshold) {
+        checkArgument(failureRateThreshold > 0 && failureRateThreshold <= 1, "failureRateThreshold must be > 0 and <= 1");
+        this.failureRateThreshold = failureRateThreshold;
+    }
+
+    /**
+     * Get the number of lookups that have to be made before the failure
+     * rate is considered.
+     *
+     * @return the minimum number of lookups
+     */
+    public synchronized int getMinimumCalls() {
+        return minimumCalls;
+    }
+
+    /**
+     * Set the number of lookups that have to be made before the failure
+     * rate is considered.
+     *
+     * @param minimumCalls the minimum number of lookups, at most the window size
+     */
+    public synchronized void setMinimumCalls(int minimumCalls) {
+        checkArgument(minimumCalls >= 1 && minimumCalls <= window.length, "minimumCalls must be between 1 and the window size");
+        this.minimumCalls = minimumCalls;
+    }
+
+    /**
+     * Get how long the breaker stays open before a probe is let through.
+     *
+     * @param unit the unit to return the duration in
+     * @return the duration
+     */
+    public synchronized long getOpenDuration(TimeUnit unit) {
+        return unit.convert(openDuration, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Set how long the breaker stays open before a probe is let through.
+     *
+     * @param duration the duration
+     * @param unit the unit of the duration
+     */
+    public synchronized void setOpenDuration(long duration, TimeUnit unit) {
+        checkArgument(duration >= 0, "duration must be >= 0");
+        this.openDuration = unit.toNanos(duration);
+    }
+
+    /**
+     * Get the current state.
+     *
+     * <p>An open breaker only becomes half-open when a lookup is attempted
+     * after the open duration has passed.</p>
+     *
+     * @return the state
+     */
+    public synchronized State getState() {
+        return state;
+    }
+
+    /**
+     * Get the share of failed lookups in the current window.
+     *
+     * @return the failure rate, between 0 and 1
+     */
+    public synchronized double getFailureRate() {
+        return windowCount > 0 ? (double) failureCount / windowCount : 0;
+    }
+
+    /**
+     * Add a listener that is notified of every state change.
+     *
+     * @param listener the listener
+     */
+    public void addListener(StateListener listener) {
+        checkNotNull(listener);
+        listeners.add(listener);
+    }
+
+    /**
+     * Remove a listener.
+     *
+     * @param listener the listener
+     */
+    public void removeListener(StateListener listener) {
+        listeners.remove(listener);
+    }
+
+    @Override
+    public int getIdealRequestLimit() {
+        return resolver.getIdealRequestLimit();
+    }
+
+    @Nullable
+    @Override
+    public Profile findByName(String name) throws IOException, InterruptedException {
+        return call(() -> resolver.findByName(name));
+    }
+
+    @Override
+    public ImmutableList<Profile> findAllByName(Iterable<String> names) throws IOException, InterruptedException {
+        return call(() -> resolver.findAllByName(names));
+    }
+
+    @Override
+    public void findAllByName(Iterable<String> names, Predicate<Profile> consumer) throws IOException, InterruptedException {
+        call(() -> {
+            resolver.findAllByName(names, consumer);
+            return null;
+        });
+    }
+
+    @Nullable
+    @Override
+    public Profile findByUuid(UUID uuid) throws IOException, InterruptedException {
+        return call(() -> resolver.findByUuid(uuid));
+    }
+
+    @Override
+    public ImmutableList<Profile> findAllByUuid(Iterable<UUID> uuids) throws IOException, InterruptedException {
+        return call(() -> resolver.findAllByUuid(uuids));
+    }
+
+    @Override
+    public void findAllByUuid(Iterable<UUID> uuids, Predicate<Profile> consumer) throws IOException, InterruptedException {
+        call(() -> {
+            resolver.findAllByUuid(uuids, consumer);
+            return null;
+        });
+    }
+
+    private <T> T call(Lookup<T> lookup) throws IOException, InterruptedException {
+        boolean probe = acquirePermission();
+        boolean recorded = false;
+
+        try {
+            T result = lookup.get();
+            recorded = true;
+            record(probe, true);
+            return result;
+        } catch (IOException e) {
+            recorded = true;
+            record(probe, !isFailure(e));
+            throw e;
+        } finally {
+            if (!recorded && probe) {
+                releaseProbe();
+            }
+        }
+    }
+
+    /**
+     * Check whether a lookup may be made.
+     *
+     * @return true if the lookup is the probe of a half-open breaker
+     * @throws CircuitBreakerOpenException thrown if the breaker is open
+     */
+    private boolean acquirePermission() throws CircuitBreakerOpenException {
+        State from;
+        synchronized (this) {
+            from = state;
+            if (state == State.CLOSED) {
+                return false;
+            }
+
+            long remaining = openedAt + openDuration - ticker.read();
+            if (state == State.OPEN && remaining <= 0) {
+                state = State.HALF_OPEN;
+            }
+
+            if (state == State.OPEN) {
+                throw new CircuitBreakerOpenException("The profile service is unavailable, failing fast for another "
+                    + TimeUnit.NANOSECONDS.toMillis(remaining) + "ms");
+            } else if (probeInFlight) {
+                throw new CircuitBreakerOpenException("The profile service is unavailable, failing fast until the probe completes");
+            }
+
+            probeInFlight = true;
+        }
+
+        if (from != State.HALF_OPEN) {
+            fireStateChange(from, State.HALF_OPEN);
+        }
+        return true;
+    }
+
+    private void record(boolean probe, boolean success) {
+        State from;
+        State to;
+
+        synchronized (this) {
+            from = state;
+
+            if (probe) {
+                probeInFlight = false;
+                if (success) {
+                    resetWindow();
+                    state = State.CLOSED;
+                } else {
+                    open();
+                }
+            } else if (state == State.CLOSED) {
+                if (windowCount == window.length) {
+                    if (!window[windowIndex]) {
+                        failureCount--;
+                    }
+                } else {
+                    windowCount++;
+                }
+                window[windowIndex] = success;
+                if (!success) {
+                    failureCount++;
+                }
+                windowIndex = (windowIndex + 1) % window.length;
+
+                if (windowCount >= minimumCalls && (double) failureCount / windowCount >= failureRateThreshold) {
+                    open();
+                }
+            }
+
+            to = state;
+        }
+
+        if (from != to) {
+            fireStateChange(from, to);
+        }
+    }
+
+    private synchronized void releaseProbe() {
+        probeInFlight = false;
+    }
+
+    private void open() {
+        state = State.OPEN;
+        openedAt = ticker.read();
+        resetWindow();
+    }
+
+    private void resetWindow() {
+        windowIndex = 0;
+        windowCount = 0;
+        failureCount = 0;
+    }
+
+    private void fireStateChange(State from, State to) {
+        for (StateListener listener : listeners) {
+            try {
+                listener.stateChanged(this, from, to);
+            } catch (RuntimeException e) {
+                log.log(Level.WARNING, "Circuit breaker listener threw an exception", e);
+            }
+        }
+    }
+
+    /**
+     * The state of a circuit breaker.
+     */
+    public enum State {
+        /**
+         * Lookups are passed on to the wrapped resolver.
+         */
+        CLOSED,
+        /**
+         * Lookups fail fast.
+         */
+        OPEN,
+        /**
+         * A single probe lookup is passed on to the wrapped resolver.
+         */
+        HALF_OPEN
+    }
+
+    /**
+     * Notified when the state of a circuit breaker changes.
+     */
+    @FunctionalInterface
+    public interface StateListener {
+        /**
+         * Called after the state changed, on the thread that caused the
+         * change.
+         *
+         * @param breaker the breaker
+         * @param from the previous state
+         * @param to the new state
+         */
+        void stateChanged(CircuitBreakerProfileService breaker, State from, State to);
+    }
+
+    @FunctionalInterface
+    private interface Lookup<T> {
+        T get() throws IOException, InterruptedException;
+    }
+
+}
@@ -28,6 +28,10 @@ import java.util.Collections;
 import java.util.List;
 import java.util.Locale;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.BiFunction;
+import java.util.function.Function;
 import java.util.function.Predicate;
 import javax.annotation.Nullable;
 
@@ -37,10 +41,19 @@ import static com.google.common.base.Preconditions.checkNotNull;
  * Combines several {@code ProfileService}s together and checks them from
  * first to last, stopping when there are no more services left to query or
  * all profiles were found.
+ *
+ * <p>Services that fail fast with a {@link CircuitBreakerOpenException}
+ * are skipped, and whatever the remaining services find is returned. The
+ * exception is only rethrown if every service was skipped. Skipped
+ * services are reported through the events of their breaker.</p>
+ *
+ * <p>Asynchronous lookups are non-blocking for those services that
+ * implement {@link AsyncProfileService}.</p>
  */
-public class CombinedProfileService implements ProfileService {
+public class CombinedProfileService implements ProfileService, AsyncProfileService {
 
     private final List<ProfileService> services;
+    private final List<AsyncProfileService> asyncServices;
 
     /**
      * Create a new instance.
@@ -50,6 +63,7 @@ public class CombinedProfileService implements ProfileService {
     public CombinedProfileService(List<ProfileService> services) {
         checkNotNull(services);
         this.services = ImmutableList.copyOf(services);
+        this.asyncServices = adaptAll(this.services);
     }
 
     /**
@@ -60,6 +74,15 @@ public class CombinedProfileService implements ProfileService {
     public CombinedProfileService(ProfileService... services) {
         checkNotNull(services);
         this.services = ImmutableList.copyOf(services);
+        this.asyncServices = adaptAll(this.services);
+    }
+
+    private static List<AsyncProfileService> adaptAll(List<ProfileService> services) {
+        ImmutableList.Builder<AsyncProfileService> builder = ImmutableList.builder();
+        for (ProfileService service : services) {
+            builder.add(AsyncProfileServiceAdapter.adapt(service));
+        }
+        return builder.build();
     }
 
     @Override
@@ -74,12 +97,21 @@ public class CombinedProfileService implements ProfileService {
     @Nullable
     @Override
     public Profile findByName(String name) throws IOException, InterruptedException {
+        CircuitBreakerOpenException skipped = null;
+        boolean answered = false;
         for (ProfileService service : services) {
-            Profile profile = service.findByName(name);
-            if (profile != null) {
-                return profile;
+            try {
+                Profile profile = service.findByName(name);
+                if (profile != null) {
+                    return profile;
+                }
+            } catch (CircuitBreakerOpenException e) {
+                skipped = e;
+                continue;
             }
+            answered = true;
         }
+        throwIfAllSkipped(skipped, answered);
         return null;
     }
 
@@ -92,8 +124,17 @@ public class CombinedProfileService implements ProfileService {
             missing.add(name.toLowerCase(Locale.US));
         }
 
+        CircuitBreakerOpenException skipped = null;
+        boolean answered = false;
         for (ProfileService service : services) {
-            ImmutableList<Profile> results = service.findAllByName(missing);
+            ImmutableList<Profile> results;
+            try {
+                results = service.findAllByName(missing);
+            } catch (CircuitBreakerOpenException e) {
+                skipped = e;
+                continue;
+            }
+            answered = true;
 
             for (Profile profile : results) {
                 String nameLower = profile.getName().toLowerCase(Locale.US);
@@ -102,10 +143,11 @@ public class CombinedProfileService implements ProfileService {
             }
 
             if (missing.isEmpty()) {
-                break;
+                return ImmutableList.copyOf(totalResults);
             }
         }
 
+        throwIfAllSkipped(skipped, answered);
         return ImmutableList.copyOf(totalResults);
     }
 
@@ -122,24 +164,42 @@ public class CombinedProfileService implements ProfileService {
             missing.add(name.toLowerCase(Locale.US));
         }
 
+        CircuitBreakerOpenException skipped = null;
+        boolean answered = false;
         for (ProfileService service : services) {
-            service.findAllByName(new ArrayList<>(missing), forwardingConsumer);
+            try {
+                service.findAllByName(new ArrayList<>(missing), forwardingConsumer);
+                answered = true;
+            } catch (CircuitBreakerOpenException e) {
+                skipped = e;
+            }
 
             if (missing.isEmpty()) {
-                break;
+                return;
             }
         }
+
+        throwIfAllSkipped(skipped, answered);
     }
 
     @Nullable
     @Override
     public Profile findByUuid(UUID uuid) throws IOException, InterruptedException {
+        CircuitBreakerOpenException skipped = null;
+        boolean answered = false;
         for (ProfileService service : services) {
-            Profile profile = service.findByUuid(uuid);
-            if (profile != null) {
-                return profile;
+            try {
+                Profile profile = service.findByUuid(uuid);
+                if (profile != null) {
+                    return profile;
+                }
+            } catch (CircuitBreakerOpenException e) {
+                skipped = e;
+                continue;
             }
+            answered = true;
         }
+        throwIfAllSkipped(skipped, answered);
         return null;
     }
 
@@ -152,8 +212,17 @@ public class CombinedProfileService implements ProfileService {
             missing.add(uuid);
         }
 
+        CircuitBreakerOpenException skipped = null;
+        boolean answered = false;
         for (ProfileService service : services) {
-            ImmutableList<Profile> results = service.findAllByUuid(missing);
+            ImmutableList<Profile> results;
+            try {
+                results = service.findAllByUuid(missing);
+            } catch (CircuitBreakerOpenException e) {
+                skipped = e;
+                continue;
+            }
+            answered = true;
 
             for (Profile profile : results) {
                 UUID foundUuid = profile.getUniqueId();
@@ -162,10 +231,11 @@ public class CombinedProfileService implements ProfileService {
             }
 
             if (missing.isEmpty()) {
-                break;
+                return ImmutableList.copyOf(totalResults);
             }
         }
 
+        throwIfAllSkipped(skipped, answered);
         return ImmutableList.copyOf(totalResults);
     }
 
@@ -182,13 +252,128 @@ public class CombinedProfileService implements ProfileService {
             missing.add(uuid);
         }
 
+        CircuitBreakerOpenException skipped = null;
+        boolean answered = false;
         for (ProfileService service : services) {
-            service.findAllByUuid(new ArrayList<>(missing), forwardingConsumer);
+            try {
+                service.findAllByUuid(new ArrayList<>(missing), forwardingConsumer);
+                answered = true;
+            } catch (CircuitBreakerOpenException e) {
+                skipped = e;
+            }
 
             if (missing.isEmpty()) {
-                break;
+                return;
+            }
+        }
+
+        throwIfAllSkipped(skipped, answered);
+    }
+
+    @Override
+    public CompletableFuture<Profile> findByNameAsync(String name) {
+        return findFirstAsync(0, null, false, service -> service.findByNameAsync(name));
+    }
+
+    @Override
+    public CompletableFuture<ImmutableList<Profile>> findAllByNameAsync(Iterable<String> names) {
+        List<String> missing = new ArrayList<>();
+        for (String name : names) {
+            missing.add(name.toLowerCase(Locale.US));
+        }
+
+        return findAllAsync(0, null, false, missing, new ArrayList<>(),
+            AsyncProfileService::findAllByNameAsync,
+            profile -> profile.getName().toLowerCase(Locale.US));
+    }
+
+    @Override
+    public CompletableFuture<Profile> findByUuidAsync(UUID uuid) {
+        return findFirstAsync(0, null, false, service -> service.findByUuidAsync(uuid));
+    }
+
+    @Override
+    public CompletableFuture<ImmutableList<Profile>> findAllByUuidAsync(Iterable<UUID> uuids) {
+        List<UUID> missing = new ArrayList<>();
+        for (UUID uuid : uuids) {
+            missing.add(uuid);
+        }
+
+        return findAllAsync(0, null, false, missing, new ArrayList<>(),
+            AsyncProfileService::findAllByUuidAsync,
+            Profile::getUniqueId);
+    }
+
+    private static void throwIfAllSkipped(@Nullable CircuitBreakerOpenException skipped, boolean answered) throws CircuitBreakerOpenException {
+        if (skipped != null && !answered) {
+            throw skipped;
+        }
+    }
+
+    /**
+     * Wait for a lookup, completing with null if the service was skipped
+     * because its circuit breaker is open.
+     */
+    private static <T> CompletableFuture<T> skipIfOpen(CompletableFuture<T> lookup, CircuitBreakerOpenException[] skipped) {
+        return lookup.handle((result, throwable) -> {
+            Throwable cause = throwable instanceof CompletionException && throwable.getCause() != null ? throwable.getCause() : throwable;
+            if (cause instanceof CircuitBreakerOpenException e) {
+                skipped[0] = e;
+                return null;
+            } else if (throwable != null) {
+                throw throwable instanceof CompletionException ce ? ce : new CompletionException(throwable);
             }
+            return result;
+        });
+    }
+
+    /**
+     * Query services from the given index onwards until one returns a profile.
+     */
+    private CompletableFuture<Profile> findFirstAsync(int index, @Nullable CircuitBreakerOpenException skipped, boolean answered,
+                                                      Function<AsyncProfileService, CompletableFuture<Profile>> lookup) {
+        if (index >= asyncServices.size()) {
+            return skipped != null && !answered ? CompletableFuture.failedFuture(skipped) : CompletableFuture.completedFuture(null);
         }
+
+        CircuitBreakerOpenException[] skippedHere = {null};
+        return skipIfOpen(lookup.apply(asyncServices.get(index)), skippedHere).thenCompose(profile -> {
+            if (profile != null) {
+                return CompletableFuture.completedFuture(profile);
+            } else if (skippedHere[0] != null) {
+                return findFirstAsync(index + 1, skippedHere[0], answered, lookup);
+            }
+            return findFirstAsync(index + 1, skipped, true, lookup);
+        });
+    }
+
+    /**
+     * Query services from the given index onwards for the missing keys until
+     * no keys are left.
+     */
+    private <K> CompletableFuture<ImmutableList<Profile>> findAllAsync(
+        int index, @Nullable CircuitBreakerOpenException skipped, boolean answered, List<K> missing, List<Profile> totalResults,
+        BiFunction<AsyncProfileService, List<K>, CompletableFuture<ImmutableList<Profile>>> lookup,
+        Function<Profile, K> keyFunction) {
+        if (missing.isEmpty()) {
+            return CompletableFuture.completedFuture(ImmutableList.copyOf(totalResults));
+        } else if (index >= asyncServices.size()) {
+            return skipped != null && !answered
+                ? CompletableFuture.failedFuture(skipped)
+                : CompletableFuture.completedFuture(ImmutableList.copyOf(totalResults));
+        }
+
+        CircuitBreakerOpenException[] skippedHere = {null};
+        return skipIfOpen(lookup.apply(asyncServices.get(index), new ArrayList<>(missing)), skippedHere).thenCompose(results -> {
+            if (skippedHere[0] != null) {
+                return findAllAsync(index + 1, skippedHere[0], answered, missing, totalResults, lookup, keyFunction);
+            }
+            for (Profile profile : results) {
+                missing.remove(keyFunction.apply(profile));
+                totalResults.add(profile);
+            }
+            return findAllAsync(index + 1, skipped, true, missing, totalResults, lookup, keyFunction);
+        });
     }
 
 }
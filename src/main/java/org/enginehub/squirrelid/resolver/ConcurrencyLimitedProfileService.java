@@ -0,0 +1,187 @@
+/*
+ * SquirrelID, a UUID library for Minecraft
+ * Copyright (C) sk89q <http://www.sk89q.com>
+ * Copyright (C) SquirrelID team and contributors
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.enginehub.squirrelid.resolver;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableList.Builder;
+import com.google.common.collect.Iterables;
+import org.enginehub.squirrelid.Profile;
+import org.enginehub.squirrelid.util.AimdLimiter;
+import org.enginehub.squirrelid.util.HttpStatusException;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Predicate;
+import javax.annotation.Nullable;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Resolves profiles using another resolver while limiting how many
+ * lookups are in flight at once with an {@link AimdLimiter}.
+ *
+ * <p>Bulk lookups are split into partitions of at most
+ * {@link ProfileService#getIdealRequestLimit()} (or 100) keys and every
+ * partition takes its own permit. A lookup that fails because the wrapped resolver
+ * was rate limited, failed with a server error or could not reach the
+ * service lowers the limit, while successful lookups raise it again.
+ * Callers beyond the limit wait for a permit, so this class is meant to
+ * be used from several threads, for example from a
+ * {@link ParallelProfileService}.</p>
+ *
+ * <p>Only failures that reach this class are seen by the limiter. An
+ * {@link HttpRepositoryService} retries failed requests on its own by
+ * default, which hides the failures that should lower the limit, so it
+ * should be wrapped with {@link HttpRepositoryService#setMaxRetries(int)}
+ * set to 0.</p>
+ */
+public class ConcurrencyLimitedProfileService implements ProfileService {
+
+    private static final int MAX_PARTITION_SIZE = 100;
+
+    private final ProfileService resolver;
+    private final AimdLimiter limiter;
+
+    /**
+     * Create a new instance that starts with a limit of 4 lookups and may
+     * go up to 64.
+     *
+     * @param resolver the resolver to use
+     */
+    public ConcurrencyLimitedProfileService(ProfileService resolver) {
+        this(resolver, new AimdLimiter(4, 1, 64));
+    }
+
+    /**
+     * Create a new instance.
+     *
+     * @param resolver the resolver to use
+     * @param limiter the limiter, which may be shared with other instances
+     */
+    public ConcurrencyLimitedProfileService(ProfileService resolver, AimdLimiter limiter) {
+        checkNotNull(resolver);
+        checkNotNull(limiter);
+        this.resolver = resolver;
+        this.limiter = limiter;
+    }
+
+    /**
+     * Get the limiter, which exposes the current limit, the number of
+     * lookups in flight and the average latency.
+     *
+     * @return the limiter
+     */
+    public AimdLimiter getLimiter() {
+        return limiter;
+    }
+
+    @Override
+    public int getIdealRequestLimit() {
+        return resolver.getIdealRequestLimit();
+    }
+
+    @Nullable
+    @Override
+    public Profile findByName(String name) throws IOException, InterruptedException {
+        return limit(() -> resolver.findByName(name));
+    }
+
+    @Override
+    public ImmutableList<Profile> findAllByName(Iterable<String> names) throws IOException, InterruptedException {
+        Builder<Profile> builder = ImmutableList.builder();
+        for (List<String> partition : Iterables.partition(names, getPartitionSize())) {
+            builder.addAll(limit(() -> resolver.findAllByName(partition)));
+        }
+        return builder.build();
+    }
+
+    @Override
+    public void findAllByName(Iterable<String> names, Predicate<Profile> consumer) throws IOException, InterruptedException {
+        for (List<String> partition : Iterables.partition(names, getPartitionSize())) {
+            for (Profile profile : limit(() -> resolver.findAllByName(partition))) {
+                consumer.test(profile);
+            }
+        }
+    }
+
+    @Nullable
+    @Override
+    public Profile findByUuid(UUID uuid) throws IOException, InterruptedException {
+        return limit(() -> resolver.findByUuid(uuid));
+    }
+
+    @Override
+    public ImmutableList<Profile> findAllByUuid(Iterable<UUID> uuids) throws IOException, InterruptedException {
+        Builder<Profile> builder = ImmutableList.builder();
+        for (List<UUID> partition : Iterables.partition(uuids, getPartitionSize())) {
+            builder.addAll(limit(() -> resolver.findAllByUuid(partition)));
+        }
+        return builder.build();
+    }
+
+    @Override
+    public void findAllByUuid(Iterable<UUID> uuids, Predicate<Profile> consumer) throws IOException, InterruptedException {
+        for (List<UUID> partition : Iterables.partition(uuids, getPartitionSize())) {
+            for (Profile profile : limit(() -> resolver.findAllByUuid(partition))) {
+                consumer.test(profile);
+            }
+        }
+    }
+
+    private int getPartitionSize() {
+        return Math.min(MAX_PARTITION_SIZE, resolver.getIdealRequestLimit());
+    }
+
+    private <T> T limit(Lookup<T> lookup) throws IOException, InterruptedException {
+        AimdLimiter.Permit permit = limiter.acquire();
+        boolean completed = false;
+
+        try {
+            T result = lookup.get();
+            permit.success();
+            completed = true;
+            return result;
+        } catch (IOException e) {
+            if (isOverloaded(e)) {
+                permit.dropped();
+                completed = true;
+            }
+            throw e;
+        } finally {
+            if (!completed) {
+                permit.ignore();
+            }
+        }
+    }
+
+    private static boolean isOverloaded(IOException e) {
+        if (e instanceof HttpStatusException statusException) {
+            return statusException.isRateLimited() || statusException.isServerError();
+        }
+        return true;
+    }
+
+    @FunctionalInterface
+    private interface Lookup<T> {
+        T get() throws IOException, InterruptedException;
+    }
+
+}
@@ -0,0 +1,70 @@
+/*
+ * SquirrelID, a UUID library for Minecraft
+ * Copyright (C) sk89q <http://www.sk89q.com>
+ * Copyright (C) SquirrelID team and contributors
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.enginehub.squirrelid.resolver;
+
+import org.enginehub.squirrelid.Profile;
+
+import java.time.Duration;
+import javax.annotation.Nullable;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Decides whether a cached profile can be used by a read-through
+ * {@link CacheForwardingService}, or whether it has to be fetched again.
+ */
+@FunctionalInterface
+public interface FreshnessPolicy {
+
+    /**
+     * Test whether the cached profile can be used.
+     *
+     * @param profile the cached profile
+     * @param age how long ago the profile was written to the cache, or
+     *     {@code null} if the cache does not know, see
+     *     {@link org.enginehub.squirrelid.cache.ProfileCache#getWriteTimes(Iterable)}
+     * @return true to use the cached profile, false to fetch it again
+     */
+    boolean isFresh(Profile profile, @Nullable Duration age);
+
+    /**
+     * Use every cached profile, however old.
+     *
+     * @return a policy
+     */
+    static FreshnessPolicy always() {
+        return (profile, age) -> true;
+    }
+
+    /**
+     * Use cached profiles that were fetched less than the given time ago.
+     * Profiles of unknown age are fetched again.
+     *
+     * @param maximumAge the maximum age
+     * @return a policy
+     */
+    static FreshnessPolicy maximumAge(Duration maximumAge) {
+        checkNotNull(maximumAge);
+        checkArgument(!maximumAge.isNegative(), "maximumAge must not be negative");
+        return (profile, age) -> age != null && age.compareTo(maximumAge) < 0;
+    }
+
+}
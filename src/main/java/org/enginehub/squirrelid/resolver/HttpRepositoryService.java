@@ -21,17 +21,36 @@ package org.enginehub.squirrelid.resolver;
 
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableList.Builder;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Iterables;
 import org.enginehub.squirrelid.Profile;
 import org.enginehub.squirrelid.util.HttpRequest;
+import org.enginehub.squirrelid.util.HttpStatusException;
+import org.enginehub.squirrelid.util.ProfileJsonReader;
+import org.enginehub.squirrelid.util.TokenBucket;
 import org.enginehub.squirrelid.util.UUIDs;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.URL;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Function;
 import java.util.function.Predicate;
 import java.util.logging.Level;
@@ -43,16 +62,41 @@ import static com.google.common.base.Preconditions.checkNotNull;
 
 /**
  * Resolves names in bulk to UUIDs using Mojang's profile HTTP API.
+ *
+ * <p>The asynchronous methods do not block any thread while requests
+ * are in flight.</p>
+ *
+ * <p>Every request first takes a token from a {@link TokenBucket}. When
+ * the service answers with 429 Too Many Requests, the bucket is paused for
+ * as long as the {@code Retry-After} header asks, so that all requests
+ * sharing the bucket back off together instead of each retrying blindly.
+ * Server errors and network failures are retried with a doubling delay,
+ * while other client errors are not retried.</p>
+ *
+ * <p>Names that can never be valid Minecraft names are treated as not
+ * found without being sent, and names that differ only in case are
+ * looked up once, with the profile returned for every requested
+ * spelling.</p>
+ *
+ * <p>When a batch of names is rejected with 400 Bad Request anyway, the
+ * batch is split in half until
+ * the rejected names are isolated. The other names are still looked up,
+ * and the rejected names are treated as not found, or reported by
+ * {@link #findAllByNamePartially(Iterable)}.</p>
  */
-public class HttpRepositoryService implements ProfileService {
+public class HttpRepositoryService implements ProfileService, AsyncProfileService {
 
     public static final String MINECRAFT_AGENT = "minecraft";
 
     private static final Logger log = Logger.getLogger(HttpRepositoryService.class.getCanonicalName());
     private static final int MAX_NAMES_PER_REQUEST = 100;
+    private static final int DEFAULT_MAX_CONCURRENT_UUID_REQUESTS = 10;
+    private static final TokenBucket MOJANG_RATE_LIMITER = new TokenBucket(600, 1);
 
     private final URL profilesURL;
     private final Function<UUID, URL> nameHistoryUrlCreator;
+    private TokenBucket rateLimiter;
+    private int maxConcurrentUuidRequests = DEFAULT_MAX_CONCURRENT_UUID_REQUESTS;
     private int maxRetries = 5;
     private long retryDelay = 50;
 
@@ -64,35 +108,94 @@ public class HttpRepositoryService implements ProfileService {
      * provided "agent," so an incorrect agent may return zero results or
      * incorrect results.</p>
      *
+     * <p>All resolvers created with this constructor share one rate limiter
+     * that allows bursts of 600 requests and one request per second after
+     * that, matching Mojang's published limit.</p>
+     *
      * @param agent the agent (i.e. the game)
      */
     public HttpRepositoryService(String agent) {
-        checkNotNull(agent);
-        profilesURL = HttpRequest.url("https://api.mojang.com/profiles/" + agent);
-        nameHistoryUrlCreator = (uuid)
-            -> HttpRequest.url("https://sessionserver.mojang.com/session/minecraft/profile/" + UUIDs.stripDashes(uuid.toString()));
+        this(HttpRequest.url("https://api.mojang.com/profiles/" + checkNotNull(agent)),
+            (uuid) -> HttpRequest.url("https://sessionserver.mojang.com/session/minecraft/profile/" + UUIDs.stripDashes(uuid.toString())));
+        this.rateLimiter = MOJANG_RATE_LIMITER;
+    }
+
+    /**
+     * Create a new resolver that uses the given endpoints, which must be
+     * compatible with Mojang's profile API.
+     *
+     * <p>The resolver does not limit its request rate until a rate limiter
+     * is set with {@link #setRateLimiter(TokenBucket)}, but it still backs
+     * off when the service asks it to.</p>
+     *
+     * @param profilesURL the URL to post names to for bulk lookups
+     * @param nameHistoryUrlCreator a function that creates the URL to get the profile of a UUID from
+     */
+    public HttpRepositoryService(URL profilesURL, Function<UUID, URL> nameHistoryUrlCreator) {
+        checkNotNull(profilesURL);
+        checkNotNull(nameHistoryUrlCreator);
+        this.profilesURL = profilesURL;
+        this.nameHistoryUrlCreator = nameHistoryUrlCreator;
+        this.rateLimiter = TokenBucket.unlimited();
+    }
+
+    private static ImmutableList<Profile> readProfiles(InputStream in) throws IOException {
+        Builder<Profile> builder = ImmutableList.builder();
+        ProfileJsonReader.readProfiles(in, builder::add);
+        return builder.build();
+    }
+
+    @Nullable
+    private static Profile readNameResult(UUID uuid, InputStream in) throws IOException {
+        String name = ProfileJsonReader.readName(in);
+        return name != null ? new Profile(uuid, name) : null;
+    }
+
+    private static Throwable unwrap(Throwable throwable) {
+        if (throwable instanceof CompletionException && throwable.getCause() != null) {
+            return throwable.getCause();
+        }
+        return throwable;
     }
 
+    private static boolean isBadRequest(IOException e) {
+        return e instanceof HttpStatusException statusException && statusException.getStatusCode() == 400;
+    }
+
+    private static boolean isRetryable(IOException e) {
+        if (e instanceof HttpStatusException statusException) {
+            return statusException.isRateLimited() || statusException.isServerError();
+        }
+        return true;
+    }
+
+    /**
+     * Parse the value of a {@code Retry-After} header, which is either a
+     * number of seconds or an HTTP date.
+     *
+     * @param value the value of the header
+     * @return the duration to wait, or null if the value is missing or invalid
+     */
     @Nullable
-    @SuppressWarnings("unchecked")
-    private static Profile decodeProfileResult(Object entry) {
+    static Duration parseRetryAfter(@Nullable String value) {
+        if (value == null) {
+            return null;
+        }
+
+        value = value.trim();
         try {
-            if (entry instanceof Map) {
-                Map<Object, Object> mapEntry = (Map<Object, Object>) entry;
-                Object rawUuid = mapEntry.get("id");
-                Object rawName = mapEntry.get("name");
-
-                if (rawUuid != null && rawName != null) {
-                    UUID uuid = UUID.fromString(UUIDs.addDashes(String.valueOf(rawUuid)));
-                    String name = String.valueOf(rawName);
-                    return new Profile(uuid, name);
-                }
-            }
-        } catch (ClassCastException | IllegalArgumentException e) {
-            log.log(Level.WARNING, "Got invalid value from UUID lookup service", e);
+            return Duration.ofSeconds(Math.max(0, Long.parseLong(value)));
+        } catch (NumberFormatException ignored) {
         }
 
-        return null;
+        try {
+            ZonedDateTime date = ZonedDateTime.parse(value, DateTimeFormatter.RFC_1123_DATE_TIME);
+            Duration duration = Duration.between(ZonedDateTime.now(date.getZone()), date);
+            return duration.isNegative() ? Duration.ZERO : duration;
+        } catch (DateTimeParseException e) {
+            log.log(Level.FINE, "Got invalid Retry-After header: " + value, e);
+            return null;
+        }
     }
 
     /**
@@ -104,6 +207,52 @@ public class HttpRepositoryService implements ProfileService {
         return new HttpRepositoryService(MINECRAFT_AGENT);
     }
 
+    /**
+     * Get the rate limiter that every request takes a token from.
+     *
+     * <p>The remaining budget can be read with
+     * {@link TokenBucket#getAvailableTokens()}.</p>
+     *
+     * @return the rate limiter
+     */
+    public TokenBucket getRateLimiter() {
+        return rateLimiter;
+    }
+
+    /**
+     * Set the rate limiter that every request takes a token from.
+     *
+     * <p>Resolvers that talk to the same service should share a rate
+     * limiter.</p>
+     *
+     * @param rateLimiter the rate limiter
+     */
+    public void setRateLimiter(TokenBucket rateLimiter) {
+        checkNotNull(rateLimiter);
+        this.rateLimiter = rateLimiter;
+    }
+
+    /**
+     * Get the maximum number of requests for single UUIDs that a bulk UUID
+     * lookup keeps in flight at once.
+     *
+     * @return the maximum number of requests
+     */
+    public int getMaxConcurrentUuidRequests() {
+        return maxConcurrentUuidRequests;
+    }
+
+    /**
+     * Set the maximum number of requests for single UUIDs that a bulk UUID
+     * lookup keeps in flight at once.
+     *
+     * @param maxConcurrentUuidRequests the maximum number of requests
+     */
+    public void setMaxConcurrentUuidRequests(int maxConcurrentUuidRequests) {
+        checkArgument(maxConcurrentUuidRequests >= 1, "maxConcurrentUuidRequests must be >= 1");
+        this.maxConcurrentUuidRequests = maxConcurrentUuidRequests;
+    }
+
     /**
      * Get the maximum number of HTTP request retries.
      *
@@ -119,7 +268,7 @@ public class HttpRepositoryService implements ProfileService {
      * @param maxRetries the maximum number of retries
      */
     public void setMaxRetries(int maxRetries) {
-        checkArgument(maxRetries > 0, "maxRetries must be >= 0");
+        checkArgument(maxRetries >= 0, "maxRetries must be >= 0");
         this.maxRetries = maxRetries;
     }
 
@@ -162,19 +311,60 @@ public class HttpRepositoryService implements ProfileService {
     @Override
     public ImmutableList<Profile> findAllByName(Iterable<String> names) throws IOException, InterruptedException {
         Builder<Profile> builder = ImmutableList.builder();
-        for (List<String> partition : Iterables.partition(names, MAX_NAMES_PER_REQUEST)) {
-            builder.addAll(queryByName(partition));
-        }
+        findAllByName(names, profile -> {
+            builder.add(profile);
+            return true;
+        });
         return builder.build();
     }
 
     @Override
     public void findAllByName(Iterable<String> names, Predicate<Profile> consumer) throws IOException, InterruptedException {
-        for (List<String> partition : Iterables.partition(names, MAX_NAMES_PER_REQUEST)) {
-            for (Profile profile : queryByName(partition)) {
-                consumer.test(profile);
+        NameBatch batch = NameBatch.of(names);
+        for (List<String> partition : Iterables.partition(batch.getUniqueNames(), MAX_NAMES_PER_REQUEST)) {
+            queryByNameBisecting(partition, profile -> batch.fanOut(profile, consumer), (rejected, e) -> {
+                if (!isBadRequest(e)) {
+                    throw e;
+                }
+                log.log(Level.FINE, "The profile service rejected the name " + rejected.get(0), e);
+            });
+        }
+    }
+
+    /**
+     * Find the profiles for the given names, continuing past batches that
+     * fail instead of throwing.
+     *
+     * <p>A batch that the service rejects with 400 Bad Request is split in
+     * half until the rejected names are isolated. A batch that fails for
+     * another reason, such as the service being unavailable after all
+     * retries, is reported as failed without being split.</p>
+     *
+     * @param names an iterable of names
+     * @return the profiles that were found and the names that could not be looked up
+     * @throws InterruptedException thrown on interruption
+     */
+    public PartialLookupResult<String> findAllByNamePartially(Iterable<String> names) throws InterruptedException {
+        Builder<Profile> profiles = ImmutableList.builder();
+        Map<String, IOException> failures = new LinkedHashMap<>();
+
+        NameBatch batch = NameBatch.of(names);
+        for (List<String> partition : Iterables.partition(batch.getUniqueNames(), MAX_NAMES_PER_REQUEST)) {
+            try {
+                queryByNameBisecting(partition, profile -> batch.fanOut(profile, p -> {
+                    profiles.add(p);
+                    return true;
+                }), (failed, e) -> {
+                    for (String name : failed) {
+                        failures.putIfAbsent(name, e);
+                    }
+                });
+            } catch (IOException e) {
+                throw new IllegalStateException("Failure handler should not throw", e);
             }
         }
+
+        return new PartialLookupResult<>(profiles.build(), ImmutableMap.copyOf(failures));
     }
 
     @Nullable
@@ -195,9 +385,137 @@ public class HttpRepositoryService implements ProfileService {
 
     @Override
     public void findAllByUuid(Iterable<UUID> uuids, Predicate<Profile> consumer) throws IOException, InterruptedException {
-        for (Profile profile : queryByUuid(uuids)) {
-            consumer.test(profile);
+        queryByUuid(ImmutableList.copyOf(uuids), (index, profile) -> consumer.test(profile));
+    }
+
+    @Override
+    public CompletableFuture<Profile> findByNameAsync(String name) {
+        return findAllByNameAsync(ImmutableList.of(name))
+            .thenApply(profiles -> !profiles.isEmpty() ? profiles.get(0) : null);
+    }
+
+    @Override
+    public CompletableFuture<ImmutableList<Profile>> findAllByNameAsync(Iterable<String> names) {
+        NameBatch batch = NameBatch.of(names);
+        List<CompletableFuture<ImmutableList<Profile>>> futures = new ArrayList<>();
+        for (List<String> partition : Iterables.partition(batch.getUniqueNames(), MAX_NAMES_PER_REQUEST)) {
+            futures.add(queryByNameBisectingAsync(ImmutableList.copyOf(partition)));
+        }
+
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0]))
+            .thenApply(ignored -> {
+                Builder<Profile> builder = ImmutableList.builder();
+                for (CompletableFuture<ImmutableList<Profile>> future : futures) {
+                    for (Profile profile : future.join()) {
+                        batch.fanOut(profile, p -> {
+                            builder.add(p);
+                            return true;
+                        });
+                    }
+                }
+                return builder.build();
+            });
+    }
+
+    @Override
+    public CompletableFuture<Profile> findByUuidAsync(UUID uuid) {
+        return sendAsync(() -> HttpRequest.get(nameHistoryUrlCreator.apply(uuid)),
+            in -> readNameResult(uuid, in), "Failed to query name history service", maxRetries, retryDelay);
+    }
+
+    @Override
+    public CompletableFuture<ImmutableList<Profile>> findAllByUuidAsync(Iterable<UUID> uuids) {
+        List<UUID> list = ImmutableList.copyOf(uuids);
+        Profile[] profiles = new Profile[list.size()];
+        AtomicInteger next = new AtomicInteger();
+
+        // Each chain starts the next request when its previous one completes,
+        // so that at most maxConcurrentUuidRequests are in flight
+        List<CompletableFuture<Void>> chains = new ArrayList<>();
+        for (int i = 0; i < Math.min(maxConcurrentUuidRequests, list.size()); i++) {
+            chains.add(queryByUuidAsync(list, profiles, next));
+        }
+
+        return CompletableFuture.allOf(chains.toArray(new CompletableFuture<?>[0]))
+            .thenApply(ignored -> {
+                Builder<Profile> builder = ImmutableList.builder();
+                for (Profile profile : profiles) {
+                    if (profile != null) {
+                        builder.add(profile);
+                    }
+                }
+                return builder.build();
+            });
+    }
+
+    /**
+     * Look up the next UUID that has not been started yet, and keep going
+     * until every UUID has been started or a lookup fails.
+     *
+     * @param uuids a list of uuids
+     * @param profiles the array to store each profile in, at the index of its UUID
+     * @param next the index of the next UUID to look up
+     * @return a future completed when no UUIDs are left
+     */
+    private CompletableFuture<Void> queryByUuidAsync(List<UUID> uuids, Profile[] profiles, AtomicInteger next) {
+        int index = next.getAndIncrement();
+        if (index >= uuids.size()) {
+            return CompletableFuture.completedFuture(null);
         }
+
+        return findByUuidAsync(uuids.get(index))
+            .whenComplete((profile, throwable) -> {
+                if (throwable != null) {
+                    next.set(uuids.size());
+                }
+            })
+            .thenCompose(profile -> {
+                profiles[index] = profile;
+                return queryByUuidAsync(uuids, profiles, next);
+            });
+    }
+
+    /**
+     * Perform a query for profiles by name, splitting the batch in half
+     * whenever the service rejects it with 400 Bad Request. Names that are
+     * rejected on their own are not found.
+     *
+     * @param names a list of names
+     * @return a future completed with a list of results
+     */
+    private CompletableFuture<ImmutableList<Profile>> queryByNameBisectingAsync(List<String> names) {
+        return queryByNameAsync(names)
+            .handle((profiles, throwable) -> {
+                if (throwable == null) {
+                    return CompletableFuture.completedFuture(profiles);
+                }
+
+                Throwable cause = unwrap(throwable);
+                if (!(cause instanceof IOException e) || !isBadRequest(e)) {
+                    return CompletableFuture.<ImmutableList<Profile>>failedFuture(cause);
+                } else if (names.size() == 1) {
+                    log.log(Level.FINE, "The profile service rejected the name " + names.get(0), e);
+                    return CompletableFuture.completedFuture(ImmutableList.<Profile>of());
+                }
+
+                int middle = names.size() / 2;
+                CompletableFuture<ImmutableList<Profile>> first = queryByNameBisectingAsync(names.subList(0, middle));
+                CompletableFuture<ImmutableList<Profile>> second = queryByNameBisectingAsync(names.subList(middle, names.size()));
+                return first.thenCombine(second, (a, b) -> ImmutableList.<Profile>builder().addAll(a).addAll(b).build());
+            })
+            .thenCompose(Function.identity());
+    }
+
+    /**
+     * Perform a query for profiles by name without partitioning the queries
+     * and without blocking.
+     *
+     * @param names a list of names
+     * @return a future completed with a list of results
+     */
+    protected CompletableFuture<ImmutableList<Profile>> queryByNameAsync(List<String> names) {
+        return sendAsync(() -> HttpRequest.post(profilesURL).bodyJson(names),
+            HttpRepositoryService::readProfiles, "Failed to query profile service", maxRetries, retryDelay);
     }
 
     /**
@@ -209,95 +527,290 @@ public class HttpRepositoryService implements ProfileService {
      * @throws InterruptedException thrown on interruption
      */
     protected ImmutableList<Profile> queryByName(Iterable<String> names) throws IOException, InterruptedException {
-        List<Profile> profiles = new ArrayList<>();
-
-        Object result;
+        Builder<Profile> builder = ImmutableList.builder();
+        queryByName(names, profile -> {
+            builder.add(profile);
+            return true;
+        });
+        return builder.build();
+    }
 
-        int retriesLeft = maxRetries;
-        long retryDelay = this.retryDelay;
+    /**
+     * Perform a query for profiles by name without partitioning the queries,
+     * passing each profile to the consumer as soon as it has been read from
+     * the response.
+     *
+     * <p>If the response fails part way and the query is retried, profiles
+     * that were already passed to the consumer are not passed again.</p>
+     *
+     * @param names an iterable of names
+     * @param consumer the consumer
+     * @throws IOException thrown on I/O error
+     * @throws InterruptedException thrown on interruption
+     */
+    protected void queryByName(Iterable<String> names, Predicate<Profile> consumer) throws IOException, InterruptedException {
+        Set<UUID> consumed = new HashSet<>();
 
-        while (true) {
+        send(() -> HttpRequest.post(profilesURL).bodyJson(names), in -> {
+            List<UUID> attempt = new ArrayList<>();
             try {
-                result = HttpRequest
-                    .post(profilesURL)
-                    .bodyJson(names)
-                    .execute()
-                    .returnContent()
-                    .asJson();
-                break;
-            } catch (IOException e) {
-                if (retriesLeft == 0) {
-                    throw e;
-                }
-
-                log.log(Level.WARNING, "Failed to query profile service -- retrying...", e);
-                Thread.sleep(retryDelay);
+                ProfileJsonReader.readProfiles(in, profile -> {
+                    if (!consumed.contains(profile.getUniqueId())) {
+                        attempt.add(profile.getUniqueId());
+                        consumer.test(profile);
+                    }
+                });
+            } finally {
+                consumed.addAll(attempt);
             }
+            return null;
+        }, "Failed to query profile service");
+    }
 
-            retryDelay *= 2;
-            retriesLeft--;
-        }
-
-        if (result instanceof Iterable) {
-            for (Object entry : (Iterable) result) {
-                Profile profile = decodeProfileResult(entry);
-                if (profile != null) {
-                    profiles.add(profile);
-                }
+    /**
+     * Perform a query for profiles by name, splitting the batch in half
+     * whenever the service rejects it with 400 Bad Request.
+     *
+     * @param names a list of names
+     * @param consumer the consumer
+     * @param failureHandler called with the names of a batch that failed and
+     *     could not be split further, or that failed for another reason
+     * @throws IOException thrown if the failure handler throws
+     * @throws InterruptedException thrown on interruption
+     */
+    private void queryByNameBisecting(List<String> names, Predicate<Profile> consumer, FailureHandler failureHandler) throws IOException, InterruptedException {
+        try {
+            queryByName(names, consumer);
+        } catch (IOException e) {
+            if (names.size() > 1 && isBadRequest(e)) {
+                int middle = names.size() / 2;
+                queryByNameBisecting(names.subList(0, middle), consumer, failureHandler);
+                queryByNameBisecting(names.subList(middle, names.size()), consumer, failureHandler);
+            } else {
+                failureHandler.failed(names, e);
             }
         }
-
-        return ImmutableList.copyOf(profiles);
     }
 
     /**
      * Perform a query for profiles by uuid.
      *
+     * <p>Each UUID needs its own request. Up to
+     * {@link #getMaxConcurrentUuidRequests()} requests are in flight at
+     * once, and each UUID is retried on its own.</p>
+     *
      * @param uuids an iterable of uuids
      * @return a list of results
      * @throws IOException thrown on I/O error
      * @throws InterruptedException thrown on interruption
      */
     protected ImmutableList<Profile> queryByUuid(Iterable<UUID> uuids) throws IOException, InterruptedException {
-        List<Profile> profiles = new ArrayList<>();
+        List<UUID> list = ImmutableList.copyOf(uuids);
+        Profile[] profiles = new Profile[list.size()];
 
-        Object result;
+        queryByUuid(list, (index, profile) -> profiles[index] = profile);
 
-        int retriesLeft = maxRetries;
-        long retryDelay = this.retryDelay;
+        Builder<Profile> builder = ImmutableList.builder();
+        for (Profile profile : profiles) {
+            if (profile != null) {
+                builder.add(profile);
+            }
+        }
+        return builder.build();
+    }
 
-        for (UUID uuid : uuids) {
-            while (true) {
-                try {
-                    result = HttpRequest
-                        .get(nameHistoryUrlCreator.apply(uuid))
-                        .execute()
-                        .returnContent()
-                        .asJson();
-
-                    if (result instanceof Map map) {
-                        Object rawName = map.get("name");
-                        if (rawName != null) {
-                            profiles.add(new Profile(uuid, String.valueOf(rawName)));
-                        }
-                    }
+    /**
+     * Perform a query for profiles by uuid, passing each profile to the
+     * handler on the calling thread as soon as its request completes.
+     *
+     * @param uuids a list of uuids
+     * @param handler the handler, which is given the index of the UUID and its profile
+     * @throws IOException thrown on I/O error
+     * @throws InterruptedException thrown on interruption
+     */
+    private void queryByUuid(List<UUID> uuids, UuidResultHandler handler) throws IOException, InterruptedException {
+        BlockingQueue<UuidResult> completed = new LinkedBlockingQueue<>();
+        List<CompletableFuture<Profile>> started = new ArrayList<>();
+        int maxInFlight = maxConcurrentUuidRequests;
+        int next = 0;
+        int inFlight = 0;
 
-                    break;
-                } catch (IOException e) {
-                    if (retriesLeft == 0) {
+        try {
+            while (next < uuids.size() || inFlight > 0) {
+                while (next < uuids.size() && inFlight < maxInFlight) {
+                    int index = next++;
+                    CompletableFuture<Profile> future = findByUuidAsync(uuids.get(index));
+                    started.add(future);
+                    future.whenComplete((profile, throwable) -> completed.add(new UuidResult(index, profile, throwable)));
+                    inFlight++;
+                }
+
+                UuidResult result = completed.take();
+                inFlight--;
+
+                if (result.failure != null) {
+                    Throwable cause = unwrap(result.failure);
+                    if (cause instanceof IOException e) {
                         throw e;
                     }
+                    throw new RuntimeException("Error occurred during the operation", cause);
+                } else if (result.profile != null) {
+                    handler.accept(result.index, result.profile);
+                }
+            }
+        } finally {
+            for (CompletableFuture<Profile> future : started) {
+                future.cancel(false);
+            }
+        }
+    }
 
-                    log.log(Level.WARNING, "Failed to query name history service -- retrying...", e);
-                    Thread.sleep(retryDelay);
+    /**
+     * Send a request once the rate limiter allows it and read the response
+     * while it is received, retrying on failure until success or total
+     * failure.
+     *
+     * @param request a function that creates the request
+     * @param reader a function that reads the response body
+     * @param message the message logged when an attempt fails
+     * @param <T> the type of result
+     * @return the result
+     * @throws IOException thrown on I/O error or on an unexpected response
+     * @throws InterruptedException thrown on interruption
+     */
+    private <T> T send(IOSupplier<HttpRequest> request, IOFunction<InputStream, T> reader, String message) throws IOException, InterruptedException {
+        int retriesLeft = maxRetries;
+        long retryDelay = this.retryDelay;
+
+        while (true) {
+            rateLimiter.acquire();
+
+            try (HttpRequest executed = request.get().execute()) {
+                checkResponse(executed.getResponseCode(), executed.getHeader("Retry-After"), retryDelay);
+                return reader.apply(executed.getInputStream());
+            } catch (IOException e) {
+                if (retriesLeft == 0 || !isRetryable(e)) {
+                    throw e;
                 }
 
-                retryDelay *= 2;
-                retriesLeft--;
+                log.log(Level.WARNING, message + " -- retrying...", e);
+                if (!(e instanceof HttpStatusException statusException && statusException.isRateLimited())) {
+                    Thread.sleep(retryDelay);
+                }
             }
+
+            retryDelay *= 2;
+            retriesLeft--;
         }
+    }
+
+    /**
+     * Send a request once the rate limiter allows it without blocking,
+     * retrying on failure until success or total failure.
+     *
+     * @param request a function that creates the request
+     * @param reader a function that reads the response body
+     * @param message the message logged when an attempt fails
+     * @param retriesLeft the number of retries left
+     * @param retryDelay the delay before the next retry in milliseconds
+     * @param <T> the type of result
+     * @return a future completed with the result
+     */
+    private <T> CompletableFuture<T> sendAsync(IOSupplier<HttpRequest> request, IOFunction<InputStream, T> reader, String message, int retriesLeft, long retryDelay) {
+        long delay = rateLimiter.reserve();
+        CompletableFuture<Void> permitted = delay > 0
+            ? CompletableFuture.runAsync(() -> { }, CompletableFuture.delayedExecutor(delay, TimeUnit.NANOSECONDS))
+            : CompletableFuture.completedFuture(null);
+
+        return permitted
+            .thenCompose(ignored -> {
+                try {
+                    return request.get().executeAsync();
+                } catch (IOException e) {
+                    return CompletableFuture.failedFuture(e);
+                }
+            })
+            .thenApply(response -> {
+                try {
+                    checkResponse(response.getResponseCode(), response.getHeader("Retry-After"), retryDelay);
+                    return reader.apply(new ByteArrayInputStream(response.asBytes()));
+                } catch (IOException e) {
+                    throw new CompletionException(e);
+                }
+            })
+            .handle((response, throwable) -> {
+                if (throwable == null) {
+                    return CompletableFuture.completedFuture(response);
+                }
+
+                Throwable cause = unwrap(throwable);
+                if (!(cause instanceof IOException e) || retriesLeft == 0 || !isRetryable(e)) {
+                    return CompletableFuture.<T>failedFuture(cause);
+                }
+
+                log.log(Level.WARNING, message + " -- retrying...", cause);
+                // A rate limited request waits for the paused rate limiter instead
+                long backoff = e instanceof HttpStatusException statusException && statusException.isRateLimited() ? 0 : retryDelay;
+                return CompletableFuture.supplyAsync(
+                    () -> sendAsync(request, reader, message, retriesLeft - 1, retryDelay * 2),
+                    CompletableFuture.delayedExecutor(backoff, TimeUnit.MILLISECONDS))
+                    .thenCompose(Function.identity());
+            })
+            .thenCompose(Function.identity());
+    }
+
+    /**
+     * Check that the response was successful or was a 404 Not Found,
+     * pausing the rate limiter if the service asked to slow down.
+     *
+     * @param code the response code
+     * @param retryAfterHeader the value of the Retry-After header, if any
+     * @param retryDelay the pause in milliseconds if the service did not say how long to wait
+     * @throws HttpStatusException thrown if the request was rate limited or failed with a response code other than 404
+     */
+    private void checkResponse(int code, @Nullable String retryAfterHeader, long retryDelay) throws HttpStatusException {
+        if (code == 429) {
+            Duration retryAfter = parseRetryAfter(retryAfterHeader);
+            rateLimiter.pause(retryAfter != null ? retryAfter : Duration.ofMillis(retryDelay));
+            throw new HttpStatusException("Rate limited by the profile service"
+                + (retryAfter != null ? ", retrying after " + retryAfter.toMillis() + "ms" : ""), code);
+        } else if (code >= 500 && code < 600) {
+            throw new HttpStatusException("The profile service failed with response code " + code, code);
+        } else if (code >= 400 && code != 404) {
+            throw new HttpStatusException("The profile service rejected the request with response code " + code, code);
+        }
+    }
+
+    @FunctionalInterface
+    private interface FailureHandler {
+        void failed(List<String> names, IOException e) throws IOException;
+    }
+
+    @FunctionalInterface
+    private interface UuidResultHandler {
+        void accept(int index, Profile profile);
+    }
+
+    private static final class UuidResult {
+        private final int index;
+        @Nullable private final Profile profile;
+        @Nullable private final Throwable failure;
+
+        private UuidResult(int index, @Nullable Profile profile, @Nullable Throwable failure) {
+            this.index = index;
+            this.profile = profile;
+            this.failure = failure;
+        }
+    }
+
+    @FunctionalInterface
+    private interface IOSupplier<T> {
+        T get() throws IOException;
+    }
 
-        return ImmutableList.copyOf(profiles);
+    @FunctionalInterface
+    private interface IOFunction<T, R> {
+        R apply(T value) throws IOException;
     }
 
 }
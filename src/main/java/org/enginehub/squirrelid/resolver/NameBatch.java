@@ -0,0 +1,105 @@
+/*
+ * SquirrelID, a UUID library for Minecraft
+ * Copyright (C) sk89q <http://www.sk89q.com>
+ * Copyright (C) SquirrelID team and contributors
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.enginehub.squirrelid.resolver;
+
+import com.google.common.collect.ImmutableList;
+import org.enginehub.squirrelid.Profile;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+
+/**
+ * The names of a lookup, with names that can never exist dropped and
+ * case-insensitive duplicates collapsed so that each name is only looked
+ * up once.
+ *
+ * <p>A found profile is handed out once for every time its name was
+ * requested, in any case.</p>
+ */
+final class NameBatch {
+
+    private static final Pattern VALID_NAME = Pattern.compile("[A-Za-z0-9_]{1,16}");
+
+    private final ImmutableList<String> uniqueNames;
+    private final Map<String, Integer> requestCounts;
+
+    private NameBatch(ImmutableList<String> uniqueNames, Map<String, Integer> requestCounts) {
+        this.uniqueNames = uniqueNames;
+        this.requestCounts = requestCounts;
+    }
+
+    /**
+     * Test whether the given name could be the name of a Minecraft account.
+     *
+     * @param name the name
+     * @return true if the name is valid
+     */
+    static boolean isValidName(String name) {
+        return VALID_NAME.matcher(name).matches();
+    }
+
+    /**
+     * Normalize the given names.
+     *
+     * @param names the requested names
+     * @return the batch
+     */
+    static NameBatch of(Iterable<String> names) {
+        ImmutableList.Builder<String> uniqueNames = ImmutableList.builder();
+        Map<String, Integer> requestCounts = new HashMap<>();
+        for (String name : names) {
+            if (isValidName(name) && requestCounts.merge(name.toLowerCase(Locale.US), 1, Integer::sum) == 1) {
+                uniqueNames.add(name);
+            }
+        }
+        return new NameBatch(uniqueNames.build(), requestCounts);
+    }
+
+    /**
+     * Get the names to look up, in the spelling they were first requested in.
+     *
+     * @return a list of names
+     */
+    List<String> getUniqueNames() {
+        return uniqueNames;
+    }
+
+    /**
+     * Pass a found profile to the consumer once for every time its name
+     * was requested.
+     *
+     * @param profile the profile
+     * @param consumer the consumer
+     * @return the result of the last call to the consumer
+     */
+    boolean fanOut(Profile profile, Predicate<Profile> consumer) {
+        int count = requestCounts.getOrDefault(profile.getName().toLowerCase(Locale.US), 1);
+        boolean result = true;
+        for (int i = 0; i < count; i++) {
+            result = consumer.test(profile);
+        }
+        return result;
+    }
+
+}
@@ -0,0 +1,298 @@
+/*
+ * SquirrelID, a UUID library for Minecraft
+ * Copyright (C) sk89q <http://www.sk89q.com>
+ * Copyright (C) SquirrelID team and contributors
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.enginehub.squirrelid.resolver;
+
+import com.google.common.base.Ticker;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
+import org.enginehub.squirrelid.Profile;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+import javax.annotation.Nullable;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Resolves profiles using another resolver and remembers, for a limited
+ * time, which names and UUIDs could not be resolved.
+ *
+ * <p>A lookup for a name or UUID that is known to be missing is answered
+ * without asking the wrapped resolver. A missing key is forgotten once its
+ * time to live has passed or as soon as any lookup through this service
+ * returns a profile with that name or UUID. Lookups that fail with an
+ * exception are not remembered. Names are compared case-insensitively.</p>
+ */
+public class NegativeCachingProfileService implements ProfileService {
+
+    private static final long DEFAULT_MAXIMUM_SIZE = 10000;
+
+    private final ProfileService resolver;
+    private final Cache<String, Boolean> missingNames;
+    private final Cache<UUID, Boolean> missingUuids;
+
+    /**
+     * Create a new instance that remembers missing keys for 10 minutes.
+     *
+     * @param resolver the resolver to use
+     */
+    public NegativeCachingProfileService(ProfileService resolver) {
+        this(resolver, 10, TimeUnit.MINUTES);
+    }
+
+    /**
+     * Create a new instance.
+     *
+     * @param resolver the resolver to use
+     * @param ttl how long to remember that a key is missing
+     * @param unit the unit of the time to live
+     */
+    public NegativeCachingProfileService(ProfileService resolver, long ttl, TimeUnit unit) {
+        this(resolver, ttl, unit, DEFAULT_MAXIMUM_SIZE, Ticker.systemTicker());
+    }
+
+    /**
+     * Create a new instance.
+     *
+     * @param resolver the resolver to use
+     * @param ttl how long to remember that a key is missing
+     * @param unit the unit of the time to live
+     * @param maximumSize the maximum number of names and of UUIDs to remember
+     * @param ticker the source of time
+     */
+    public NegativeCachingProfileService(ProfileService resolver, long ttl, TimeUnit unit, long maximumSize, Ticker ticker) {
+        checkNotNull(resolver);
+        checkArgument(ttl > 0, "ttl must be > 0");
+        checkNotNull(unit);
+        checkNotNull(ticker);
+        this.resolver = resolver;
+        this.missingNames = CacheBuilder.newBuilder()
+            .expireAfterWrite(ttl, unit)
+            .maximumSize(maximumSize)
+            .ticker(ticker)
+            .build();
+        this.missingUuids = CacheBuilder.newBuilder()
+            .expireAfterWrite(ttl, unit)
+            .maximumSize(maximumSize)
+            .ticker(ticker)
+            .build();
+    }
+
+    private static String nameKey(String name) {
+        return name.toLowerCase(Locale.US);
+    }
+
+    /**
+     * Get whether a name is known to be missing.
+     *
+     * @param name the name
+     * @return true if the name is known to be missing
+     */
+    public boolean isKnownMissing(String name) {
+        return missingNames.getIfPresent(nameKey(name)) != null;
+    }
+
+    /**
+     * Get whether a UUID is known to be missing.
+     *
+     * @param uuid the UUID
+     * @return true if the UUID is known to be missing
+     */
+    public boolean isKnownMissing(UUID uuid) {
+        return missingUuids.getIfPresent(uuid) != null;
+    }
+
+    /**
+     * Forget that the name and UUID of the given profile are missing, for
+     * example because the profile was found some other way.
+     *
+     * @param profile the profile
+     */
+    public void invalidate(Profile profile) {
+        missingNames.invalidate(nameKey(profile.getName()));
+        missingUuids.invalidate(profile.getUniqueId());
+    }
+
+    /**
+     * Forget every missing name and UUID.
+     */
+    public void invalidateAll() {
+        missingNames.invalidateAll();
+        missingUuids.invalidateAll();
+    }
+
+    @Override
+    public int getIdealRequestLimit() {
+        return resolver.getIdealRequestLimit();
+    }
+
+    @Nullable
+    @Override
+    public Profile findByName(String name) throws IOException, InterruptedException {
+        if (isKnownMissing(name)) {
+            return null;
+        }
+
+        Profile profile = resolver.findByName(name);
+        if (profile != null) {
+            invalidate(profile);
+        } else {
+            missingNames.put(nameKey(name), true);
+        }
+        return profile;
+    }
+
+    @Override
+    public ImmutableList<Profile> findAllByName(Iterable<String> names) throws IOException, InterruptedException {
+        List<String> remaining = filterNames(names);
+        if (remaining.isEmpty()) {
+            return ImmutableList.of();
+        }
+
+        ImmutableList<Profile> profiles = resolver.findAllByName(remaining);
+        recordNames(remaining, profiles);
+        return profiles;
+    }
+
+    @Override
+    public void findAllByName(Iterable<String> names, Predicate<Profile> consumer) throws IOException, InterruptedException {
+        List<String> remaining = filterNames(names);
+        if (remaining.isEmpty()) {
+            return;
+        }
+
+        List<Profile> found = new ArrayList<>();
+        resolver.findAllByName(remaining, profile -> {
+            synchronized (found) {
+                found.add(profile);
+            }
+            invalidate(profile);
+            return consumer.test(profile);
+        });
+        recordNames(remaining, found);
+    }
+
+    @Nullable
+    @Override
+    public Profile findByUuid(UUID uuid) throws IOException, InterruptedException {
+        if (isKnownMissing(uuid)) {
+            return null;
+        }
+
+        Profile profile = resolver.findByUuid(uuid);
+        if (profile != null) {
+            invalidate(profile);
+        } else {
+            missingUuids.put(uuid, true);
+        }
+        return profile;
+    }
+
+    @Override
+    public ImmutableList<Profile> findAllByUuid(Iterable<UUID> uuids) throws IOException, InterruptedException {
+        List<UUID> remaining = filterUuids(uuids);
+        if (remaining.isEmpty()) {
+            return ImmutableList.of();
+        }
+
+        ImmutableList<Profile> profiles = resolver.findAllByUuid(remaining);
+        recordUuids(remaining, profiles);
+        return profiles;
+    }
+
+    @Override
+    public void findAllByUuid(Iterable<UUID> uuids, Predicate<Profile> consumer) throws IOException, InterruptedException {
+        List<UUID> remaining = filterUuids(uuids);
+        if (remaining.isEmpty()) {
+            return;
+        }
+
+        List<Profile> found = new ArrayList<>();
+        resolver.findAllByUuid(remaining, profile -> {
+            synchronized (found) {
+                found.add(profile);
+            }
+            invalidate(profile);
+            return consumer.test(profile);
+        });
+        recordUuids(remaining, found);
+    }
+
+    private List<String> filterNames(Iterable<String> names) {
+        Map<String, String> remaining = new LinkedHashMap<>();
+        for (String name : names) {
+            String key = nameKey(name);
+            if (missingNames.getIfPresent(key) == null) {
+                remaining.putIfAbsent(key, name);
+            }
+        }
+        return new ArrayList<>(remaining.values());
+    }
+
+    private List<UUID> filterUuids(Iterable<UUID> uuids) {
+        Set<UUID> remaining = new LinkedHashSet<>();
+        for (UUID uuid : uuids) {
+            if (missingUuids.getIfPresent(uuid) == null) {
+                remaining.add(uuid);
+            }
+        }
+        return new ArrayList<>(remaining);
+    }
+
+    private void recordNames(List<String> requested, List<Profile> found) {
+        Set<String> foundNames = new HashSet<>();
+        for (Profile profile : found) {
+            foundNames.add(nameKey(profile.getName()));
+            invalidate(profile);
+        }
+        for (String name : requested) {
+            String key = nameKey(name);
+            if (!foundNames.contains(key)) {
+                missingNames.put(key, true);
+            }
+        }
+    }
+
+    private void recordUuids(List<UUID> requested, List<Profile> found) {
+        Set<UUID> foundUuids = new HashSet<>();
+        for (Profile profile : found) {
+            foundUuids.add(profile.getUniqueId());
+            invalidate(profile);
+        }
+        for (UUID uuid : requested) {
+            if (!foundUuids.contains(uuid)) {
+                missingUuids.put(uuid, true);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,103 @@
+/*
+ * SquirrelID, a UUID library for Minecraft
+ * Copyright (C) sk89q <http://www.sk89q.com>
+ * Copyright (C) SquirrelID team and contributors
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.enginehub.squirrelid.resolver;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.enginehub.squirrelid.Profile;
+import org.enginehub.squirrelid.util.UUIDs;
+
+import java.util.UUID;
+import javax.annotation.Nullable;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * A {@code ProfileService} for offline mode servers, which computes the
+ * UUID of a name locally with {@link UUIDs#forOfflinePlayer(String)}
+ * instead of asking Mojang.
+ *
+ * <p>Every name resolves, and names are case sensitive because the UUID
+ * is a hash of the name as typed. A UUID cannot be turned back into a
+ * name, so UUIDs only resolve to names that were looked up through this
+ * service or added with {@link #put(String)}, of which a limited number
+ * are remembered.</p>
+ */
+public class OfflineProfileService extends SingleRequestService {
+
+    private static final long DEFAULT_MAXIMUM_SIZE = 10000;
+
+    private final Cache<UUID, String> knownNames;
+
+    /**
+     * Create a new instance that remembers up to 10000 names.
+     */
+    public OfflineProfileService() {
+        this(DEFAULT_MAXIMUM_SIZE);
+    }
+
+    /**
+     * Create a new instance.
+     *
+     * @param maximumSize the maximum number of names to remember for UUID lookups
+     */
+    public OfflineProfileService(long maximumSize) {
+        checkArgument(maximumSize >= 0, "maximumSize must be >= 0");
+        this.knownNames = CacheBuilder.newBuilder()
+            .maximumSize(maximumSize)
+            .build();
+    }
+
+    /**
+     * Remember a name so that its UUID can be resolved back to it.
+     *
+     * @param name the name
+     * @return the profile of the name
+     */
+    public Profile put(String name) {
+        checkNotNull(name);
+        UUID uuid = UUIDs.forOfflinePlayer(name);
+        knownNames.put(uuid, name);
+        return new Profile(uuid, name);
+    }
+
+    @Override
+    public int getIdealRequestLimit() {
+        return Integer.MAX_VALUE;
+    }
+
+    @Override
+    public Profile findByName(String name) {
+        return put(name);
+    }
+
+    @Nullable
+    @Override
+    public Profile findByUuid(UUID uuid) {
+        String name = knownNames.getIfPresent(uuid);
+        if (name != null) {
+            return new Profile(uuid, name);
+        } else {
+            return null;
+        }
+    }
+
+}
@@ -22,17 +22,29 @@ package org.enginehub.squirrelid.resolver;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableList.Builder;
 import com.google.common.collect.Iterables;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.enginehub.squirrelid.Profile;
 
 import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.Callable;
 import java.util.concurrent.CompletionService;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorCompletionService;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.function.Function;
 import java.util.function.Predicate;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 import javax.annotation.Nullable;
 
 import static com.google.common.base.Preconditions.checkArgument;
@@ -40,13 +52,36 @@ import static com.google.common.base.Preconditions.checkNotNull;
 
 /**
  * Resolves profiles with several parallel threads using another resolver.
+ *
+ * <p>Names that can never be valid Minecraft names are dropped, and
+ * names that differ only in case are looked up once, before the names
+ * are split into jobs. A found profile is returned for every requested
+ * spelling of its name.</p>
+ *
+ * <p>Jobs belonging to a call are cancelled as soon as one of them fails
+ * or the calling thread is interrupted, so no job outlives the call
+ * that started it.</p>
  */
-public class ParallelProfileService implements ProfileService {
+public class ParallelProfileService implements ProfileService, AutoCloseable {
+
+    private static final Logger log = Logger.getLogger(ParallelProfileService.class.getCanonicalName());
+    private static final int FALLBACK_THREADS = 8;
 
     private final ProfileService resolver;
-    private final ExecutorService executorService;
+    private final Executor executor;
+    @Nullable
+    private final ExecutorService ownedExecutorService;
     private int profilesPerJob = 100;
 
+    private ParallelProfileService(ProfileService resolver, Executor executor, @Nullable ExecutorService ownedExecutorService) {
+        checkNotNull(resolver);
+        checkNotNull(executor);
+
+        this.resolver = resolver;
+        this.executor = executor;
+        this.ownedExecutorService = ownedExecutorService;
+    }
+
     /**
      * Create a new parallel resolver.
      *
@@ -54,21 +89,87 @@ public class ParallelProfileService implements ProfileService {
      * @param executorService the executor service to schedule jobs in
      */
     public ParallelProfileService(ProfileService resolver, ExecutorService executorService) {
-        checkNotNull(resolver);
-        checkNotNull(executorService);
-
-        this.resolver = resolver;
-        this.executorService = executorService;
+        this(resolver, executorService, false);
     }
 
     /**
      * Create a new parallel resolver.
      *
+     * <p>The created thread pool is shut down by {@link #close()}.</p>
+     *
      * @param resolver the resolver to use
      * @param numThreads the number of threads to resolve profiles in
      */
     public ParallelProfileService(ProfileService resolver, int numThreads) {
-        this(resolver, Executors.newFixedThreadPool(numThreads));
+        this(resolver, Executors.newFixedThreadPool(numThreads), true);
+    }
+
+    private ParallelProfileService(ProfileService resolver, ExecutorService executorService, boolean owned) {
+        this(resolver, executorService, owned ? executorService : null);
+    }
+
+    /**
+     * Create a new parallel resolver that starts a new thread from the
+     * given factory for every job, rather than using a pool of threads.
+     *
+     * @param resolver the resolver to use
+     * @param threadFactory the factory to create a thread per job with
+     */
+    public ParallelProfileService(ProfileService resolver, ThreadFactory threadFactory) {
+        this(resolver, command -> threadFactory.newThread(command).start(), null);
+        checkNotNull(threadFactory);
+    }
+
+    /**
+     * Create a new parallel resolver that runs every job in its own
+     * virtual thread.
+     *
+     * <p>Jobs spend most of their time waiting on I/O, so virtual threads
+     * allow a large number of them to be in flight without sizing a pool.
+     * If the running Java version does not support virtual threads, jobs
+     * run in a pool of {@value #FALLBACK_THREADS} daemon platform threads
+     * instead, which is shut down by {@link #close()}.</p>
+     *
+     * @param resolver the resolver to use
+     * @return a new parallel resolver
+     */
+    public static ParallelProfileService withVirtualThreads(ProfileService resolver) {
+        ThreadFactory virtualThreadFactory = createVirtualThreadFactory();
+        if (virtualThreadFactory != null) {
+            return new ParallelProfileService(resolver, virtualThreadFactory);
+        }
+
+        ThreadFactory platformThreadFactory = new ThreadFactoryBuilder()
+            .setDaemon(true)
+            .setNameFormat("SquirrelID Profile Job #%d")
+            .build();
+        return new ParallelProfileService(resolver, Executors.newFixedThreadPool(FALLBACK_THREADS, platformThreadFactory), true);
+    }
+
+    /**
+     * Create a factory for virtual threads if the running Java version
+     * supports them.
+     *
+     * @return a thread factory, or null if virtual threads are not available
+     */
+    @Nullable
+    static ThreadFactory createVirtualThreadFactory() {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            Object builder = lookup.findStatic(Thread.class, "ofVirtual", MethodType.methodType(Class.forName("java.lang.Thread$Builder$OfVirtual")))
+                .invoke();
+            builder = lookup.findVirtual(builderClass, "name", MethodType.methodType(builderClass, String.class, long.class))
+                .invoke(builder, "SquirrelID Profile Job #", 0L);
+            MethodHandle factory = lookup.findVirtual(builderClass, "factory", MethodType.methodType(ThreadFactory.class));
+            return (ThreadFactory) factory.invoke(builder);
+        } catch (ClassNotFoundException | NoSuchMethodException | IllegalAccessException e) {
+            log.log(Level.FINE, "Virtual threads are not available, falling back to platform threads", e);
+        } catch (Throwable t) {
+            log.log(Level.WARNING, "Failed to create a virtual thread factory, falling back to platform threads", t);
+        }
+
+        return null;
     }
 
     /**
@@ -112,23 +213,14 @@ public class ParallelProfileService implements ProfileService {
 
     @Override
     public ImmutableList<Profile> findAllByName(Iterable<String> names) throws IOException, InterruptedException {
-        CompletionService<List<Profile>> completion = new ExecutorCompletionService<>(executorService);
-        int count = 0;
-        for (final List<String> partition : Iterables.partition(names, getEffectiveProfilesPerJob())) {
-            count++;
-            completion.submit(() -> resolver.findAllByName(partition));
-        }
-
+        NameBatch batch = NameBatch.of(names);
         Builder<Profile> builder = ImmutableList.builder();
-        for (int i = 0; i < count; i++) {
-            try {
-                builder.addAll(completion.take().get());
-            } catch (ExecutionException e) {
-                if (e.getCause() instanceof IOException) {
-                    throw (IOException) e.getCause();
-                } else {
-                    throw new RuntimeException("Error occurred during the operation", e);
-                }
+        for (List<Profile> profiles : invokeAll(batch.getUniqueNames(), partition -> () -> resolver.findAllByName(partition))) {
+            for (Profile profile : profiles) {
+                batch.fanOut(profile, p -> {
+                    builder.add(p);
+                    return true;
+                });
             }
         }
         return builder.build();
@@ -136,32 +228,11 @@ public class ParallelProfileService implements ProfileService {
 
     @Override
     public void findAllByName(Iterable<String> names, final Predicate<Profile> consumer) throws IOException, InterruptedException {
-        CompletionService<Object> completion = new ExecutorCompletionService<>(executorService);
-        int count = 0;
-        for (final List<String> partition : Iterables.partition(names, getEffectiveProfilesPerJob())) {
-            count++;
-            completion.submit(() -> {
-                resolver.findAllByName(partition, consumer);
-                return null;
-            });
-        }
-
-        Throwable throwable = null;
-        for (int i = 0; i < count; i++) {
-            try {
-                completion.take().get();
-            } catch (ExecutionException e) {
-                throwable = e.getCause();
-            }
-        }
-
-        if (throwable != null) {
-            if (throwable instanceof IOException) {
-                throw (IOException) throwable;
-            } else {
-                throw new RuntimeException("Error occurred during the operation", throwable);
-            }
-        }
+        NameBatch batch = NameBatch.of(names);
+        invokeAll(batch.getUniqueNames(), partition -> () -> {
+            resolver.findAllByName(partition, profile -> batch.fanOut(profile, consumer));
+            return null;
+        });
     }
 
     @Nullable
@@ -172,56 +243,77 @@ public class ParallelProfileService implements ProfileService {
 
     @Override
     public ImmutableList<Profile> findAllByUuid(Iterable<UUID> uuids) throws IOException, InterruptedException {
-        CompletionService<List<Profile>> completion = new ExecutorCompletionService<>(executorService);
-        int count = 0;
-        for (final List<UUID> partition : Iterables.partition(uuids, getEffectiveProfilesPerJob())) {
-            count++;
-            completion.submit(() -> resolver.findAllByUuid(partition));
-        }
-
         Builder<Profile> builder = ImmutableList.builder();
-        for (int i = 0; i < count; i++) {
-            try {
-                builder.addAll(completion.take().get());
-            } catch (ExecutionException e) {
-                if (e.getCause() instanceof IOException) {
-                    throw (IOException) e.getCause();
-                } else {
-                    throw new RuntimeException("Error occurred during the operation", e);
-                }
-            }
+        for (List<Profile> profiles : invokeAll(uuids, partition -> () -> resolver.findAllByUuid(partition))) {
+            builder.addAll(profiles);
         }
         return builder.build();
     }
 
     @Override
     public void findAllByUuid(Iterable<UUID> uuids, Predicate<Profile> consumer) throws IOException, InterruptedException {
-        CompletionService<Object> completion = new ExecutorCompletionService<>(executorService);
-        int count = 0;
-        for (final List<UUID> partition : Iterables.partition(uuids, getEffectiveProfilesPerJob())) {
-            count++;
-            completion.submit(() -> {
-                resolver.findAllByUuid(partition, consumer);
-                return null;
-            });
-        }
+        invokeAll(uuids, partition -> () -> {
+            resolver.findAllByUuid(partition, consumer);
+            return null;
+        });
+    }
 
-        Throwable throwable = null;
-        for (int i = 0; i < count; i++) {
-            try {
-                completion.take().get();
-            } catch (ExecutionException e) {
-                throwable = e.getCause();
+    /**
+     * Partition the given keys into jobs and wait for all of them to finish.
+     *
+     * <p>If a job fails or the calling thread is interrupted, the remaining
+     * jobs are cancelled before this method returns.</p>
+     *
+     * @param keys the keys to partition
+     * @param jobFactory a function that creates a job for a partition
+     * @param <K> the type of key
+     * @param <T> the type of result of each job
+     * @return a list of results in the order of completion
+     * @throws IOException thrown on I/O error
+     * @throws InterruptedException thrown on interruption
+     */
+    private <K, T> List<T> invokeAll(Iterable<K> keys, Function<List<K>, Callable<T>> jobFactory) throws IOException, InterruptedException {
+        CompletionService<T> completion = new ExecutorCompletionService<>(executor);
+        List<Future<T>> futures = new ArrayList<>();
+        List<T> results = new ArrayList<>();
+
+        try {
+            for (final List<K> partition : Iterables.partition(keys, getEffectiveProfilesPerJob())) {
+                futures.add(completion.submit(jobFactory.apply(partition)));
             }
-        }
 
-        if (throwable != null) {
-            if (throwable instanceof IOException) {
-                throw (IOException) throwable;
-            } else {
-                throw new RuntimeException("Error occurred during the operation", throwable);
+            for (int i = 0; i < futures.size(); i++) {
+                try {
+                    results.add(completion.take().get());
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    if (cause instanceof IOException) {
+                        throw (IOException) cause;
+                    } else {
+                        throw new RuntimeException("Error occurred during the operation", cause);
+                    }
+                }
+            }
+        } finally {
+            for (Future<T> future : futures) {
+                future.cancel(true);
             }
         }
+
+        return results;
+    }
+
+    /**
+     * Shut down the thread pool if it was created by this resolver.
+     *
+     * <p>Executors and thread factories that were provided to this
+     * resolver are left untouched.</p>
+     */
+    @Override
+    public void close() {
+        if (ownedExecutorService != null) {
+            ownedExecutorService.shutdownNow();
+        }
     }
 
 }
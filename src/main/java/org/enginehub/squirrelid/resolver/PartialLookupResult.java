@@ -0,0 +1,92 @@
+/*
+ * SquirrelID, a UUID library for Minecraft
+ * Copyright (C) sk89q <http://www.sk89q.com>
+ * Copyright (C) SquirrelID team and contributors
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.enginehub.squirrelid.resolver;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import org.enginehub.squirrelid.Profile;
+
+import java.io.IOException;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * The result of a bulk lookup that may have failed for some of its keys.
+ *
+ * @param <K> the type of key
+ */
+public final class PartialLookupResult<K> {
+
+    private final ImmutableList<Profile> profiles;
+    private final ImmutableMap<K, IOException> failures;
+
+    /**
+     * Create a new instance.
+     *
+     * @param profiles the profiles that were found
+     * @param failures the keys that could not be looked up, with the cause
+     */
+    public PartialLookupResult(ImmutableList<Profile> profiles, ImmutableMap<K, IOException> failures) {
+        checkNotNull(profiles);
+        checkNotNull(failures);
+        this.profiles = profiles;
+        this.failures = failures;
+    }
+
+    /**
+     * Get the profiles that were found.
+     *
+     * @return a list of profiles
+     */
+    public ImmutableList<Profile> getProfiles() {
+        return profiles;
+    }
+
+    /**
+     * Get the keys that could not be looked up, with the exception that
+     * caused the lookup to fail.
+     *
+     * <p>Keys that were looked up successfully but do not exist are not
+     * failures.</p>
+     *
+     * @return a map of keys to causes, in the order that the keys were requested
+     */
+    public ImmutableMap<K, IOException> getFailures() {
+        return failures;
+    }
+
+    /**
+     * Get whether the lookup failed for any key.
+     *
+     * @return true if there are failures
+     */
+    public boolean hasFailures() {
+        return !failures.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return "PartialLookupResult{"
+            + "profiles=" + profiles
+            + ", failures=" + failures.keySet()
+            + '}';
+    }
+
+}
@@ -0,0 +1,243 @@
+/*
+ * SquirrelID, a UUID library for Minecraft
+ * Copyright (C) sk89q <http://www.sk89q.com>
+ * Copyright (C) SquirrelID team and contributors
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.enginehub.squirrelid.resolver;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableList.Builder;
+import org.enginehub.squirrelid.Profile;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import javax.annotation.Nullable;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Resolves profiles using another resolver, sharing one underlying lookup
+ * between concurrent calls for the same name or UUID.
+ *
+ * <p>Names are compared case-insensitively. If a call asks for several
+ * keys, only those keys that are not already being looked up by another
+ * call are passed on to the wrapped resolver, and the results of the
+ * other lookups are waited for.</p>
+ */
+public class SingleFlightProfileService implements ProfileService {
+
+    private final ProfileService resolver;
+    private final Flights<String> nameFlights = new Flights<>();
+    private final Flights<UUID> uuidFlights = new Flights<>();
+
+    /**
+     * Create a new instance.
+     *
+     * @param resolver the resolver to use
+     */
+    public SingleFlightProfileService(ProfileService resolver) {
+        checkNotNull(resolver);
+        this.resolver = resolver;
+    }
+
+    private static String nameKey(String name) {
+        return name.toLowerCase(Locale.US);
+    }
+
+    @Override
+    public int getIdealRequestLimit() {
+        return resolver.getIdealRequestLimit();
+    }
+
+    @Nullable
+    @Override
+    public Profile findByName(String name) throws IOException, InterruptedException {
+        ImmutableList<Profile> profiles = findAllByName(ImmutableList.of(name));
+        return !profiles.isEmpty() ? profiles.get(0) : null;
+    }
+
+    @Override
+    public ImmutableList<Profile> findAllByName(Iterable<String> names) throws IOException, InterruptedException {
+        return nameFlights.resolve(names, SingleFlightProfileService::nameKey, resolver::findAllByName,
+            profile -> nameKey(profile.getName()));
+    }
+
+    @Override
+    public void findAllByName(Iterable<String> names, Predicate<Profile> consumer) throws IOException, InterruptedException {
+        for (Profile profile : findAllByName(names)) {
+            consumer.test(profile);
+        }
+    }
+
+    @Nullable
+    @Override
+    public Profile findByUuid(UUID uuid) throws IOException, InterruptedException {
+        ImmutableList<Profile> profiles = findAllByUuid(ImmutableList.of(uuid));
+        return !profiles.isEmpty() ? profiles.get(0) : null;
+    }
+
+    @Override
+    public ImmutableList<Profile> findAllByUuid(Iterable<UUID> uuids) throws IOException, InterruptedException {
+        return uuidFlights.resolve(uuids, Function.identity(), resolver::findAllByUuid, Profile::getUniqueId);
+    }
+
+    @Override
+    public void findAllByUuid(Iterable<UUID> uuids, Predicate<Profile> consumer) throws IOException, InterruptedException {
+        for (Profile profile : findAllByUuid(uuids)) {
+            consumer.test(profile);
+        }
+    }
+
+    /**
+     * Get the number of calls so far that joined a lookup another call was
+     * leading, counting each call once.
+     *
+     * @return the number of calls that joined
+     */
+    long getJoinedCount() {
+        return nameFlights.joinedCount.sum() + uuidFlights.joinedCount.sum();
+    }
+
+    @FunctionalInterface
+    private interface BatchLookup<T> {
+        ImmutableList<Profile> findAll(List<T> keys) throws IOException, InterruptedException;
+    }
+
+    /**
+     * Tracks the lookups that are currently in flight for one type of key.
+     *
+     * @param <K> the type of key
+     */
+    private static final class Flights<K> {
+        private final ConcurrentMap<K, CompletableFuture<Profile>> inFlight = new ConcurrentHashMap<>();
+        private final LongAdder joinedCount = new LongAdder();
+
+        <T> ImmutableList<Profile> resolve(Iterable<T> requested, Function<T, K> keyFunction,
+                                           BatchLookup<T> lookup, Function<Profile, K> profileKeyFunction)
+            throws IOException, InterruptedException {
+            List<K> order = new ArrayList<>();
+            Map<K, T> values = new LinkedHashMap<>();
+            for (T value : requested) {
+                K key = keyFunction.apply(value);
+                order.add(key);
+                values.putIfAbsent(key, value);
+            }
+
+            Map<K, T> pending = new LinkedHashMap<>(values);
+            Map<K, Profile> results = new HashMap<>();
+            boolean counted = false;
+
+            // A lookup that another caller was leading may have been aborted
+            // because that caller was interrupted, in which case we try again
+            while (!pending.isEmpty()) {
+                Map<K, CompletableFuture<Profile>> joined = new LinkedHashMap<>();
+                Map<K, T> led = new LinkedHashMap<>();
+                Map<K, CompletableFuture<Profile>> ledFutures = new HashMap<>();
+
+                for (Map.Entry<K, T> entry : pending.entrySet()) {
+                    CompletableFuture<Profile> future = new CompletableFuture<>();
+                    CompletableFuture<Profile> existing = inFlight.putIfAbsent(entry.getKey(), future);
+                    if (existing == null) {
+                        led.put(entry.getKey(), entry.getValue());
+                        ledFutures.put(entry.getKey(), future);
+                    } else {
+                        joined.put(entry.getKey(), existing);
+                    }
+                }
+
+                pending.clear();
+
+                if (!joined.isEmpty() && !counted) {
+                    joinedCount.increment();
+                    counted = true;
+                }
+
+                if (!led.isEmpty()) {
+                    lead(led, ledFutures, lookup, profileKeyFunction, results);
+                }
+
+                for (Map.Entry<K, CompletableFuture<Profile>> entry : joined.entrySet()) {
+                    try {
+                        Profile profile = entry.getValue().get();
+                        if (profile != null) {
+                            results.put(entry.getKey(), profile);
+                        }
+                    } catch (ExecutionException | CancellationException e) {
+                        Throwable cause = e instanceof ExecutionException ? e.getCause() : e;
+                        if (cause instanceof IOException) {
+                            throw (IOException) cause;
+                        } else if (cause instanceof InterruptedException || cause instanceof CancellationException) {
+                            pending.put(entry.getKey(), values.get(entry.getKey()));
+                        } else {
+                            throw new RuntimeException("Error occurred during the operation", cause);
+                        }
+                    }
+                }
+            }
+
+            Builder<Profile> builder = ImmutableList.builder();
+            for (K key : order) {
+                Profile profile = results.get(key);
+                if (profile != null) {
+                    builder.add(profile);
+                }
+            }
+            return builder.build();
+        }
+
+        private <T> void lead(Map<K, T> led, Map<K, CompletableFuture<Profile>> futures, BatchLookup<T> lookup,
+                              Function<Profile, K> profileKeyFunction, Map<K, Profile> results)
+            throws IOException, InterruptedException {
+            try {
+                for (Profile profile : lookup.findAll(new ArrayList<>(led.values()))) {
+                    K key = profileKeyFunction.apply(profile);
+                    if (led.containsKey(key)) {
+                        results.put(key, profile);
+                    }
+                }
+
+                for (K key : led.keySet()) {
+                    futures.get(key).complete(results.get(key));
+                }
+            } catch (Throwable t) {
+                for (CompletableFuture<Profile> future : futures.values()) {
+                    future.completeExceptionally(t);
+                }
+                throw t;
+            } finally {
+                for (Map.Entry<K, CompletableFuture<Profile>> entry : futures.entrySet()) {
+                    inFlight.remove(entry.getKey(), entry.getValue());
+                }
+            }
+        }
+    }
+
+}
@@ -0,0 +1,138 @@
+/*
+ * SquirrelID, a UUID library for Minecraft
+ * Copyright (C) sk89q <http://www.sk89q.com>
+ * Copyright (C) SquirrelID team and contributors
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.enginehub.squirrelid.resolver;
+
+import com.google.common.collect.ImmutableList;
+import org.enginehub.squirrelid.Profile;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Predicate;
+import javax.annotation.Nullable;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Sends lookups of offline mode UUIDs, which are version 3, to one service
+ * and all other lookups to another.
+ *
+ * <p>Mojang only hands out version 4 UUIDs, so asking it about an offline
+ * mode UUID can only fail or find nothing. Put this service in front of a
+ * chain such as a {@link CombinedProfileService} to keep those lookups
+ * away from the network. Names carry no version, so name lookups always
+ * go to the online service.</p>
+ */
+public class UuidVersionRoutingService implements ProfileService {
+
+    private static final int OFFLINE_VERSION = 3;
+
+    private final ProfileService offlineService;
+    private final ProfileService onlineService;
+
+    /**
+     * Create a new instance.
+     *
+     * @param offlineService the service for version 3 UUIDs, such as an {@link OfflineProfileService}
+     * @param onlineService the service for names and all other UUIDs
+     */
+    public UuidVersionRoutingService(ProfileService offlineService, ProfileService onlineService) {
+        checkNotNull(offlineService);
+        checkNotNull(onlineService);
+        this.offlineService = offlineService;
+        this.onlineService = onlineService;
+    }
+
+    /**
+     * Test whether the given UUID was derived from a name by an offline
+     * mode server.
+     *
+     * @param uuid the UUID
+     * @return true if the UUID is an offline mode UUID
+     */
+    public static boolean isOfflineUuid(UUID uuid) {
+        return uuid.version() == OFFLINE_VERSION;
+    }
+
+    @Override
+    public int getIdealRequestLimit() {
+        return Math.min(offlineService.getIdealRequestLimit(), onlineService.getIdealRequestLimit());
+    }
+
+    @Nullable
+    @Override
+    public Profile findByName(String name) throws IOException, InterruptedException {
+        return onlineService.findByName(name);
+    }
+
+    @Override
+    public ImmutableList<Profile> findAllByName(Iterable<String> names) throws IOException, InterruptedException {
+        return onlineService.findAllByName(names);
+    }
+
+    @Override
+    public void findAllByName(Iterable<String> names, Predicate<Profile> consumer) throws IOException, InterruptedException {
+        onlineService.findAllByName(names, consumer);
+    }
+
+    @Nullable
+    @Override
+    public Profile findByUuid(UUID uuid) throws IOException, InterruptedException {
+        return isOfflineUuid(uuid) ? offlineService.findByUuid(uuid) : onlineService.findByUuid(uuid);
+    }
+
+    @Override
+    public ImmutableList<Profile> findAllByUuid(Iterable<UUID> uuids) throws IOException, InterruptedException {
+        List<UUID> offline = new ArrayList<>();
+        List<UUID> online = new ArrayList<>();
+        split(uuids, offline, online);
+
+        ImmutableList.Builder<Profile> builder = ImmutableList.builder();
+        if (!offline.isEmpty()) {
+            builder.addAll(offlineService.findAllByUuid(offline));
+        }
+        if (!online.isEmpty()) {
+            builder.addAll(onlineService.findAllByUuid(online));
+        }
+        return builder.build();
+    }
+
+    @Override
+    public void findAllByUuid(Iterable<UUID> uuids, Predicate<Profile> consumer) throws IOException, InterruptedException {
+        List<UUID> offline = new ArrayList<>();
+        List<UUID> online = new ArrayList<>();
+        split(uuids, offline, online);
+
+        if (!offline.isEmpty()) {
+            offlineService.findAllByUuid(offline, consumer);
+        }
+        if (!online.isEmpty()) {
+            onlineService.findAllByUuid(online, consumer);
+        }
+    }
+
+    private static void split(Iterable<UUID> uuids, List<UUID> offline, List<UUID> online) {
+        for (UUID uuid : uuids) {
+            (isOfflineUuid(uuid) ? offline : online).add(uuid);
+        }
+    }
+
+}
@@ -0,0 +1,278 @@
+/*
+ * SquirrelID, a UUID library for Minecraft
+ * Copyright (C) sk89q <http://www.sk89q.com>
+ * Copyright (C) SquirrelID team and contributors
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.enginehub.squirrelid.util;
+
+import com.google.common.base.Ticker;
+
+import java.time.Duration;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * Limits the number of requests that are in flight at once, adapting the
+ * limit to how the service is doing with additive increase and
+ * multiplicative decrease (AIMD).
+ *
+ * <p>Every request that completes normally raises the limit by
+ * {@code 1 / limit}, so the limit grows by about one per round of
+ * requests. A request that is dropped, for example because it was rate
+ * limited or failed with a server error, or one that took much longer than
+ * the average, cuts the limit by the backoff ratio. Requests that were
+ * already in flight when the limit was cut do not cut it again.</p>
+ *
+ * <p>Instances are thread-safe.</p>
+ */
+public class AimdLimiter {
+
+    private static final double LATENCY_SMOOTHING = 0.1;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition released = lock.newCondition();
+    private final Ticker ticker;
+    private final int minLimit;
+    private final int maxLimit;
+    private double backoffRatio = 0.5;
+    private double latencyTolerance = 2;
+    private double limit;
+    private int inFlight;
+    private double averageLatency = Double.NaN;
+    private long lastDecrease = Long.MIN_VALUE;
+
+    /**
+     * Create a new limiter.
+     *
+     * @param initialLimit the limit to start with
+     * @param minLimit the lowest the limit may go
+     * @param maxLimit the highest the limit may go
+     */
+    public AimdLimiter(int initialLimit, int minLimit, int maxLimit) {
+        this(initialLimit, minLimit, maxLimit, Ticker.systemTicker());
+    }
+
+    /**
+     * Create a new limiter.
+     *
+     * @param initialLimit the limit to start with
+     * @param minLimit the lowest the limit may go
+     * @param maxLimit the highest the limit may go
+     * @param ticker the source of time
+     */
+    public AimdLimiter(int initialLimit, int minLimit, int maxLimit, Ticker ticker) {
+        checkArgument(minLimit >= 1, "minLimit must be >= 1");
+        checkArgument(maxLimit >= minLimit, "maxLimit must be >= minLimit");
+        checkArgument(initialLimit >= minLimit && initialLimit <= maxLimit, "initialLimit must be between minLimit and maxLimit");
+        checkNotNull(ticker);
+        this.limit = initialLimit;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.ticker = ticker;
+    }
+
+    /**
+     * Get the ratio that the limit is multiplied by when a request is
+     * dropped.
+     *
+     * @return the ratio
+     */
+    public double getBackoffRatio() {
+        return backoffRatio;
+    }
+
+    /**
+     * Set the ratio that the limit is multiplied by when a request is
+     * dropped.
+     *
+     * @param backoffRatio the ratio, between 0 and 1 exclusive
+     */
+    public void setBackoffRatio(double backoffRatio) {
+        checkArgument(backoffRatio > 0 && backoffRatio < 1, "backoffRatio must be between 0 and 1");
+        this.backoffRatio = backoffRatio;
+    }
+
+    /**
+     * Get how many times longer than the average latency a request may
+     * take before it is treated like a dropped request.
+     *
+     * @return the tolerance
+     */
+    public double getLatencyTolerance() {
+        return latencyTolerance;
+    }
+
+    /**
+     * Set how many times longer than the average latency a request may
+     * take before it is treated like a dropped request.
+     *
+     * @param latencyTolerance the tolerance, which must be greater than 1
+     */
+    public void setLatencyTolerance(double latencyTolerance) {
+        checkArgument(latencyTolerance > 1, "latencyTolerance must be > 1");
+        this.latencyTolerance = latencyTolerance;
+    }
+
+    /**
+     * Get the current limit.
+     *
+     * @return the limit
+     */
+    public int getLimit() {
+        lock.lock();
+        try {
+            return (int) limit;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Get the number of requests that are in flight.
+     *
+     * @return the number of requests
+     */
+    public int getInFlight() {
+        lock.lock();
+        try {
+            return inFlight;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Get the exponentially weighted moving average of the latency of
+     * requests that completed normally.
+     *
+     * @return the average latency, which is zero until a request completed
+     */
+    public Duration getAverageLatency() {
+        lock.lock();
+        try {
+            return Double.isNaN(averageLatency) ? Duration.ZERO : Duration.ofNanos((long) averageLatency);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Wait until another request may be made.
+     *
+     * <p>The returned permit must be completed with exactly one of
+     * {@link Permit#success()}, {@link Permit#dropped()} or
+     * {@link Permit#ignore()}.</p>
+     *
+     * @return the permit
+     * @throws InterruptedException thrown on interruption
+     */
+    public Permit acquire() throws InterruptedException {
+        lock.lock();
+        try {
+            while (inFlight >= (int) limit) {
+                released.await();
+            }
+            inFlight++;
+            return new Permit(ticker.read());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void release(long start, Outcome outcome) {
+        long now = ticker.read();
+        long latency = now - start;
+
+        lock.lock();
+        try {
+            inFlight--;
+
+            if (outcome == Outcome.SUCCESS) {
+                boolean spike = !Double.isNaN(averageLatency) && latency > averageLatency * latencyTolerance;
+                averageLatency = Double.isNaN(averageLatency)
+                    ? latency
+                    : averageLatency + LATENCY_SMOOTHING * (latency - averageLatency);
+                if (spike) {
+                    outcome = Outcome.DROPPED;
+                } else {
+                    limit = Math.min(maxLimit, limit + 1 / limit);
+                }
+            }
+
+            if (outcome == Outcome.DROPPED && start > lastDecrease) {
+                limit = Math.max(minLimit, limit * backoffRatio);
+                lastDecrease = now;
+            }
+
+            released.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private enum Outcome {
+        SUCCESS,
+        DROPPED,
+        IGNORED
+    }
+
+    /**
+     * Allows one request to be made.
+     */
+    public final class Permit {
+        private final long start;
+        private boolean completed;
+
+        private Permit(long start) {
+            this.start = start;
+        }
+
+        /**
+         * Record that the request completed normally.
+         */
+        public void success() {
+            complete(Outcome.SUCCESS);
+        }
+
+        /**
+         * Record that the request was dropped because the service is
+         * overloaded, such as when it was rate limited or timed out.
+         */
+        public void dropped() {
+            complete(Outcome.DROPPED);
+        }
+
+        /**
+         * Release the permit without adjusting the limit, such as when the
+         * request failed for a reason unrelated to load.
+         */
+        public void ignore() {
+            complete(Outcome.IGNORED);
+        }
+
+        private synchronized void complete(Outcome outcome) {
+            checkState(!completed, "Permit already completed");
+            completed = true;
+            release(start, outcome);
+        }
+    }
+
+}
@@ -25,42 +25,59 @@ import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.Closeable;
-import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
-import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URL;
 import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpResponse;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.logging.Logger;
+import javax.annotation.Nullable;
 
 /**
  * A simple fluent interface for performing HTTP requests that uses
- * {@link java.net.HttpURLConnection} or {@link javax.net.ssl.HttpsURLConnection}.
+ * a shared {@link HttpClient}.
+ *
+ * <p>The shared client negotiates HTTP/2 where the server supports it and
+ * keeps connections (and their TLS sessions) alive between requests, so
+ * repeated requests to the same host do not pay for a new handshake.</p>
  */
 public class HttpRequest implements Closeable {
 
     private static final Logger log = Logger.getLogger(HttpRequest.class.getCanonicalName());
+    private static final int CONNECT_TIMEOUT = 1000 * 30;
     private static final int READ_TIMEOUT = 1000 * 60 * 10;
     private static final int READ_BUFFER_SIZE = 1024 * 8;
+    private static final int MAX_PRESIZED_BUFFER_SIZE = 1024 * 1024 * 16;
+    private static final HttpClient CLIENT = HttpClient.newBuilder()
+        .version(HttpClient.Version.HTTP_2)
+        .followRedirects(HttpClient.Redirect.NORMAL)
+        .connectTimeout(Duration.ofMillis(CONNECT_TIMEOUT))
+        .build();
 
     private final Map<String, String> headers = new HashMap<>();
     private final String method;
     private final URL url;
     private String contentType;
     private byte[] body;
-    private HttpURLConnection conn;
+    private HttpResponse<InputStream> response;
     private InputStream inputStream;
+    private boolean executed;
 
     /**
      * Create a new HTTP request.
@@ -104,6 +121,15 @@ public class HttpRequest implements Closeable {
         return new HttpRequest(method, url);
     }
 
+    /**
+     * Get the shared client that is used to perform requests.
+     *
+     * @return the client
+     */
+    public static HttpClient getClient() {
+        return CLIENT;
+    }
+
     /**
      * Create a new {@link java.net.URL} and throw a {@link RuntimeException} if the URL
      * is not valid.
@@ -203,48 +229,79 @@ public class HttpRequest implements Closeable {
         boolean successful = false;
 
         try {
-            if (conn != null) {
+            if (executed) {
                 throw new IllegalArgumentException("Connection already executed");
             }
+            executed = true;
 
-            conn = (HttpURLConnection) reformat(url).openConnection();
+            response = CLIENT.send(buildRequest(), HttpResponse.BodyHandlers.ofInputStream());
+            inputStream = response.body();
 
-            if (body != null) {
-                conn.setRequestProperty("Content-Type", contentType);
-                conn.setRequestProperty("Content-Length", Integer.toString(body.length));
-                conn.setDoInput(true);
+            successful = true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for " + url);
+        } finally {
+            if (!successful) {
+                close();
             }
+        }
 
-            for (Map.Entry<String, String> entry : headers.entrySet()) {
-                conn.setRequestProperty(entry.getKey(), entry.getValue());
-            }
+        return this;
+    }
 
-            conn.setRequestMethod(method);
-            conn.setUseCaches(false);
-            conn.setDoOutput(true);
-            conn.setReadTimeout(READ_TIMEOUT);
+    /**
+     * Execute the request without blocking and buffer the returned response.
+     *
+     * <p>The returned future completes exceptionally with an
+     * {@link IOException} on I/O error.</p>
+     *
+     * @return a future completed with the buffered response
+     */
+    public CompletableFuture<BufferedResponse> executeAsync() {
+        if (executed) {
+            throw new IllegalArgumentException("Connection already executed");
+        }
+        executed = true;
 
-            conn.connect();
+        java.net.http.HttpRequest request;
+        try {
+            request = buildRequest();
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(e);
+        }
 
-            if (body != null) {
-                DataOutputStream out = new DataOutputStream(conn.getOutputStream());
-                out.write(body);
-                out.flush();
-                out.close();
-            }
+        return CLIENT.sendAsync(request, HttpResponse.BodyHandlers.ofByteArray())
+            .thenApply(r -> new BufferedResponse(r.statusCode(), r.headers(), r.body()));
+    }
 
-            inputStream = conn.getResponseCode() == HttpURLConnection.HTTP_OK
-                ? conn.getInputStream()
-                : conn.getErrorStream();
+    /**
+     * Build the request that is sent with the shared client.
+     *
+     * @return the request
+     * @throws java.io.IOException if the URL is invalid
+     */
+    private java.net.http.HttpRequest buildRequest() throws IOException {
+        java.net.http.HttpRequest.Builder builder;
 
-            successful = true;
-        } finally {
-            if (!successful) {
-                close();
-            }
+        try {
+            builder = java.net.http.HttpRequest.newBuilder(reformat(url).toURI());
+        } catch (URISyntaxException | IllegalArgumentException e) {
+            throw new IOException("Invalid URL " + url, e);
         }
 
-        return this;
+        if (body != null) {
+            builder.header("Content-Type", contentType);
+            builder.method(method, java.net.http.HttpRequest.BodyPublishers.ofByteArray(body));
+        } else {
+            builder.method(method, java.net.http.HttpRequest.BodyPublishers.noBody());
+        }
+
+        for (Map.Entry<String, String> entry : headers.entrySet()) {
+            builder.setHeader(entry.getKey(), entry.getValue());
+        }
+
+        return builder.timeout(Duration.ofMillis(READ_TIMEOUT)).build();
     }
 
     /**
@@ -252,7 +309,8 @@ public class HttpRequest implements Closeable {
      *
      * @param codes a list of codes
      * @return this object
-     * @throws java.io.IOException if there is an I/O error or the response code is not expected
+     * @throws HttpStatusException if the response code is not expected
+     * @throws java.io.IOException if there is an I/O error
      */
     public HttpRequest expectResponseCode(int... codes) throws IOException {
         int responseCode = getResponseCode();
@@ -264,7 +322,7 @@ public class HttpRequest implements Closeable {
         }
 
         close();
-        throw new IOException("Did not get expected response code, got " + responseCode + " for " + url);
+        throw new HttpStatusException("Did not get expected response code, got " + responseCode + " for " + url, responseCode);
     }
 
     /**
@@ -274,11 +332,26 @@ public class HttpRequest implements Closeable {
      * @throws java.io.IOException on I/O error
      */
     public int getResponseCode() throws IOException {
-        if (conn == null) {
+        if (response == null) {
             throw new IllegalArgumentException("No connection has been made");
         }
 
-        return conn.getResponseCode();
+        return response.statusCode();
+    }
+
+    /**
+     * Get the first value of a response header.
+     *
+     * @param name the name of the header
+     * @return the value, or null if the header is not present
+     */
+    @Nullable
+    public String getHeader(String name) {
+        if (response == null) {
+            throw new IllegalArgumentException("No connection has been made");
+        }
+
+        return response.headers().firstValue(name).orElse(null);
     }
 
     /**
@@ -303,13 +376,17 @@ public class HttpRequest implements Closeable {
         }
 
         try {
-            ByteArrayOutputStream bos = new ByteArrayOutputStream();
-            int b;
-            while ((b = inputStream.read()) != -1) {
+            long contentLength = response.headers().firstValueAsLong("Content-Length").orElse(-1);
+            ByteArrayOutputStream bos = new ByteArrayOutputStream(contentLength > 0 && contentLength <= MAX_PRESIZED_BUFFER_SIZE
+                ? (int) contentLength
+                : READ_BUFFER_SIZE);
+            byte[] data = new byte[READ_BUFFER_SIZE];
+            int len;
+            while ((len = inputStream.read(data)) != -1) {
                 checkInterrupted();
-                bos.write(b);
+                bos.write(data, 0, len);
             }
-            return new BufferedResponse(bos.toByteArray());
+            return new BufferedResponse(response.statusCode(), response.headers(), bos.toByteArray());
         } finally {
             close();
         }
@@ -367,10 +444,16 @@ public class HttpRequest implements Closeable {
         return this;
     }
 
+    /**
+     * Close the response body. The underlying connection is kept alive by
+     * the shared client if the body was fully read.
+     *
+     * @throws java.io.IOException on I/O error
+     */
     @Override
     public void close() throws IOException {
-        if (conn != null) {
-            conn.disconnect();
+        if (inputStream != null) {
+            inputStream.close();
         }
     }
 
@@ -429,12 +512,36 @@ public class HttpRequest implements Closeable {
      * Used to buffer the response in memory.
      */
     public static class BufferedResponse {
+        private final int responseCode;
+        private final HttpHeaders headers;
         private final byte[] data;
 
-        private BufferedResponse(byte[] data) {
+        private BufferedResponse(int responseCode, HttpHeaders headers, byte[] data) {
+            this.responseCode = responseCode;
+            this.headers = headers;
             this.data = data;
         }
 
+        /**
+         * Get the response code.
+         *
+         * @return the response code
+         */
+        public int getResponseCode() {
+            return responseCode;
+        }
+
+        /**
+         * Get the first value of a response header.
+         *
+         * @param name the name of the header
+         * @return the value, or null if the header is not present
+         */
+        @Nullable
+        public String getHeader(String name) {
+            return headers.firstValue(name).orElse(null);
+        }
+
         /**
          * Return the result as bytes.
          *
@@ -0,0 +1,69 @@
+/*
+ * SquirrelID, a UUID library for Minecraft
+ * Copyright (C) sk89q <http://www.sk89q.com>
+ * Copyright (C) SquirrelID team and contributors
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.enginehub.squirrelid.util;
+
+import java.io.IOException;
+
+/**
+ * Thrown when an HTTP request was answered with an unexpected status code.
+ */
+public class HttpStatusException extends IOException {
+
+    private final int statusCode;
+
+    /**
+     * Create a new instance.
+     *
+     * @param message the message
+     * @param statusCode the status code
+     */
+    public HttpStatusException(String message, int statusCode) {
+        super(message);
+        this.statusCode = statusCode;
+    }
+
+    /**
+     * Get the status code of the response.
+     *
+     * @return the status code
+     */
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    /**
+     * Get whether the server asked the client to slow down.
+     *
+     * @return true if the status code is 429 Too Many Requests
+     */
+    public boolean isRateLimited() {
+        return statusCode == 429;
+    }
+
+    /**
+     * Get whether the request failed because of a server error.
+     *
+     * @return true if the status code is 5xx
+     */
+    public boolean isServerError() {
+        return statusCode >= 500 && statusCode < 600;
+    }
+
+}
@@ -0,0 +1,342 @@
+/*
+ * SquirrelID, a UUID library for Minecraft
+ * Copyright (C) sk89q <http://www.sk89q.com>
+ * Copyright (C) SquirrelID team and contributors
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.enginehub.squirrelid.util;
+
+import org.enginehub.squirrelid.Profile;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.annotation.Nullable;
+
+/**
+ * Decodes profiles from the JSON returned by Mojang's profile API while
+ * the response is being read.
+ *
+ * <p>The root may be an array of profile objects or a single profile
+ * object. Only the string fields {@code id} and {@code name} are read and
+ * everything else is skipped, so no intermediate strings or maps are built
+ * for the rest of the document. An empty document has no profiles.</p>
+ */
+public final class ProfileJsonReader {
+
+    private static final Logger log = Logger.getLogger(ProfileJsonReader.class.getCanonicalName());
+    private static final int BUFFER_SIZE = 1024 * 8;
+
+    private final Reader reader;
+    private final char[] buffer = new char[BUFFER_SIZE];
+    private final StringBuilder builder = new StringBuilder();
+    private int pos;
+    private int limit;
+
+    private ProfileJsonReader(InputStream in) {
+        this.reader = new InputStreamReader(in, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Read every profile that has both an ID and a name, passing each
+     * profile to the consumer as soon as it has been read.
+     *
+     * @param in the input stream, which is not closed
+     * @param consumer the consumer
+     * @throws IOException thrown on I/O error or if the JSON is malformed
+     */
+    public static void readProfiles(InputStream in, Consumer<Profile> consumer) throws IOException {
+        new ProfileJsonReader(in).readRoot((id, name) -> {
+            if (id != null && name != null) {
+                try {
+                    consumer.accept(new Profile(UUID.fromString(UUIDs.addDashes(id)), name));
+                } catch (IllegalArgumentException e) {
+                    log.log(Level.WARNING, "Got invalid value from UUID lookup service", e);
+                }
+            }
+        });
+    }
+
+    /**
+     * Read the name of a single profile object.
+     *
+     * @param in the input stream, which is not closed
+     * @return the name, or null if there is no name
+     * @throws IOException thrown on I/O error or if the JSON is malformed
+     */
+    @Nullable
+    public static String readName(InputStream in) throws IOException {
+        String[] result = new String[1];
+        new ProfileJsonReader(in).readRoot((id, name) -> {
+            if (result[0] == null) {
+                result[0] = name;
+            }
+        });
+        return result[0];
+    }
+
+    private void readRoot(EntryHandler handler) throws IOException {
+        int c = peekNonWhitespace();
+        if (c == -1) {
+            return;
+        } else if (c == '[') {
+            readArray(handler);
+        } else if (c == '{') {
+            readObject(handler);
+        } else {
+            skipValue();
+        }
+    }
+
+    private void readArray(EntryHandler handler) throws IOException {
+        expect('[');
+        if (peekNonWhitespace() == ']') {
+            pos++;
+            return;
+        }
+
+        while (true) {
+            if (peekNonWhitespace() == '{') {
+                readObject(handler);
+            } else {
+                skipValue();
+            }
+
+            int c = readNonWhitespace();
+            if (c == ']') {
+                return;
+            } else if (c != ',') {
+                throw malformed("Expected , or ]");
+            }
+        }
+    }
+
+    private void readObject(EntryHandler handler) throws IOException {
+        if (Thread.currentThread().isInterrupted()) {
+            throw new InterruptedIOException("Interrupted while reading profiles");
+        }
+
+        String id = null;
+        String name = null;
+
+        expect('{');
+        if (peekNonWhitespace() == '}') {
+            pos++;
+        } else {
+            while (true) {
+                if (peekNonWhitespace() != '"') {
+                    throw malformed("Expected a key");
+                }
+                String key = readString();
+                expect(':');
+
+                boolean wanted = key.equals("id") || key.equals("name");
+                if (wanted && peekNonWhitespace() == '"') {
+                    String value = readString();
+                    if (key.equals("id")) {
+                        id = value;
+                    } else {
+                        name = value;
+                    }
+                } else {
+                    skipValue();
+                }
+
+                int c = readNonWhitespace();
+                if (c == '}') {
+                    break;
+                } else if (c != ',') {
+                    throw malformed("Expected , or }");
+                }
+            }
+        }
+
+        handler.accept(id, name);
+    }
+
+    private void skipValue() throws IOException {
+        int depth = 0;
+
+        do {
+            int c = peekNonWhitespace();
+            switch (c) {
+                case -1:
+                    throw malformed("Unexpected end of document");
+                case '"':
+                    readString();
+                    break;
+                case '{':
+                case '[':
+                    pos++;
+                    depth++;
+                    break;
+                case '}':
+                case ']':
+                case ',':
+                case ':':
+                    if (depth == 0) {
+                        throw malformed("Expected a value");
+                    }
+                    pos++;
+                    if (c == '}' || c == ']') {
+                        depth--;
+                    }
+                    break;
+                default:
+                    skipLiteral();
+                    break;
+            }
+        } while (depth > 0);
+    }
+
+    private void skipLiteral() throws IOException {
+        int c = peek();
+        if (!isLiteralChar(c)) {
+            throw malformed("Unexpected character '" + (char) c + "'");
+        }
+        while (isLiteralChar(c)) {
+            pos++;
+            c = peek();
+        }
+    }
+
+    private static boolean isLiteralChar(int c) {
+        return (c >= 'a' && c <= 'z') || (c >= '0' && c <= '9') || c == '-' || c == '+' || c == '.' || c == 'E';
+    }
+
+    private String readString() throws IOException {
+        expect('"');
+        builder.setLength(0);
+
+        while (true) {
+            if (pos == limit && !fill()) {
+                throw malformed("Unterminated string");
+            }
+
+            int start = pos;
+            while (pos < limit && buffer[pos] != '"' && buffer[pos] != '\\') {
+                pos++;
+            }
+            builder.append(buffer, start, pos - start);
+
+            if (pos < limit) {
+                char c = buffer[pos++];
+                if (c == '"') {
+                    return builder.toString();
+                }
+                builder.append(readEscape());
+            }
+        }
+    }
+
+    private char readEscape() throws IOException {
+        int c = read();
+        switch (c) {
+            case '"':
+            case '\\':
+            case '/':
+                return (char) c;
+            case 'b':
+                return '\b';
+            case 'f':
+                return '\f';
+            case 'n':
+                return '\n';
+            case 'r':
+                return '\r';
+            case 't':
+                return '\t';
+            case 'u':
+                int value = 0;
+                for (int i = 0; i < 4; i++) {
+                    int digit = Character.digit(read(), 16);
+                    if (digit == -1) {
+                        throw malformed("Invalid unicode escape");
+                    }
+                    value = (value << 4) | digit;
+                }
+                return (char) value;
+            default:
+                throw malformed("Invalid escape");
+        }
+    }
+
+    private void expect(char expected) throws IOException {
+        if (readNonWhitespace() != expected) {
+            throw malformed("Expected " + expected);
+        }
+    }
+
+    private int readNonWhitespace() throws IOException {
+        int c = peekNonWhitespace();
+        if (c != -1) {
+            pos++;
+        }
+        return c;
+    }
+
+    private int peekNonWhitespace() throws IOException {
+        int c = peek();
+        while (c == ' ' || c == '\t' || c == '\n' || c == '\r') {
+            pos++;
+            c = peek();
+        }
+        return c;
+    }
+
+    private int read() throws IOException {
+        int c = peek();
+        if (c == -1) {
+            throw malformed("Unexpected end of document");
+        }
+        pos++;
+        return c;
+    }
+
+    private int peek() throws IOException {
+        if (pos == limit && !fill()) {
+            return -1;
+        }
+        return buffer[pos];
+    }
+
+    private boolean fill() throws IOException {
+        int read;
+        do {
+            read = reader.read(buffer, 0, buffer.length);
+        } while (read == 0);
+        pos = 0;
+        limit = Math.max(0, read);
+        return read > 0;
+    }
+
+    private IOException malformed(String message) {
+        return new IOException("Malformed JSON from the profile service: " + message);
+    }
+
+    @FunctionalInterface
+    private interface EntryHandler {
+        void accept(@Nullable String id, @Nullable String name);
+    }
+
+}
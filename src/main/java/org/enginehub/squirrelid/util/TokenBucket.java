@@ -0,0 +1,180 @@
+/*
+ * SquirrelID, a UUID library for Minecraft
+ * Copyright (C) sk89q <http://www.sk89q.com>
+ * Copyright (C) SquirrelID team and contributors
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.enginehub.squirrelid.util;
+
+import com.google.common.base.Ticker;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * A token bucket that limits the rate of requests made to a service.
+ *
+ * <p>Tokens are added at a fixed rate up to a capacity, and every request
+ * takes one token. Requests made while the bucket is empty wait for the
+ * next token in turn. The bucket can also be paused, for example when a
+ * service asks clients to back off with a {@code Retry-After} header, in
+ * which case all requests wait until the pause is over.</p>
+ *
+ * <p>Instances are thread-safe and are meant to be shared by everything
+ * that sends requests to the same service.</p>
+ */
+public class TokenBucket {
+
+    private final int capacity;
+    private final double tokensPerNano;
+    private final Ticker ticker;
+    private double tokens;
+    private long lastRefill;
+    private long pausedUntil;
+
+    /**
+     * Create a new bucket that starts full.
+     *
+     * @param capacity the maximum number of tokens
+     * @param tokensPerSecond the number of tokens added per second
+     */
+    public TokenBucket(int capacity, double tokensPerSecond) {
+        this(capacity, tokensPerSecond, Ticker.systemTicker());
+    }
+
+    /**
+     * Create a new bucket that starts full.
+     *
+     * @param capacity the maximum number of tokens
+     * @param tokensPerSecond the number of tokens added per second
+     * @param ticker the source of time
+     */
+    public TokenBucket(int capacity, double tokensPerSecond, Ticker ticker) {
+        checkArgument(capacity >= 1, "capacity must be >= 1");
+        checkArgument(tokensPerSecond > 0, "tokensPerSecond must be > 0");
+        checkNotNull(ticker);
+
+        this.capacity = capacity;
+        this.tokensPerNano = tokensPerSecond / TimeUnit.SECONDS.toNanos(1);
+        this.ticker = ticker;
+        this.tokens = capacity;
+        this.lastRefill = ticker.read();
+        this.pausedUntil = lastRefill;
+    }
+
+    /**
+     * Create a bucket that never runs out of tokens but that can still
+     * be paused.
+     *
+     * @return a new bucket
+     */
+    public static TokenBucket unlimited() {
+        return new TokenBucket(1, Double.POSITIVE_INFINITY);
+    }
+
+    /**
+     * Get the maximum number of tokens.
+     *
+     * @return the capacity
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Get the number of tokens that are available right now.
+     *
+     * @return the number of tokens, which is zero while paused or while
+     *     other requests are waiting for tokens
+     */
+    public synchronized double getAvailableTokens() {
+        long now = ticker.read();
+        refill(now);
+        return now < pausedUntil ? 0 : Math.max(0, tokens);
+    }
+
+    /**
+     * Get the time left until the bucket is no longer paused.
+     *
+     * @return the remaining pause, which is zero if not paused
+     */
+    public synchronized Duration getRemainingPause() {
+        return Duration.ofNanos(Math.max(0, pausedUntil - ticker.read()));
+    }
+
+    /**
+     * Take a token, waiting until one is available.
+     *
+     * @throws InterruptedException thrown on interruption
+     */
+    public void acquire() throws InterruptedException {
+        long delay = reserve();
+        if (delay > 0) {
+            TimeUnit.NANOSECONDS.sleep(delay);
+        }
+    }
+
+    /**
+     * Take a token without waiting for it, returning how long the caller
+     * has to wait before it may use the token.
+     *
+     * @return the delay in nanoseconds, which may be zero
+     */
+    public synchronized long reserve() {
+        long now = ticker.read();
+        refill(now);
+
+        if (Double.isInfinite(tokensPerNano)) {
+            return Math.max(0, pausedUntil - now);
+        }
+
+        // While paused, tokens are only collected again from the end of the pause
+        tokens -= 1;
+        long tokenDelay = tokens >= 0 ? 0 : (long) Math.ceil(-tokens / tokensPerNano);
+        long start = Math.max(now, pausedUntil);
+        return (start - now) + tokenDelay;
+    }
+
+    /**
+     * Pause the bucket so that no request proceeds until the given time has
+     * passed. Tokens that are collected during the pause are discarded.
+     *
+     * @param duration the duration of the pause
+     */
+    public synchronized void pause(Duration duration) {
+        checkNotNull(duration);
+        long now = ticker.read();
+        refill(now);
+        pausedUntil = Math.max(pausedUntil, now + duration.toNanos());
+        tokens = Math.min(tokens, 0);
+        lastRefill = pausedUntil;
+    }
+
+    private void refill(long now) {
+        if (now > lastRefill) {
+            if (Double.isInfinite(tokensPerNano)) {
+                tokens = capacity;
+            } else {
+                tokens = Math.min(capacity, tokens + (now - lastRefill) * tokensPerNano);
+            }
+            lastRefill = now;
+        }
+    }
+
+}
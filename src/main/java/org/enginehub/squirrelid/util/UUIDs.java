@@ -19,6 +19,11 @@
 
 package org.enginehub.squirrelid.util;
 
+import java.nio.charset.StandardCharsets;
+import java.security.DigestException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.UUID;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -28,6 +33,8 @@ import java.util.regex.Pattern;
 public final class UUIDs {
 
     private static final Pattern DASHLESS_PATTERN = Pattern.compile("^([A-Fa-f0-9]{8})([A-Fa-f0-9]{4})([A-Fa-f0-9]{4})([A-Fa-f0-9]{4})([A-Fa-f0-9]{12})$");
+    private static final byte[] OFFLINE_PREFIX = "OfflinePlayer:".getBytes(StandardCharsets.UTF_8);
+    private static final ThreadLocal<OfflineHasher> OFFLINE_HASHER = ThreadLocal.withInitial(OfflineHasher::new);
 
     private UUIDs() {
     }
@@ -69,4 +76,117 @@ public final class UUIDs {
         }
         return uuid;
     }
+
+    /**
+     * Get the UUID that an offline mode server gives the player with
+     * the given name.
+     *
+     * <p>This is the same as {@code UUID.nameUUIDFromBytes(("OfflinePlayer:" + name).getBytes(UTF_8))},
+     * but reuses a digest and buffers for each thread.</p>
+     *
+     * @param name the name of the player, which is case sensitive
+     * @return a version 3 UUID
+     */
+    public static UUID forOfflinePlayer(String name) {
+        return OFFLINE_HASHER.get().hash(name);
+    }
+
+    /**
+     * Get the 16 bytes of a UUID, most significant first.
+     *
+     * @param uuid the UUID
+     * @return a new array of 16 bytes
+     */
+    public static byte[] toBytes(UUID uuid) {
+        byte[] bytes = new byte[16];
+        long msb = uuid.getMostSignificantBits();
+        long lsb = uuid.getLeastSignificantBits();
+        for (int i = 7; i >= 0; i--) {
+            bytes[i] = (byte) msb;
+            bytes[i + 8] = (byte) lsb;
+            msb >>>= 8;
+            lsb >>>= 8;
+        }
+        return bytes;
+    }
+
+    /**
+     * Read a UUID from 16 bytes, most significant first.
+     *
+     * @param bytes the bytes
+     * @return a UUID
+     * @throws IllegalArgumentException thrown if there are not 16 bytes
+     */
+    public static UUID fromBytes(byte[] bytes) {
+        if (bytes.length != 16) {
+            throw new IllegalArgumentException("Expected 16 bytes but got " + bytes.length);
+        }
+        long msb = 0;
+        long lsb = 0;
+        for (int i = 0; i < 8; i++) {
+            msb = (msb << 8) | (bytes[i] & 0xff);
+            lsb = (lsb << 8) | (bytes[i + 8] & 0xff);
+        }
+        return new UUID(msb, lsb);
+    }
+
+    /**
+     * Hashes names with a reused digest and buffers.
+     */
+    private static final class OfflineHasher {
+        private final MessageDigest digest;
+        private final byte[] hash = new byte[16];
+        private byte[] input = new byte[64];
+
+        private OfflineHasher() {
+            try {
+                digest = MessageDigest.getInstance("MD5");
+            } catch (NoSuchAlgorithmException e) {
+                throw new InternalError("MD5 not supported", e);
+            }
+        }
+
+        private UUID hash(String name) {
+            digest.update(OFFLINE_PREFIX);
+            update(name);
+            try {
+                digest.digest(hash, 0, hash.length);
+            } catch (DigestException e) {
+                throw new IllegalStateException(e);
+            }
+
+            hash[6] &= 0x0f;
+            hash[6] |= 0x30; // Version 3
+            hash[8] &= 0x3f;
+            hash[8] |= (byte) 0x80; // IETF variant
+
+            long msb = 0;
+            long lsb = 0;
+            for (int i = 0; i < 8; i++) {
+                msb = (msb << 8) | (hash[i] & 0xff);
+            }
+            for (int i = 8; i < 16; i++) {
+                lsb = (lsb << 8) | (hash[i] & 0xff);
+            }
+            return new UUID(msb, lsb);
+        }
+
+        private void update(String name) {
+            int length = name.length();
+            if (input.length < length) {
+                input = new byte[Math.max(length, input.length * 2)];
+            }
+            for (int i = 0; i < length; i++) {
+                char c = name.charAt(i);
+                if (c >= 0x80) {
+                    // Valid names are ASCII, so only others need an encoder
+                    digest.update(name.getBytes(StandardCharsets.UTF_8));
+                    return;
+                }
+                input[i] = (byte) c;
+            }
+            digest.update(input, 0, length);
+        }
+    }
+
 }
@@ -0,0 +1,216 @@
+/*
+ * SquirrelID, a UUID library for Minecraft
+ * Copyright (C) sk89q <http://www.sk89q.com>
+ * Copyright (C) SquirrelID team and contributors
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.enginehub.squirrelid.cache;
+
+import com.google.common.cache.CacheStats;
+import org.enginehub.squirrelid.Profile;
+import org.enginehub.squirrelid.util.ExtraMatchers;
+import org.enginehub.squirrelid.util.FakeTicker;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.allOf;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.hasEntry;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+
+public class BoundedProfileCacheTest {
+
+    @Test
+    public void testStaysWithinMaximumSize() {
+        BoundedProfileCache cache = BoundedProfileCache.builder().maximumSize(100).build();
+        for (int i = 0; i < 10000; i++) {
+            cache.put(new Profile(UUID.randomUUID(), "player" + i));
+        }
+
+        assertThat(cache.size(), lessThanOrEqualTo(100L));
+        assertThat(cache.stats().evictionCount(), greaterThanOrEqualTo(9900L));
+    }
+
+    @Test
+    public void testMaximumWeight() {
+        BoundedProfileCache cache = BoundedProfileCache.builder()
+            .maximumWeight(1000, profile -> profile.getName().length())
+            .build();
+        for (int i = 0; i < 1000; i++) {
+            cache.put(new Profile(UUID.randomUUID(), "player" + i));
+        }
+
+        assertThat(cache.getWeight(), lessThanOrEqualTo(1000L));
+    }
+
+    @Test
+    public void testHotEntriesSurviveScan() {
+        BoundedProfileCache cache = BoundedProfileCache.builder().maximumSize(100).build();
+        List<Profile> hot = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            Profile profile = new Profile(UUID.randomUUID(), "hot" + i);
+            hot.add(profile);
+            cache.put(profile);
+        }
+        for (int round = 0; round < 5; round++) {
+            for (Profile profile : hot) {
+                cache.getIfPresent(profile.getUniqueId());
+            }
+        }
+
+        for (int i = 0; i < 10000; i++) {
+            cache.put(new Profile(UUID.randomUUID(), "scan" + i));
+        }
+
+        int present = 0;
+        for (Profile profile : hot) {
+            if (cache.getIfPresent(profile.getUniqueId()) != null) {
+                present++;
+            }
+        }
+        assertThat(present, greaterThanOrEqualTo(45));
+    }
+
+    @Test
+    public void testUpdatesName() {
+        BoundedProfileCache cache = BoundedProfileCache.builder().maximumSize(10).build();
+        UUID uuid = UUID.randomUUID();
+        cache.put(new Profile(uuid, "before"));
+        cache.put(new Profile(uuid, "after"));
+
+        assertThat(cache.getIfPresent(uuid).getName(), equalTo("after"));
+        assertThat(cache.size(), equalTo(1L));
+    }
+
+    @Test
+    public void testExpireAfterWrite() {
+        FakeTicker ticker = new FakeTicker();
+        BoundedProfileCache cache = BoundedProfileCache.builder()
+            .maximumSize(10)
+            .expireAfterWrite(Duration.ofMinutes(5))
+            .ticker(ticker)
+            .build();
+        UUID uuid = UUID.randomUUID();
+        cache.put(new Profile(uuid, "test"));
+
+        ticker.advance(4, TimeUnit.MINUTES);
+        assertThat(cache.getIfPresent(uuid), equalTo(new Profile(uuid, "test")));
+        ticker.advance(1, TimeUnit.MINUTES);
+        assertThat(cache.getIfPresent(uuid), equalTo(null));
+        assertThat(cache.size(), equalTo(0L));
+    }
+
+    @Test
+    public void testExpireAfterWriteBehindFreshEntry() {
+        FakeTicker ticker = new FakeTicker();
+        BoundedProfileCache cache = BoundedProfileCache.builder()
+            .maximumSize(10)
+            .expireAfterWrite(Duration.ofMinutes(5))
+            .ticker(ticker)
+            .build();
+        UUID old = UUID.randomUUID();
+        UUID fresh = UUID.randomUUID();
+        cache.put(new Profile(old, "old"));
+        cache.put(new Profile(UUID.randomUUID(), "filler1"));
+        cache.getIfPresent(old);
+
+        ticker.advance(3, TimeUnit.MINUTES);
+        cache.put(new Profile(fresh, "fresh"));
+        cache.put(new Profile(UUID.randomUUID(), "filler2"));
+        cache.getIfPresent(fresh);
+        // The old entry is read last, so it is behind the fresh one
+        cache.getIfPresent(old);
+
+        ticker.advance(2, TimeUnit.MINUTES);
+        cache.cleanUp();
+
+        assertThat(cache.size(), equalTo(2L));
+        assertThat(cache.getIfPresent(fresh), equalTo(new Profile(fresh, "fresh")));
+        assertThat(cache.getIfPresent(old), equalTo(null));
+    }
+
+    @Test
+    public void testExpireAfterAccess() {
+        FakeTicker ticker = new FakeTicker();
+        BoundedProfileCache cache = BoundedProfileCache.builder()
+            .maximumSize(10)
+            .expireAfterAccess(Duration.ofMinutes(5))
+            .ticker(ticker)
+            .build();
+        UUID read = UUID.randomUUID();
+        UUID idle = UUID.randomUUID();
+        cache.put(new Profile(read, "read"));
+        cache.put(new Profile(idle, "idle"));
+
+        ticker.advance(4, TimeUnit.MINUTES);
+        cache.getIfPresent(read);
+        ticker.advance(4, TimeUnit.MINUTES);
+        cache.cleanUp();
+
+        assertThat(cache.size(), equalTo(1L));
+        assertThat(cache.getIfPresent(read), equalTo(new Profile(read, "read")));
+        assertThat(cache.getIfPresent(idle), equalTo(null));
+    }
+
+    @Test
+    public void testStats() {
+        BoundedProfileCache cache = BoundedProfileCache.builder().maximumSize(10).build();
+        UUID uuid = UUID.randomUUID();
+        cache.put(new Profile(uuid, "test"));
+        cache.getIfPresent(uuid);
+        cache.getIfPresent(uuid);
+        cache.getIfPresent(UUID.randomUUID());
+
+        CacheStats stats = cache.stats();
+        assertThat(stats.hitCount(), equalTo(2L));
+        assertThat(stats.missCount(), equalTo(1L));
+    }
+
+    @Test
+    public void testNameLookup() {
+        UUID testId1 = UUID.randomUUID();
+        UUID testId2 = UUID.randomUUID();
+        UUID testId3 = UUID.randomUUID();
+
+        BoundedProfileCache cache = BoundedProfileCache.builder().maximumSize(10).build();
+
+        cache.putAll(Arrays.asList(new Profile(testId1, "Notch"), new Profile(testId2, "jeb_")));
+
+        assertThat(cache.getByName("notch"), equalTo(new Profile(testId1, "Notch")));
+        assertThat(cache.getByName("notch").getName(), equalTo("Notch"));
+        assertThat(
+            cache.getAllPresentByName(Arrays.asList("NOTCH", "jeb_", "nobody")),
+            allOf(
+                ExtraMatchers.<String, Profile>hasSize(2),
+                hasEntry("NOTCH", new Profile(testId1, "Notch")),
+                hasEntry("jeb_", new Profile(testId2, "jeb_"))));
+
+        cache.put(new Profile(testId1, "Notch2"));
+        assertThat(cache.getByName("Notch"), equalTo(null));
+
+        cache.put(new Profile(testId3, "jeb_"));
+        assertThat(cache.getByName("jeb_"), equalTo(new Profile(testId3, "jeb_")));
+    }
+
+}
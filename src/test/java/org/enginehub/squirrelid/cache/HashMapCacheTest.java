@@ -103,4 +103,32 @@ public class HashMapCacheTest {
                 equalTo(null));
     }
 
-}
\ No newline at end of file
+    @Test
+    public void testNameLookup() throws Exception {
+        UUID testId1 = UUID.randomUUID();
+        UUID testId2 = UUID.randomUUID();
+        UUID testId3 = UUID.randomUUID();
+
+        HashMapCache cache = new HashMapCache();
+
+        cache.putAll(Arrays.asList(
+                new Profile(testId1, "Notch"),
+                new Profile(testId2, "jeb_")));
+
+        assertThat(cache.getByName("notch"), equalTo(new Profile(testId1, "Notch")));
+        assertThat(cache.getByName("notch").getName(), equalTo("Notch"));
+        assertThat(
+                cache.getAllPresentByName(Arrays.asList("NOTCH", "jeb_", "nobody")),
+                allOf(
+                        ExtraMatchers.<String, Profile>hasSize(2),
+                        hasEntry("NOTCH", new Profile(testId1, "Notch")),
+                        hasEntry("jeb_", new Profile(testId2, "jeb_"))));
+
+        cache.put(new Profile(testId1, "Notch2"));
+        assertThat(cache.getByName("Notch"), equalTo(null));
+
+        cache.put(new Profile(testId3, "jeb_"));
+        assertThat(cache.getByName("jeb_"), equalTo(new Profile(testId3, "jeb_")));
+    }
+
+}
@@ -28,8 +28,20 @@ import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
 
 import java.io.File;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.allOf;
@@ -112,6 +124,7 @@ public class SQLiteCacheTest {
                 cache.getIfPresent(UUID.randomUUID()),
                 equalTo(null));
 
+        cache.close();
         cache = new SQLiteCache(file);
 
         assertThat(
@@ -173,4 +186,178 @@ public class SQLiteCacheTest {
                 equalTo(null));
     }
 
-}
\ No newline at end of file
+    @Test
+    public void testNameLookup() throws Exception {
+        UUID testId1 = UUID.randomUUID();
+        UUID testId2 = UUID.randomUUID();
+        UUID testId3 = UUID.randomUUID();
+
+        SQLiteCache cache = new SQLiteCache(folder.newFile());
+
+        cache.putAll(Arrays.asList(
+                new Profile(testId1, "Notch"),
+                new Profile(testId2, "jeb_")));
+
+        assertThat(cache.getByName("notch"), equalTo(new Profile(testId1, "Notch")));
+        assertThat(cache.getByName("notch").getName(), equalTo("Notch"));
+        assertThat(
+                cache.getAllPresentByName(Arrays.asList("NOTCH", "jeb_", "nobody")),
+                allOf(
+                        ExtraMatchers.<String, Profile>hasSize(2),
+                        hasEntry("NOTCH", new Profile(testId1, "Notch")),
+                        hasEntry("jeb_", new Profile(testId2, "jeb_"))));
+
+        cache.put(new Profile(testId1, "Notch2"));
+        assertThat(cache.getByName("Notch"), equalTo(null));
+
+        cache.put(new Profile(testId3, "jeb_"));
+        assertThat(cache.getByName("jeb_"), equalTo(new Profile(testId3, "jeb_")));
+    }
+
+    @Test
+    public void testBuilderPragmas() throws Exception {
+        SQLiteCache cache = SQLiteCache.builder(folder.newFile())
+                .synchronous(SQLiteCache.Synchronous.FULL)
+                .build();
+
+        try (Statement stmt = cache.getConnection().createStatement()) {
+            ResultSet rs = stmt.executeQuery("PRAGMA journal_mode");
+            rs.next();
+            assertThat(rs.getString(1), equalTo("wal"));
+            rs = stmt.executeQuery("PRAGMA synchronous");
+            rs.next();
+            assertThat(rs.getInt(1), equalTo(2));
+        }
+    }
+
+    @Test
+    public void testLargeBatch() throws Exception {
+        SQLiteCache cache = new SQLiteCache(folder.newFile());
+        List<Profile> profiles = new ArrayList<>();
+        List<UUID> uuids = new ArrayList<>();
+        for (int i = 0; i < 50000; i++) {
+            Profile profile = new Profile(UUID.randomUUID(), "player" + i);
+            profiles.add(profile);
+            uuids.add(profile.getUniqueId());
+        }
+
+        cache.putAll(profiles);
+
+        assertThat(cache.getIfPresent(uuids.get(49999)), equalTo(profiles.get(49999)));
+        assertThat(cache.getAllPresent(uuids.subList(0, 500)).size(), equalTo(500));
+        assertThat(cache.getAllPresent(uuids.subList(0, 9)).size(), equalTo(9));
+
+        List<String> names = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            names.add("PLAYER" + i);
+        }
+        names.add("nobody");
+        assertThat(cache.getAllPresentByName(names).size(), equalTo(200));
+        assertThat(cache.getAllPresentByName(names).get("PLAYER150"), equalTo(profiles.get(150)));
+        assertThat(cache.getConnection().getAutoCommit(), equalTo(true));
+    }
+
+    @Test
+    public void testReaderConnections() throws Exception {
+        SQLiteCache cache = SQLiteCache.builder(folder.newFile())
+                .readerConnections(4)
+                .build();
+        List<Profile> profiles = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            profiles.add(new Profile(UUID.randomUUID(), "player" + i));
+        }
+        cache.putAll(profiles);
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Profile>> futures = new ArrayList<>();
+            for (Profile profile : profiles) {
+                futures.add(executor.submit(() -> cache.getIfPresent(profile.getUniqueId())));
+            }
+            executor.submit(() -> cache.put(new Profile(UUID.randomUUID(), "writer"))).get();
+            for (int i = 0; i < profiles.size(); i++) {
+                assertThat(futures.get(i).get(), equalTo(profiles.get(i)));
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        assertThat(cache.getByName("PLAYER999"), equalTo(profiles.get(999)));
+
+        cache.close();
+        assertThat(cache.getIfPresent(profiles.get(0).getUniqueId()), equalTo(null));
+        assertThat(cache.getConnection().isClosed(), equalTo(true));
+    }
+
+    @Test
+    public void testBinaryUuidMigration() throws Exception {
+        File file = folder.newFile();
+        List<Profile> profiles = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            profiles.add(new Profile(UUID.randomUUID(), "player" + i));
+        }
+        try (SQLiteCache legacy = new SQLiteCache(file)) {
+            legacy.putAll(profiles);
+        }
+
+        SQLiteCache cache = SQLiteCache.builder(file).binaryUuids(true).build();
+        assertThat(cache.hasLegacyRows(), equalTo(true));
+        assertThat(cache.getIfPresent(profiles.get(0).getUniqueId()), equalTo(profiles.get(0)));
+        assertThat(cache.getByName("PLAYER1"), equalTo(profiles.get(1)));
+
+        Profile renamed = new Profile(profiles.get(1).getUniqueId(), "renamed");
+        cache.put(renamed);
+        assertThat(cache.getByName("player1"), equalTo(null));
+
+        int moved = 0;
+        int batch;
+        while ((batch = cache.migrateLegacyRows(2)) > 0) {
+            moved += batch;
+        }
+        assertThat(moved, equalTo(4));
+        assertThat(cache.hasLegacyRows(), equalTo(false));
+
+        cache.close();
+        cache = SQLiteCache.builder(file).binaryUuids(true).build();
+        assertThat(cache.hasLegacyRows(), equalTo(false));
+        assertThat(cache.getIfPresent(renamed.getUniqueId()).getName(), equalTo("renamed"));
+        assertThat(cache.getByName("player1"), equalTo(null));
+        List<UUID> uuids = new ArrayList<>();
+        for (Profile profile : profiles) {
+            uuids.add(profile.getUniqueId());
+        }
+        assertThat(cache.getAllPresent(uuids).size(), equalTo(5));
+        assertThat(cache.getByName("player4"), equalTo(profiles.get(4)));
+    }
+
+    @Test
+    public void testWriteTimes() throws Exception {
+        File file = folder.newFile();
+        Profile old = new Profile(UUID.randomUUID(), "old");
+        Profile fresh = new Profile(UUID.randomUUID(), "fresh");
+        // A table from before write times were stored
+        try (Connection conn = DriverManager.getConnection("jdbc:sqlite:" + file.getAbsolutePath());
+             Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate("CREATE TABLE uuid_cache (uuid CHAR(36) PRIMARY KEY NOT NULL, name CHAR(32) NOT NULL)");
+            stmt.executeUpdate("INSERT INTO uuid_cache (uuid, name) VALUES ('" + old.getUniqueId() + "', 'old')");
+        }
+
+        Instant before = Instant.now().truncatedTo(ChronoUnit.MILLIS);
+        try (SQLiteCache cache = new SQLiteCache(file)) {
+            assertThat(cache.getIfPresent(old.getUniqueId()), equalTo(old));
+            cache.put(fresh);
+        }
+
+        List<UUID> uuids = Arrays.asList(old.getUniqueId(), fresh.getUniqueId());
+        try (SQLiteCache cache = SQLiteCache.builder(file).binaryUuids(true).build()) {
+            Instant written = cache.getWriteTimes(uuids).get(fresh.getUniqueId());
+            assertThat(written.isBefore(before), equalTo(false));
+            while (cache.migrateLegacyRows(10) > 0) {
+            }
+            Map<UUID, Instant> times = cache.getWriteTimes(uuids);
+            assertThat(times.size(), equalTo(1));
+            assertThat(times.get(fresh.getUniqueId()), equalTo(written));
+        }
+    }
+
+}
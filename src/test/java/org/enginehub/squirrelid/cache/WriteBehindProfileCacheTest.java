@@ -0,0 +1,151 @@
+/*
+ * SquirrelID, a UUID library for Minecraft
+ * Copyright (C) sk89q <http://www.sk89q.com>
+ * Copyright (C) SquirrelID team and contributors
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.enginehub.squirrelid.cache;
+
+import com.google.common.collect.ImmutableList;
+import org.enginehub.squirrelid.Profile;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+
+public class WriteBehindProfileCacheTest {
+
+    @Test
+    public void testCoalescesAndFlushesOnClose() {
+        RecordingCache delegate = new RecordingCache();
+        UUID uuid = UUID.randomUUID();
+        UUID other = UUID.randomUUID();
+
+        try (WriteBehindProfileCache cache = new WriteBehindProfileCache(delegate, 100, Duration.ofHours(1), 1000)) {
+            cache.put(new Profile(uuid, "first"));
+            cache.put(new Profile(other, "other"));
+            cache.put(new Profile(uuid, "second"));
+
+            assertThat(cache.getPendingCount(), equalTo(2));
+            assertThat(delegate.batchSizes.size(), equalTo(0));
+            assertThat(cache.getIfPresent(uuid).getName(), equalTo("second"));
+            assertThat(cache.getByName("SECOND"), equalTo(new Profile(uuid, "second")));
+            assertThat(cache.getByName("first"), equalTo(null));
+        }
+
+        assertThat(delegate.batchSizes, equalTo(List.of(2)));
+        assertThat(delegate.getIfPresent(uuid).getName(), equalTo("second"));
+    }
+
+    @Test
+    public void testFlushesFullBatches() throws Exception {
+        RecordingCache delegate = new RecordingCache();
+        delegate.latch = new CountDownLatch(2);
+
+        try (WriteBehindProfileCache cache = new WriteBehindProfileCache(delegate, 10, Duration.ofHours(1), 1000)) {
+            List<Profile> profiles = new ArrayList<>();
+            for (int i = 0; i < 25; i++) {
+                profiles.add(new Profile(UUID.randomUUID(), "player" + i));
+            }
+            cache.putAll(profiles);
+
+            assertThat(delegate.latch.await(10, TimeUnit.SECONDS), equalTo(true));
+            assertThat(cache.getAllPresent(ImmutableList.of(profiles.get(0).getUniqueId(), profiles.get(24).getUniqueId())).size(), equalTo(2));
+        }
+
+        assertThat(delegate.batchSizes, equalTo(List.of(10, 10, 5)));
+    }
+
+    @Test
+    public void testFlushesOnInterval() throws Exception {
+        RecordingCache delegate = new RecordingCache();
+        delegate.latch = new CountDownLatch(1);
+
+        try (WriteBehindProfileCache cache = new WriteBehindProfileCache(delegate, 100, Duration.ofMillis(10), 1000)) {
+            UUID uuid = UUID.randomUUID();
+            cache.put(new Profile(uuid, "test"));
+
+            assertThat(delegate.latch.await(10, TimeUnit.SECONDS), equalTo(true));
+            assertThat(delegate.getIfPresent(uuid), equalTo(new Profile(uuid, "test")));
+        }
+    }
+
+    @Test
+    public void testWriterFlushesWhenFull() {
+        RecordingCache delegate = new RecordingCache();
+
+        try (WriteBehindProfileCache cache = new WriteBehindProfileCache(delegate, 2, Duration.ofHours(1), 4)) {
+            cache.putAll(Arrays.asList(
+                new Profile(UUID.randomUUID(), "a"),
+                new Profile(UUID.randomUUID(), "b"),
+                new Profile(UUID.randomUUID(), "c"),
+                new Profile(UUID.randomUUID(), "d")));
+
+            assertThat(cache.getPendingCount(), equalTo(0));
+        }
+    }
+
+    @Test
+    public void testStoredRenameIsHidden() {
+        RecordingCache delegate = new RecordingCache();
+        UUID uuid = UUID.randomUUID();
+        delegate.put(new Profile(uuid, "before"));
+
+        try (WriteBehindProfileCache cache = new WriteBehindProfileCache(delegate, 100, Duration.ofHours(1), 1000)) {
+            cache.put(new Profile(uuid, "after"));
+
+            assertThat(cache.getByName("before"), equalTo(null));
+            assertThat(cache.getByName("after"), equalTo(new Profile(uuid, "after")));
+        }
+    }
+
+    @Test
+    public void testWriteAfterCloseIsStored() {
+        RecordingCache delegate = new RecordingCache();
+        UUID uuid = UUID.randomUUID();
+        WriteBehindProfileCache cache = new WriteBehindProfileCache(delegate, 100, Duration.ofHours(1), 1000);
+        cache.put(new Profile(uuid, "before"));
+        cache.close();
+
+        cache.put(new Profile(uuid, "after"));
+        assertThat(cache.getPendingCount(), equalTo(0));
+        assertThat(delegate.getIfPresent(uuid).getName(), equalTo("after"));
+    }
+
+    private static class RecordingCache extends HashMapCache {
+        private final List<Integer> batchSizes = new ArrayList<>();
+        private CountDownLatch latch = new CountDownLatch(0);
+
+        @Override
+        public void putAll(Iterable<Profile> profiles) {
+            super.putAll(profiles);
+            List<Profile> list = ImmutableList.copyOf(profiles);
+            synchronized (batchSizes) {
+                batchSizes.add(list.size());
+            }
+            latch.countDown();
+        }
+    }
+
+}
@@ -0,0 +1,213 @@
+/*
+ * SquirrelID, a UUID library for Minecraft
+ * Copyright (C) sk89q <http://www.sk89q.com>
+ * Copyright (C) SquirrelID team and contributors
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.enginehub.squirrelid.resolver;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import org.enginehub.squirrelid.Profile;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+
+public class BatchingProfileServiceTest {
+
+    @Test
+    public void testFindByNameIsBatched() throws Exception {
+        RecordingService resolver = new RecordingService(100);
+        BatchingProfileService service = new BatchingProfileService(resolver, 200, TimeUnit.MILLISECONDS);
+
+        List<Profile> profiles = lookUpConcurrently(service, resolver, 50);
+
+        for (int i = 0; i < 50; i++) {
+            assertThat(profiles.get(i), equalTo(resolver.profiles.get(i)));
+        }
+        assertThat(resolver.batches.size(), lessThanOrEqualTo(2));
+    }
+
+    @Test
+    public void testFullBatchIsSentEarly() throws Exception {
+        RecordingService resolver = new RecordingService(100);
+        BatchingProfileService service = new BatchingProfileService(resolver, 1, TimeUnit.MINUTES);
+        service.setMaxBatchSize(10);
+
+        List<Profile> profiles = lookUpConcurrently(service, resolver, 30);
+
+        for (int i = 0; i < 30; i++) {
+            assertThat(profiles.get(i), equalTo(resolver.profiles.get(i)));
+        }
+        assertThat(resolver.batches.size(), equalTo(3));
+        for (List<String> batch : resolver.batches) {
+            assertThat(batch.size(), equalTo(10));
+        }
+    }
+
+    @Test
+    public void testMissingName() throws Exception {
+        RecordingService resolver = new RecordingService(1);
+        BatchingProfileService service = new BatchingProfileService(resolver);
+
+        assertThat(service.findByName("nobody"), equalTo(null));
+        assertThat(service.findByName("PLAYER0"), equalTo(resolver.profiles.get(0)));
+    }
+
+    @Test
+    public void testWaitersRetryWhenLeaderIsInterrupted() throws Exception {
+        BlockingService blocking = new BlockingService(2);
+        RecordingService resolver = blocking;
+        BatchingProfileService service = new BatchingProfileService(resolver, 1, TimeUnit.SECONDS);
+        service.setMaxBatchSize(2);
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<Profile> first = executor.submit(() -> service.findByName("player0"));
+            Future<Profile> second = executor.submit(() -> service.findByName("player1"));
+
+            assertThat(blocking.entered.await(1, TimeUnit.MINUTES), equalTo(true));
+            blocking.leader.interrupt();
+
+            int interrupted = 0;
+            List<Future<Profile>> futures = Arrays.asList(first, second);
+            for (int i = 0; i < futures.size(); i++) {
+                try {
+                    assertThat(futures.get(i).get(1, TimeUnit.MINUTES), equalTo(resolver.profiles.get(i)));
+                } catch (ExecutionException e) {
+                    assertThat(e.getCause() instanceof InterruptedException, equalTo(true));
+                    interrupted++;
+                }
+            }
+            assertThat(interrupted, equalTo(1));
+            assertThat(resolver.batches.size(), equalTo(2));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static List<Profile> lookUpConcurrently(BatchingProfileService service, RecordingService resolver, int count) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(count);
+        try {
+            List<Future<Profile>> futures = new ArrayList<>();
+            for (int i = 0; i < count; i++) {
+                String name = resolver.profiles.get(i).getName();
+                futures.add(executor.submit(() -> service.findByName(name)));
+            }
+
+            List<Profile> profiles = new ArrayList<>();
+            for (Future<Profile> future : futures) {
+                profiles.add(future.get(1, TimeUnit.MINUTES));
+            }
+            return profiles;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Blocks the first bulk lookup until its thread is interrupted.
+     */
+    private static class BlockingService extends RecordingService {
+        private final CountDownLatch entered = new CountDownLatch(1);
+        private volatile Thread leader;
+
+        BlockingService(int count) {
+            super(count);
+        }
+
+        @Override
+        public ImmutableList<Profile> findAllByName(Iterable<String> names) throws IOException, InterruptedException {
+            ImmutableList<Profile> profiles = super.findAllByName(names);
+            if (leader == null) {
+                leader = Thread.currentThread();
+                entered.countDown();
+                new CountDownLatch(1).await();
+            }
+            return profiles;
+        }
+    }
+
+    /**
+     * Records every bulk lookup made.
+     */
+    private static class RecordingService implements ProfileService {
+        private final HashMapService delegate = new HashMapService();
+        private final List<Profile> profiles = new ArrayList<>();
+        private final List<List<String>> batches = new CopyOnWriteArrayList<>();
+
+        RecordingService(int count) {
+            for (int i = 0; i < count; i++) {
+                Profile profile = new Profile(UUID.randomUUID(), "player" + i);
+                delegate.put(profile);
+                profiles.add(profile);
+            }
+        }
+
+        @Override
+        public int getIdealRequestLimit() {
+            return 100;
+        }
+
+        @Override
+        public Profile findByName(String name) throws IOException, InterruptedException {
+            return delegate.findByName(name);
+        }
+
+        @Override
+        public ImmutableList<Profile> findAllByName(Iterable<String> names) throws IOException, InterruptedException {
+            batches.add(Lists.newArrayList(names));
+            return delegate.findAllByName(names);
+        }
+
+        @Override
+        public void findAllByName(Iterable<String> names, Predicate<Profile> consumer) throws IOException, InterruptedException {
+            delegate.findAllByName(names, consumer);
+        }
+
+        @Override
+        public Profile findByUuid(UUID uuid) throws IOException, InterruptedException {
+            return delegate.findByUuid(uuid);
+        }
+
+        @Override
+        public ImmutableList<Profile> findAllByUuid(Iterable<UUID> uuids) throws IOException, InterruptedException {
+            return delegate.findAllByUuid(uuids);
+        }
+
+        @Override
+        public void findAllByUuid(Iterable<UUID> uuids, Predicate<Profile> consumer) throws IOException, InterruptedException {
+            delegate.findAllByUuid(uuids, consumer);
+        }
+    }
+
+}
@@ -19,15 +19,23 @@
 
 package org.enginehub.squirrelid.resolver;
 
+import com.google.common.collect.ImmutableList;
 import org.enginehub.squirrelid.Profile;
 import org.enginehub.squirrelid.cache.HashMapCache;
 import org.enginehub.squirrelid.cache.ProfileCache;
 import org.enginehub.squirrelid.util.ExtraMatchers;
+import org.enginehub.squirrelid.util.FakeTicker;
 import org.hamcrest.Matchers;
 import org.junit.Test;
 
+import java.io.IOException;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.TimeUnit;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.allOf;
@@ -101,4 +109,104 @@ public class CacheForwardingServiceTest {
             equalTo(null));
     }
 
-}
\ No newline at end of file
+    @Test
+    public void testReadThroughSendsOnlyMisses() throws Exception {
+        Profile notch = new Profile(UUID.randomUUID(), "Notch");
+        Profile jeb = new Profile(UUID.randomUUID(), "jeb_");
+        Profile dinnerbone = new Profile(UUID.randomUUID(), "Dinnerbone");
+        RecordingService resolver = new RecordingService(notch, jeb, dinnerbone);
+        ProfileCache cache = new HashMapCache();
+        cache.put(jeb);
+        CacheForwardingService service = new CacheForwardingService(resolver, cache, FreshnessPolicy.always());
+
+        assertThat(
+            service.findAllByName(Arrays.asList("Notch", "JEB_", "Dinnerbone", "nobody")),
+            containsInAnyOrder(notch, jeb, dinnerbone));
+        assertThat(resolver.requestedNames, equalTo(List.of("Notch", "Dinnerbone", "nobody")));
+
+        assertThat(
+            service.findAllByUuid(Arrays.asList(notch.getUniqueId(), jeb.getUniqueId())),
+            containsInAnyOrder(notch, jeb));
+        assertThat(service.findByName("dinnerbone"), equalTo(dinnerbone));
+        assertThat(service.findByUuidAsync(notch.getUniqueId()).get(), equalTo(notch));
+        assertThat(resolver.requestedNames.size(), equalTo(3));
+        assertThat(resolver.requestedUuids.size(), equalTo(0));
+    }
+
+    @Test
+    public void testReadThroughRefetchesStaleEntries() throws Exception {
+        Profile notch = new Profile(UUID.randomUUID(), "Notch");
+        Profile jeb = new Profile(UUID.randomUUID(), "jeb_");
+        RecordingService resolver = new RecordingService(notch, jeb);
+        FakeTicker ticker = new FakeTicker();
+        Clock clock = ticker.asClock();
+        ProfileCache cache = new HashMapCache(clock);
+        cache.put(jeb);
+        CacheForwardingService service = new CacheForwardingService(
+            resolver, cache, FreshnessPolicy.maximumAge(Duration.ofMinutes(5)), clock);
+
+        List<UUID> uuids = Arrays.asList(notch.getUniqueId(), jeb.getUniqueId());
+        assertThat(service.findAllByUuid(uuids), containsInAnyOrder(notch, jeb));
+        assertThat(resolver.requestedUuids, equalTo(List.of(notch.getUniqueId())));
+
+        // The write times are kept by the cache, not by the service
+        ticker.advance(4, TimeUnit.MINUTES);
+        CacheForwardingService restarted = new CacheForwardingService(
+            resolver, cache, FreshnessPolicy.maximumAge(Duration.ofMinutes(5)), clock);
+        assertThat(restarted.findAllByUuid(uuids), containsInAnyOrder(notch, jeb));
+        assertThat(resolver.requestedUuids.size(), equalTo(1));
+
+        ticker.advance(1, TimeUnit.MINUTES);
+        Profile renamed = new Profile(notch.getUniqueId(), "Notch2");
+        resolver.put(renamed);
+        assertThat(service.findAllByUuid(ImmutableList.of(notch.getUniqueId())), equalTo(ImmutableList.of(renamed)));
+        assertThat(resolver.requestedUuids.size(), equalTo(2));
+        assertThat(cache.getIfPresent(notch.getUniqueId()).getName(), equalTo("notch2"));
+    }
+
+    @Test
+    public void testReadThroughFallsBackToStaleEntries() throws Exception {
+        Profile notch = new Profile(UUID.randomUUID(), "Notch");
+        Profile jeb = new Profile(UUID.randomUUID(), "jeb_");
+        RecordingService resolver = new RecordingService(notch);
+        FakeTicker ticker = new FakeTicker();
+        Clock clock = ticker.asClock();
+        ProfileCache cache = new HashMapCache(clock);
+        cache.putAll(ImmutableList.of(notch, jeb));
+        CacheForwardingService service = new CacheForwardingService(
+            resolver, cache, FreshnessPolicy.maximumAge(Duration.ofMinutes(5)), clock);
+
+        ticker.advance(10, TimeUnit.MINUTES);
+        assertThat(service.findByUuid(jeb.getUniqueId()), equalTo(jeb));
+        assertThat(service.findByNameAsync("jeb_").get(), equalTo(jeb));
+        assertThat(
+            service.findAllByName(Arrays.asList("Notch", "jeb_")),
+            containsInAnyOrder(notch, jeb));
+        List<Profile> consumed = new ArrayList<>();
+        service.findAllByUuid(Arrays.asList(notch.getUniqueId(), jeb.getUniqueId()), consumed::add);
+        assertThat(consumed, containsInAnyOrder(notch, jeb));
+        assertThat(resolver.requestedNames, equalTo(List.of("jeb_", "Notch", "jeb_")));
+    }
+
+    private static class RecordingService extends HashMapService {
+        private final List<String> requestedNames = new ArrayList<>();
+        private final List<UUID> requestedUuids = new ArrayList<>();
+
+        RecordingService(Profile... profiles) {
+            putAll(Arrays.asList(profiles));
+        }
+
+        @Override
+        public Profile findByName(String name) throws IOException, InterruptedException {
+            requestedNames.add(name);
+            return super.findByName(name);
+        }
+
+        @Override
+        public Profile findByUuid(UUID uuid) throws IOException, InterruptedException {
+            requestedUuids.add(uuid);
+            return super.findByUuid(uuid);
+        }
+    }
+
+}
@@ -0,0 +1,185 @@
+/*
+ * SquirrelID, a UUID library for Minecraft
+ * Copyright (C) sk89q <http://www.sk89q.com>
+ * Copyright (C) SquirrelID team and contributors
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.enginehub.squirrelid.resolver;
+
+import org.enginehub.squirrelid.Profile;
+import org.enginehub.squirrelid.resolver.CircuitBreakerProfileService.State;
+import org.enginehub.squirrelid.util.FakeTicker;
+import org.enginehub.squirrelid.util.HttpStatusException;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+
+public class CircuitBreakerProfileServiceTest {
+
+    private static final Profile NOTCH_PROFILE = new Profile(UUID.fromString("069a79f4-44e9-4726-a5be-fca90e38aaf5"), "Notch");
+
+    @Test
+    public void testOpensAndFailsFast() throws Exception {
+        FlakyService resolver = new FlakyService();
+        FakeTicker ticker = new FakeTicker();
+        CircuitBreakerProfileService breaker = new CircuitBreakerProfileService(resolver, 4, ticker);
+        breaker.setMinimumCalls(4);
+        List<String> transitions = new ArrayList<>();
+        breaker.addListener((service, from, to) -> transitions.add(from + "->" + to));
+
+        assertThat(breaker.findByName("Notch"), equalTo(NOTCH_PROFILE));
+        resolver.failure = new IOException("Connection refused");
+        fail(breaker);
+        fail(breaker);
+        assertThat(breaker.getState(), equalTo(State.CLOSED));
+        fail(breaker);
+        assertThat(breaker.getState(), equalTo(State.OPEN));
+
+        int calls = resolver.calls.get();
+        try {
+            breaker.findByName("Notch");
+            throw new AssertionError("Expected the breaker to fail fast");
+        } catch (CircuitBreakerOpenException expected) {
+        }
+        assertThat(resolver.calls.get(), equalTo(calls));
+        assertThat(transitions, equalTo(List.of("CLOSED->OPEN")));
+    }
+
+    @Test
+    public void testHalfOpenProbe() throws Exception {
+        FlakyService resolver = new FlakyService();
+        FakeTicker ticker = new FakeTicker();
+        CircuitBreakerProfileService breaker = new CircuitBreakerProfileService(resolver, 2, ticker);
+        breaker.setOpenDuration(10, TimeUnit.SECONDS);
+        List<String> transitions = new ArrayList<>();
+        breaker.addListener((service, from, to) -> transitions.add(from + "->" + to));
+
+        resolver.failure = new HttpStatusException("Unavailable", 503);
+        fail(breaker);
+        fail(breaker);
+        assertThat(breaker.getState(), equalTo(State.OPEN));
+
+        // The probe fails, so the breaker opens again
+        ticker.advance(10, TimeUnit.SECONDS);
+        fail(breaker);
+        assertThat(breaker.getState(), equalTo(State.OPEN));
+
+        // The probe succeeds, so the breaker closes
+        ticker.advance(10, TimeUnit.SECONDS);
+        resolver.failure = null;
+        assertThat(breaker.findByName("Notch"), equalTo(NOTCH_PROFILE));
+        assertThat(breaker.getState(), equalTo(State.CLOSED));
+
+        assertThat(transitions, equalTo(List.of(
+            "CLOSED->OPEN", "OPEN->HALF_OPEN", "HALF_OPEN->OPEN", "OPEN->HALF_OPEN", "HALF_OPEN->CLOSED")));
+    }
+
+    @Test
+    public void testClientErrorsAreNotFailures() throws Exception {
+        FlakyService resolver = new FlakyService();
+        CircuitBreakerProfileService breaker = new CircuitBreakerProfileService(resolver, 2);
+
+        resolver.failure = new HttpStatusException("Bad request", 400);
+        fail(breaker);
+        fail(breaker);
+        fail(breaker);
+        assertThat(breaker.getState(), equalTo(State.CLOSED));
+        assertThat(breaker.getFailureRate(), equalTo(0.0));
+    }
+
+    @Test
+    public void testCombinedSkipsOpenBreaker() throws Exception {
+        FlakyService resolver = new FlakyService();
+        CircuitBreakerProfileService breaker = new CircuitBreakerProfileService(resolver, 1);
+        HashMapService fallback = new HashMapService();
+        Profile jebProfile = new Profile(UUID.fromString("853c80ef-3c37-49fd-aa49-938b674adae6"), "jeb_");
+        fallback.put(jebProfile);
+        CombinedProfileService combined = new CombinedProfileService(breaker, fallback);
+
+        resolver.failure = new IOException("Connection refused");
+        fail(breaker);
+        assertThat(breaker.getState(), equalTo(State.OPEN));
+
+        assertThat(combined.findByName("jeb_"), equalTo(jebProfile));
+        assertThat(combined.findAllByName(List.of("jeb_")), equalTo(List.of(jebProfile)));
+        assertThat(combined.findByNameAsync("jeb_").get(), equalTo(jebProfile));
+        assertThat(combined.findByName("Notch"), equalTo(null));
+
+        try {
+            new CombinedProfileService(breaker).findByName("Notch");
+            throw new AssertionError("Expected the skipped breaker to be reported");
+        } catch (CircuitBreakerOpenException expected) {
+        }
+    }
+
+    @Test
+    public void testCombinedReturnsPartOfBatchFoundByFallback() throws Exception {
+        FlakyService resolver = new FlakyService();
+        CircuitBreakerProfileService breaker = new CircuitBreakerProfileService(resolver, 1);
+        HashMapService fallback = new HashMapService();
+        Profile jebProfile = new Profile(UUID.fromString("853c80ef-3c37-49fd-aa49-938b674adae6"), "jeb_");
+        fallback.put(jebProfile);
+        CombinedProfileService combined = new CombinedProfileService(breaker, fallback);
+
+        resolver.failure = new IOException("Connection refused");
+        fail(breaker);
+        assertThat(breaker.getState(), equalTo(State.OPEN));
+
+        List<String> names = List.of("Notch", "jeb_", "nobody");
+        assertThat(combined.findAllByName(names), equalTo(List.of(jebProfile)));
+        assertThat(combined.findAllByNameAsync(names).get(), equalTo(List.of(jebProfile)));
+        List<Profile> consumed = new ArrayList<>();
+        combined.findAllByName(names, consumed::add);
+        assertThat(consumed, equalTo(List.of(jebProfile)));
+        assertThat(combined.findAllByUuid(List.of(NOTCH_PROFILE.getUniqueId(), jebProfile.getUniqueId())), equalTo(List.of(jebProfile)));
+    }
+
+    private static void fail(ProfileService service) throws InterruptedException {
+        try {
+            service.findByName("Notch");
+            throw new AssertionError("Expected the lookup to fail");
+        } catch (IOException expected) {
+        }
+    }
+
+    private static class FlakyService extends HashMapService {
+        private final AtomicInteger calls = new AtomicInteger();
+        private volatile IOException failure;
+
+        FlakyService() {
+            put(NOTCH_PROFILE);
+        }
+
+        @Override
+        public Profile findByName(String name) throws IOException, InterruptedException {
+            calls.incrementAndGet();
+            IOException failure = this.failure;
+            if (failure != null) {
+                throw failure;
+            }
+            return super.findByName(name);
+        }
+    }
+
+}
@@ -25,6 +25,7 @@ import org.hamcrest.MatcherAssert;
 import org.hamcrest.Matchers;
 import org.junit.Test;
 
+import java.util.Arrays;
 import java.util.UUID;
 
 import static org.hamcrest.MatcherAssert.assertThat;
@@ -112,4 +113,39 @@ public class CombinedProfileServiceTest {
                 containsInAnyOrder(notchProfile)));
     }
 
-}
\ No newline at end of file
+    @Test
+    public void testFindAllByNameAsync() throws Exception {
+        HashMapService firstResolver = new HashMapService();
+        HashMapService secondResolver = new HashMapService();
+        CombinedProfileService resolver = new CombinedProfileService(firstResolver, secondResolver);
+
+        UUID notchUuid = UUID.fromString("069a79f4-44e9-4726-a5be-fca90e38aaf5");
+        UUID jebUuid = UUID.fromString("853c80ef-3c37-49fd-aa49-938b674adae6");
+        Profile notchProfile = new Profile(notchUuid, "Notch");
+        Profile jebProfile = new Profile(jebUuid, "jeb_");
+
+        firstResolver.put(notchProfile);
+        secondResolver.put(jebProfile);
+
+        assertThat(
+            resolver.findByNameAsync("jeb_").get(),
+            equalTo(jebProfile));
+
+        assertThat(
+            resolver.findByNameAsync("!__@#%*@#^(@6__NOBODY____").get(),
+            equalTo(null));
+
+        MatcherAssert.assertThat(
+            resolver.findAllByNameAsync(Arrays.asList("Notch", "jeb_")).get(),
+            allOf(
+                Matchers.<Profile>hasSize(2),
+                containsInAnyOrder(notchProfile, jebProfile)));
+
+        MatcherAssert.assertThat(
+            resolver.findAllByUuidAsync(Arrays.asList(notchUuid, jebUuid, UUID.randomUUID())).get(),
+            allOf(
+                Matchers.<Profile>hasSize(2),
+                containsInAnyOrder(notchProfile, jebProfile)));
+    }
+
+}
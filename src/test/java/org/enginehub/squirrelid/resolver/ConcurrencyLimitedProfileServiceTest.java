@@ -0,0 +1,107 @@
+/*
+ * SquirrelID, a UUID library for Minecraft
+ * Copyright (C) sk89q <http://www.sk89q.com>
+ * Copyright (C) SquirrelID team and contributors
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.enginehub.squirrelid.resolver;
+
+import com.google.common.collect.ImmutableList;
+import org.enginehub.squirrelid.Profile;
+import org.enginehub.squirrelid.util.AimdLimiter;
+import org.enginehub.squirrelid.util.HttpStatusException;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+
+public class ConcurrencyLimitedProfileServiceTest {
+
+    @Test
+    public void testLimitsConcurrency() throws Exception {
+        HashMapService delegate = new HashMapService();
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger maxInFlight = new AtomicInteger();
+        ProfileService slow = new HashMapService() {
+            @Override
+            public Profile findByName(String name) throws IOException, InterruptedException {
+                maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+                try {
+                    Thread.sleep(20);
+                    return delegate.findByName(name);
+                } finally {
+                    inFlight.decrementAndGet();
+                }
+            }
+        };
+        Profile profile = new Profile(UUID.randomUUID(), "Notch");
+        delegate.put(profile);
+
+        ConcurrencyLimitedProfileService service = new ConcurrencyLimitedProfileService(slow, new AimdLimiter(3, 1, 3));
+        ExecutorService executor = Executors.newFixedThreadPool(10);
+        try {
+            List<Future<ImmutableList<Profile>>> futures = new ArrayList<>();
+            for (int i = 0; i < 20; i++) {
+                futures.add(executor.submit(() -> service.findAllByName(ImmutableList.of("Notch"))));
+            }
+            for (Future<ImmutableList<Profile>> future : futures) {
+                assertThat(future.get(), equalTo(ImmutableList.of(profile)));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertThat(maxInFlight.get(), lessThanOrEqualTo(3));
+        assertThat(service.getLimiter().getInFlight(), equalTo(0));
+    }
+
+    @Test
+    public void testBacksOffWhenRateLimited() throws Exception {
+        int[] code = {429};
+        ProfileService failing = new HashMapService() {
+            @Override
+            public Profile findByName(String name) throws IOException {
+                throw new HttpStatusException("Failed", code[0]);
+            }
+        };
+        ConcurrencyLimitedProfileService service = new ConcurrencyLimitedProfileService(failing, new AimdLimiter(8, 1, 8));
+
+        try {
+            service.findByName("Notch");
+        } catch (HttpStatusException expected) {
+        }
+        assertThat(service.getLimiter().getLimit(), equalTo(4));
+
+        code[0] = 400;
+        try {
+            service.findByName("Notch");
+        } catch (HttpStatusException expected) {
+        }
+        assertThat(service.getLimiter().getLimit(), equalTo(4));
+        assertThat(service.getLimiter().getInFlight(), equalTo(0));
+    }
+
+}
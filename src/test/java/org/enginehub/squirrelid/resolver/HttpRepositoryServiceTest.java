@@ -19,18 +19,26 @@
 
 package org.enginehub.squirrelid.resolver;
 
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
 import org.enginehub.squirrelid.Profile;
+import org.enginehub.squirrelid.util.HttpStatusException;
 import org.hamcrest.Matchers;
 import org.junit.Test;
 
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.UUID;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.allOf;
+import static org.hamcrest.Matchers.contains;
 import static org.hamcrest.Matchers.containsInAnyOrder;
 import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
 
 public class HttpRepositoryServiceTest {
 
@@ -101,4 +109,217 @@ public class HttpRepositoryServiceTest {
             resolver.findByUuid(me4502Uuid),
             equalTo(me4502Profile));
     }
+
+    @Test
+    public void testFindAllAsync() throws Exception {
+        HttpRepositoryService resolver = new HttpRepositoryService(HttpRepositoryService.MINECRAFT_AGENT);
+
+        UUID notchUuid = UUID.fromString("069a79f4-44e9-4726-a5be-fca90e38aaf5");
+        UUID jebUuid = UUID.fromString("853c80ef-3c37-49fd-aa49-938b674adae6");
+        Profile notchProfile = new Profile(notchUuid, "Notch");
+        Profile jebProfile = new Profile(jebUuid, "jeb_");
+
+        assertThat(
+            resolver.findByNameAsync("Notch").get(),
+            equalTo(notchProfile));
+
+        assertThat(
+            resolver.findAllByNameAsync(Arrays.asList("Notch", "jeb_")).get(),
+            allOf(
+                Matchers.<Profile>hasSize(2),
+                containsInAnyOrder(notchProfile, jebProfile)));
+
+        assertThat(
+            resolver.findByUuidAsync(jebUuid).get(),
+            equalTo(jebProfile));
+
+        assertThat(
+            resolver.findAllByUuidAsync(Arrays.asList(notchUuid, jebUuid)).get(),
+            allOf(
+                Matchers.<Profile>hasSize(2),
+                containsInAnyOrder(notchProfile, jebProfile)));
+    }
+
+    @Test
+    public void testHonorsRetryAfter() throws Exception {
+        try (MockProfileServer server = new MockProfileServer()) {
+            Profile notchProfile = new Profile(UUID.fromString("069a79f4-44e9-4726-a5be-fca90e38aaf5"), "Notch");
+            server.register(notchProfile);
+            HttpRepositoryService resolver = server.createService();
+
+            server.failNextRequests(1, 429, "1");
+            long start = System.nanoTime();
+            assertThat(resolver.findByName("Notch"), equalTo(notchProfile));
+            assertThat(Duration.ofNanos(System.nanoTime() - start).toMillis(), greaterThanOrEqualTo(900L));
+            assertThat(server.getRequestCount(), equalTo(2));
+
+            server.failNextRequests(1, 429, "1");
+            start = System.nanoTime();
+            assertThat(resolver.findByUuidAsync(notchProfile.getUniqueId()).get(), equalTo(notchProfile));
+            assertThat(Duration.ofNanos(System.nanoTime() - start).toMillis(), greaterThanOrEqualTo(900L));
+            assertThat(server.getRequestCount(), equalTo(4));
+        }
+    }
+
+    @Test
+    public void testRetriesServerErrorsOnly() throws Exception {
+        try (MockProfileServer server = new MockProfileServer()) {
+            Profile notchProfile = new Profile(UUID.fromString("069a79f4-44e9-4726-a5be-fca90e38aaf5"), "Notch");
+            server.register(notchProfile);
+            HttpRepositoryService resolver = server.createService();
+
+            server.failNextRequests(2, 503, null);
+            assertThat(resolver.findByName("Notch"), equalTo(notchProfile));
+            assertThat(server.getRequestCount(), equalTo(3));
+
+            server.failNextRequests(1, 400, null);
+            assertThat(resolver.findByName("Notch"), equalTo(null));
+            assertThat(server.getRequestCount(), equalTo(4));
+        }
+    }
+
+    @Test(expected = HttpStatusException.class)
+    public void testOtherClientErrorsAreNotBisected() throws Exception {
+        try (MockProfileServer server = new MockProfileServer()) {
+            HttpRepositoryService resolver = server.createService();
+
+            server.failNextRequests(1, 403, null);
+            resolver.findAllByName(Arrays.asList("Notch", "jeb_", "Dinnerbone"));
+        }
+    }
+
+    @Test
+    public void testConsumerReceivesEachProfileOnce() throws Exception {
+        try (MockProfileServer server = new MockProfileServer()) {
+            List<String> names = new ArrayList<>();
+            for (int i = 0; i < 250; i++) {
+                server.register(new Profile(UUID.randomUUID(), "Player" + i));
+                names.add("Player" + i);
+            }
+            HttpRepositoryService resolver = server.createService();
+
+            List<Profile> consumed = new ArrayList<>();
+            server.failNextRequests(1, 503, null);
+            resolver.findAllByName(names, consumed::add);
+
+            assertThat(consumed, Matchers.hasSize(250));
+            assertThat(consumed, equalTo(resolver.findAllByName(names)));
+        }
+    }
+
+    @Test
+    public void testFindAllByUuidConcurrently() throws Exception {
+        try (MockProfileServer server = new MockProfileServer()) {
+            List<UUID> uuids = new ArrayList<>();
+            List<Profile> profiles = new ArrayList<>();
+            for (int i = 0; i < 40; i++) {
+                Profile profile = new Profile(UUID.randomUUID(), "Player" + i);
+                server.register(profile);
+                uuids.add(profile.getUniqueId());
+                profiles.add(profile);
+            }
+            uuids.add(UUID.randomUUID());
+            server.setLatency(100);
+            HttpRepositoryService resolver = server.createService();
+            resolver.setMaxConcurrentUuidRequests(20);
+
+            // One UUID fails once and is retried without affecting the others
+            server.failNextRequests(1, 503, null);
+            long start = System.nanoTime();
+            assertThat(resolver.findAllByUuid(uuids), equalTo(profiles));
+            assertThat(Duration.ofNanos(System.nanoTime() - start).toMillis(), Matchers.lessThan(2000L));
+            assertThat(server.getRequestCount(), equalTo(42));
+
+            List<Profile> consumed = new ArrayList<>();
+            resolver.findAllByUuid(uuids, consumed::add);
+            assertThat(consumed, containsInAnyOrder(profiles.toArray()));
+
+            // 41 requests, 4 at a time, take at least 11 rounds
+            resolver.setMaxConcurrentUuidRequests(4);
+            start = System.nanoTime();
+            assertThat(resolver.findAllByUuidAsync(uuids).get(), equalTo(profiles));
+            assertThat(Duration.ofNanos(System.nanoTime() - start).toMillis(), greaterThanOrEqualTo(1000L));
+        }
+    }
+
+    @Test
+    public void testBisectsRejectedBatches() throws Exception {
+        try (MockProfileServer server = new MockProfileServer()) {
+            List<String> names = new ArrayList<>();
+            List<Profile> profiles = new ArrayList<>();
+            for (int i = 0; i < 150; i++) {
+                Profile profile = new Profile(UUID.randomUUID(), "Player" + i);
+                server.register(profile);
+                names.add(profile.getName());
+                profiles.add(profile);
+            }
+            names.add(20, "Rejected1");
+            names.add(120, "Rejected2");
+            server.rejectName("Rejected1");
+            server.rejectName("Rejected2");
+            HttpRepositoryService resolver = server.createService();
+
+            PartialLookupResult<String> result = resolver.findAllByNamePartially(names);
+            assertThat(result.getProfiles(), equalTo(profiles));
+            assertThat(result.getFailures().keySet(), contains("Rejected1", "Rejected2"));
+            assertThat(result.getFailures().get("Rejected1"), Matchers.instanceOf(HttpStatusException.class));
+
+            assertThat(resolver.findAllByName(names), equalTo(profiles));
+            assertThat(resolver.findAllByNameAsync(names).get(), equalTo(profiles));
+            assertThat(resolver.findByName("Rejected1"), equalTo(null));
+        }
+    }
+
+    @Test
+    public void testNormalizesNamesBeforeSending() throws Exception {
+        try (MockProfileServer server = new MockProfileServer()) {
+            Profile notch = new Profile(UUID.randomUUID(), "Notch");
+            Profile jeb = new Profile(UUID.randomUUID(), "jeb_");
+            server.register(notch);
+            server.register(jeb);
+            HttpRepositoryService resolver = server.createService();
+
+            List<String> names = ImmutableList.of("Notch", "bad name", "notch", "jeb_", "a_name_that_is_too_long", "NOTCH");
+            assertThat(resolver.findAllByName(names), equalTo(ImmutableList.of(notch, notch, notch, jeb)));
+            assertThat(server.getRequestedNameCount(), equalTo(2));
+            assertThat(resolver.findAllByNameAsync(names).get(), equalTo(ImmutableList.of(notch, notch, notch, jeb)));
+            assertThat(resolver.findAllByNamePartially(names).hasFailures(), equalTo(false));
+            assertThat(resolver.findByName("bad name"), equalTo(null));
+            assertThat(server.getRequestedNameCount(), equalTo(6));
+        }
+    }
+
+    @Test
+    public void testPartialResultKeepsOtherBatches() throws Exception {
+        try (MockProfileServer server = new MockProfileServer()) {
+            List<String> names = new ArrayList<>();
+            for (int i = 0; i < 200; i++) {
+                server.register(new Profile(UUID.randomUUID(), "Player" + i));
+                names.add("Player" + i);
+            }
+            HttpRepositoryService resolver = server.createService();
+            resolver.setMaxRetries(1);
+            resolver.setRetryDelay(1);
+
+            server.failNextRequests(2, 503, null);
+            PartialLookupResult<String> result = resolver.findAllByNamePartially(names);
+            assertThat(result.getProfiles(), Matchers.hasSize(100));
+            assertThat(result.getFailures().keySet(), equalTo(new LinkedHashSet<>(names.subList(0, 100))));
+        }
+    }
+
+    @Test
+    public void testRateLimiterIsShared() {
+        HttpRepositoryService first = new HttpRepositoryService(HttpRepositoryService.MINECRAFT_AGENT);
+        HttpRepositoryService second = new HttpRepositoryService(HttpRepositoryService.MINECRAFT_AGENT);
+        assertThat(first.getRateLimiter(), Matchers.sameInstance(second.getRateLimiter()));
+    }
+
+    @Test
+    public void testParseRetryAfter() {
+        assertThat(HttpRepositoryService.parseRetryAfter("120"), equalTo(Duration.ofSeconds(120)));
+        assertThat(HttpRepositoryService.parseRetryAfter("Wed, 21 Oct 2015 07:28:00 GMT"), equalTo(Duration.ZERO));
+        assertThat(HttpRepositoryService.parseRetryAfter("soon"), equalTo(null));
+        assertThat(HttpRepositoryService.parseRetryAfter(null), equalTo(null));
+    }
 }
@@ -0,0 +1,338 @@
+/*
+ * SquirrelID, a UUID library for Minecraft
+ * Copyright (C) sk89q <http://www.sk89q.com>
+ * Copyright (C) SquirrelID team and contributors
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.enginehub.squirrelid.resolver;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.enginehub.squirrelid.Profile;
+import org.enginehub.squirrelid.util.HttpRequest;
+import org.enginehub.squirrelid.util.UUIDs;
+import org.json.simple.JSONValue;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+import javax.annotation.Nullable;
+
+/**
+ * An in-process server that mimics the Mojang profile endpoints used by
+ * {@link HttpRepositoryService}.
+ */
+public class MockProfileServer implements AutoCloseable {
+
+    private static final String PROFILES_PATH = "/profiles/minecraft";
+    private static final String SESSION_PATH = "/session/minecraft/profile/";
+    private static final Pattern VALID_NAME = Pattern.compile("[A-Za-z0-9_]{1,16}");
+
+    static {
+        // Without this, Nagle's algorithm adds ~40ms to every response on loopback
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+    }
+
+    private final Map<String, Profile> byName = new ConcurrentHashMap<>();
+    private final Map<UUID, Profile> byUuid = new ConcurrentHashMap<>();
+    private final Set<String> rejectedNames = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger requestCount = new AtomicInteger();
+    private final AtomicInteger requestedNameCount = new AtomicInteger();
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final AtomicInteger failuresLeft = new AtomicInteger();
+    private volatile int failureCode;
+    @Nullable private volatile String retryAfter;
+    private volatile LatencyDistribution latency = LatencyDistribution.fixed(0);
+    private volatile double errorRate;
+    private volatile int errorCode = 500;
+    private volatile double rateLimitRate;
+    @Nullable private volatile String rateLimitRetryAfter;
+
+    public MockProfileServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        executor = Executors.newCachedThreadPool();
+        server.setExecutor(executor);
+        server.createContext(PROFILES_PATH, this::handleProfiles);
+        server.createContext(SESSION_PATH, this::handleSession);
+        server.start();
+    }
+
+    public void register(Profile profile) {
+        byName.put(profile.getName().toLowerCase(Locale.US), profile);
+        byUuid.put(profile.getUniqueId(), profile);
+    }
+
+    /**
+     * Reject every batch that contains the given name, as if the name
+     * were malformed.
+     *
+     * @param name the name
+     */
+    public void rejectName(String name) {
+        rejectedNames.add(name.toLowerCase(Locale.US));
+    }
+
+    /**
+     * Set the time that every request takes before a response is sent.
+     *
+     * @param latency the latency in milliseconds
+     */
+    public void setLatency(long latency) {
+        setLatency(LatencyDistribution.fixed(latency));
+    }
+
+    /**
+     * Set the distribution that the time each request takes is drawn from.
+     *
+     * @param latency the distribution
+     */
+    public void setLatency(LatencyDistribution latency) {
+        this.latency = latency;
+    }
+
+    /**
+     * Answer a random share of requests with an error.
+     *
+     * @param rate the probability of a request failing, between 0 and 1
+     * @param code the response code to fail with
+     */
+    public void setErrorRate(double rate, int code) {
+        this.errorCode = code;
+        this.errorRate = rate;
+    }
+
+    /**
+     * Answer a random share of requests with 429 Too Many Requests.
+     *
+     * @param rate the probability of a request being rejected, between 0 and 1
+     * @param retryAfter the value of the Retry-After header, or null to not send one
+     */
+    public void setRateLimitRate(double rate, @Nullable String retryAfter) {
+        this.rateLimitRetryAfter = retryAfter;
+        this.rateLimitRate = rate;
+    }
+
+    /**
+     * Answer the next requests with an error instead of a result.
+     *
+     * @param count the number of requests to fail
+     * @param code the response code to fail with
+     * @param retryAfter the value of the Retry-After header, or null to not send one
+     */
+    public void failNextRequests(int count, int code, @Nullable String retryAfter) {
+        this.failureCode = code;
+        this.retryAfter = retryAfter;
+        failuresLeft.set(count);
+    }
+
+    public int getRequestCount() {
+        return requestCount.get();
+    }
+
+    /**
+     * Get the total number of names sent to the profiles endpoint.
+     *
+     * @return the number of names
+     */
+    public int getRequestedNameCount() {
+        return requestedNameCount.get();
+    }
+
+    public String getBaseUrl() {
+        return "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort();
+    }
+
+    public HttpRepositoryService createService() {
+        String baseUrl = getBaseUrl();
+        return new HttpRepositoryService(
+            HttpRequest.url(baseUrl + PROFILES_PATH),
+            uuid -> HttpRequest.url(baseUrl + SESSION_PATH + UUIDs.stripDashes(uuid.toString())));
+    }
+
+    private void handleProfiles(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            requestCount.incrementAndGet();
+            Object request = JSONValue.parse(new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8));
+            simulateLatency();
+            if (respondWithFailure(exchange)) {
+                return;
+            }
+
+            List<Object> results = new ArrayList<>();
+            if (request instanceof List<?> names) {
+                requestedNameCount.addAndGet(names.size());
+                // Like Mojang, reject the whole batch if any name is malformed
+                for (Object name : names) {
+                    if (!VALID_NAME.matcher(String.valueOf(name)).matches()
+                        || rejectedNames.contains(String.valueOf(name).toLowerCase(Locale.US))) {
+                        respond(exchange, 400, "{\"error\":\"BadRequestException\",\"errorMessage\":\"Invalid payload.\"}");
+                        return;
+                    }
+                }
+                for (Object name : names) {
+                    Profile profile = byName.get(String.valueOf(name).toLowerCase(Locale.US));
+                    if (profile != null) {
+                        results.add(toJson(profile));
+                    }
+                }
+            }
+
+            respond(exchange, 200, JSONValue.toJSONString(results));
+        }
+    }
+
+    private void handleSession(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            requestCount.incrementAndGet();
+            String rawUuid = exchange.getRequestURI().getPath().substring(SESSION_PATH.length());
+            simulateLatency();
+            if (respondWithFailure(exchange)) {
+                return;
+            }
+
+            Profile profile = byUuid.get(UUID.fromString(UUIDs.addDashes(rawUuid)));
+            if (profile != null) {
+                respond(exchange, 200, JSONValue.toJSONString(toJson(profile)));
+            } else {
+                exchange.sendResponseHeaders(204, -1);
+            }
+        }
+    }
+
+    private boolean respondWithFailure(HttpExchange exchange) throws IOException {
+        if (failuresLeft.getAndUpdate(left -> Math.max(0, left - 1)) > 0) {
+            fail(exchange, failureCode, retryAfter);
+            return true;
+        }
+
+        double roll = ThreadLocalRandom.current().nextDouble();
+        if (roll < rateLimitRate) {
+            fail(exchange, 429, rateLimitRetryAfter);
+            return true;
+        } else if (roll < rateLimitRate + errorRate) {
+            fail(exchange, errorCode, null);
+            return true;
+        }
+        return false;
+    }
+
+    private static void fail(HttpExchange exchange, int code, @Nullable String retryAfter) throws IOException {
+        if (retryAfter != null) {
+            exchange.getResponseHeaders().set("Retry-After", retryAfter);
+        }
+        respond(exchange, code, "{\"error\":\"Failure\"}");
+    }
+
+    private void simulateLatency() {
+        long latency = this.latency.sample(ThreadLocalRandom.current());
+        if (latency > 0) {
+            try {
+                Thread.sleep(latency);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private static Map<String, Object> toJson(Profile profile) {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("id", UUIDs.stripDashes(profile.getUniqueId().toString()));
+        map.put("name", profile.getName());
+        return map;
+    }
+
+    private static void respond(HttpExchange exchange, int code, String body) throws IOException {
+        byte[] data = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(code, data.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(data);
+        }
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    /**
+     * A distribution of response times.
+     */
+    @FunctionalInterface
+    public interface LatencyDistribution {
+
+        /**
+         * Draw the time a request takes.
+         *
+         * @param random the source of randomness
+         * @return the latency in milliseconds
+         */
+        long sample(Random random);
+
+        /**
+         * Every request takes the same time.
+         *
+         * @param millis the latency in milliseconds
+         * @return the distribution
+         */
+        static LatencyDistribution fixed(long millis) {
+            return random -> millis;
+        }
+
+        /**
+         * Requests take a time evenly spread between two bounds.
+         *
+         * @param minMillis the lowest latency in milliseconds
+         * @param maxMillis the highest latency in milliseconds
+         * @return the distribution
+         */
+        static LatencyDistribution uniform(long minMillis, long maxMillis) {
+            return random -> minMillis + (long) (random.nextDouble() * (maxMillis - minMillis));
+        }
+
+        /**
+         * Requests mostly take around the median, with a long tail of slow
+         * requests, like a real service under load.
+         *
+         * @param medianMillis the median latency in milliseconds
+         * @param sigma the spread, where around 0.5 gives a p99 of about three times the median
+         * @return the distribution
+         */
+        static LatencyDistribution logNormal(long medianMillis, double sigma) {
+            return random -> Math.round(medianMillis * Math.exp(sigma * random.nextGaussian()));
+        }
+
+    }
+
+}
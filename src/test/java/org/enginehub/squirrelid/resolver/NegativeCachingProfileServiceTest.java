@@ -0,0 +1,110 @@
+/*
+ * SquirrelID, a UUID library for Minecraft
+ * Copyright (C) sk89q <http://www.sk89q.com>
+ * Copyright (C) SquirrelID team and contributors
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.enginehub.squirrelid.resolver;
+
+import com.google.common.collect.ImmutableList;
+import org.enginehub.squirrelid.Profile;
+import org.enginehub.squirrelid.util.FakeTicker;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+
+public class NegativeCachingProfileServiceTest {
+
+    private static final Profile NOTCH_PROFILE = new Profile(UUID.fromString("069a79f4-44e9-4726-a5be-fca90e38aaf5"), "Notch");
+
+    @Test
+    public void testMissAnsweredLocally() throws Exception {
+        RecordingService resolver = new RecordingService();
+        FakeTicker ticker = new FakeTicker();
+        NegativeCachingProfileService service = new NegativeCachingProfileService(resolver, 1, TimeUnit.MINUTES, 100, ticker);
+
+        assertThat(service.findByName("Nobody"), equalTo(null));
+        assertThat(service.findByName("NOBODY"), equalTo(null));
+        assertThat(service.findAllByName(ImmutableList.of("nobody", "Notch")), equalTo(ImmutableList.of(NOTCH_PROFILE)));
+        assertThat(resolver.requestedNames, equalTo(List.of("Nobody", "Notch")));
+        assertThat(service.isKnownMissing("Notch"), equalTo(false));
+
+        ticker.advance(1, TimeUnit.MINUTES);
+        assertThat(service.isKnownMissing("nobody"), equalTo(false));
+        assertThat(service.findByName("nobody"), equalTo(null));
+        assertThat(resolver.requestedNames, equalTo(List.of("Nobody", "Notch", "nobody")));
+    }
+
+    @Test
+    public void testPositiveResultInvalidatesMiss() throws Exception {
+        RecordingService resolver = new RecordingService();
+        NegativeCachingProfileService service = new NegativeCachingProfileService(resolver);
+        Profile profile = new Profile(UUID.randomUUID(), "Renamed");
+
+        assertThat(service.findByName("Renamed"), equalTo(null));
+        assertThat(service.isKnownMissing("renamed"), equalTo(true));
+
+        resolver.put(profile);
+        assertThat(service.findAllByUuid(ImmutableList.of(profile.getUniqueId())).size(), equalTo(1));
+        assertThat(service.isKnownMissing("renamed"), equalTo(false));
+        assertThat(service.findByName("Renamed"), equalTo(profile));
+
+        UUID unknown = UUID.randomUUID();
+        assertThat(service.findByUuid(unknown), equalTo(null));
+        assertThat(service.isKnownMissing(unknown), equalTo(true));
+        service.invalidateAll();
+        assertThat(service.isKnownMissing(unknown), equalTo(false));
+    }
+
+    @Test
+    public void testFailuresAreNotCached() throws Exception {
+        RecordingService resolver = new RecordingService();
+        NegativeCachingProfileService service = new NegativeCachingProfileService(resolver);
+
+        resolver.failing = true;
+        try {
+            service.findByName("Nobody");
+        } catch (IOException expected) {
+        }
+        assertThat(service.isKnownMissing("Nobody"), equalTo(false));
+    }
+
+    private static class RecordingService extends HashMapService {
+        private final List<String> requestedNames = new ArrayList<>();
+        private boolean failing;
+
+        RecordingService() {
+            put(NOTCH_PROFILE);
+        }
+
+        @Override
+        public Profile findByName(String name) throws IOException, InterruptedException {
+            if (failing) {
+                throw new IOException("Failed");
+            }
+            requestedNames.add(name);
+            return super.findByName(name);
+        }
+    }
+
+}
@@ -0,0 +1,90 @@
+/*
+ * SquirrelID, a UUID library for Minecraft
+ * Copyright (C) sk89q <http://www.sk89q.com>
+ * Copyright (C) SquirrelID team and contributors
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.enginehub.squirrelid.resolver;
+
+import com.google.common.collect.ImmutableList;
+import org.enginehub.squirrelid.Profile;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.equalTo;
+
+public class OfflineProfileServiceTest {
+
+    @Test
+    public void testFindByName() throws Exception {
+        OfflineProfileService service = new OfflineProfileService();
+        UUID expected = UUID.nameUUIDFromBytes("OfflinePlayer:Notch".getBytes(StandardCharsets.UTF_8));
+
+        assertThat(service.findByName("Notch"), equalTo(new Profile(expected, "Notch")));
+        assertThat(service.findAllByName(ImmutableList.of("Notch", "jeb_")).size(), equalTo(2));
+    }
+
+    @Test
+    public void testFindByUuidOnlyKnowsSeenNames() throws Exception {
+        OfflineProfileService service = new OfflineProfileService();
+        UUID uuid = service.put("Notch").getUniqueId();
+
+        assertThat(service.findByUuid(uuid), equalTo(new Profile(uuid, "Notch")));
+        assertThat(service.findByUuid(UUID.nameUUIDFromBytes("OfflinePlayer:jeb_".getBytes(StandardCharsets.UTF_8))), equalTo(null));
+    }
+
+    @Test
+    public void testRoutesOfflineUuidsAwayFromOnlineService() throws Exception {
+        OfflineProfileService offline = new OfflineProfileService();
+        Profile offlineProfile = offline.put("Notch");
+        Profile onlineProfile = new Profile(UUID.randomUUID(), "jeb_");
+        HashMapService online = new HashMapService();
+        online.put(onlineProfile);
+
+        List<UUID> onlineRequests = new ArrayList<>();
+        ProfileService recordingOnline = new SingleRequestService() {
+            @Override
+            public int getIdealRequestLimit() {
+                return online.getIdealRequestLimit();
+            }
+
+            @Override
+            public Profile findByName(String name) throws IOException, InterruptedException {
+                return online.findByName(name);
+            }
+
+            @Override
+            public Profile findByUuid(UUID uuid) throws IOException, InterruptedException {
+                onlineRequests.add(uuid);
+                return online.findByUuid(uuid);
+            }
+        };
+
+        UuidVersionRoutingService service = new UuidVersionRoutingService(offline, recordingOnline);
+        ImmutableList<Profile> results = service.findAllByUuid(ImmutableList.of(offlineProfile.getUniqueId(), onlineProfile.getUniqueId()));
+
+        assertThat(results, containsInAnyOrder(offlineProfile, onlineProfile));
+        assertThat(onlineRequests, equalTo(ImmutableList.of(onlineProfile.getUniqueId())));
+    }
+
+}
@@ -0,0 +1,82 @@
+/*
+ * SquirrelID, a UUID library for Minecraft
+ * Copyright (C) sk89q <http://www.sk89q.com>
+ * Copyright (C) SquirrelID team and contributors
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.enginehub.squirrelid.resolver;
+
+import org.enginehub.squirrelid.Profile;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the fixed thread pool and virtual thread modes of
+ * {@link ParallelProfileService} against a {@link MockProfileServer}.
+ *
+ * <p>Run the {@link #main(String[])} method from the test classpath.
+ * Arguments are the number of names, the latency of the mock server in
+ * milliseconds and the number of threads of the fixed pool.</p>
+ */
+public final class ParallelProfileServiceBenchmark {
+
+    private ParallelProfileServiceBenchmark() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        int nameCount = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+        long latency = args.length > 1 ? Long.parseLong(args[1]) : 50;
+        int numThreads = args.length > 2 ? Integer.parseInt(args[2]) : 8;
+
+        try (MockProfileServer server = new MockProfileServer()) {
+            server.setLatency(latency);
+
+            List<String> names = new ArrayList<>();
+            for (int i = 0; i < nameCount; i++) {
+                Profile profile = new Profile(UUID.randomUUID(), "player" + i);
+                server.register(profile);
+                names.add(profile.getName());
+            }
+
+            HttpRepositoryService resolver = server.createService();
+
+            try (ParallelProfileService service = new ParallelProfileService(resolver, numThreads)) {
+                run("fixed pool (" + numThreads + " threads)", service, names);
+            }
+
+            try (ParallelProfileService service = ParallelProfileService.withVirtualThreads(resolver)) {
+                run("virtual threads", service, names);
+            }
+        }
+    }
+
+    private static void run(String label, ProfileService service, List<String> names) throws Exception {
+        // Warm up connections and JIT before measuring
+        service.findAllByName(names.subList(0, Math.min(names.size(), 1000)));
+
+        long start = System.nanoTime();
+        int found = service.findAllByName(names).size();
+        long elapsed = System.nanoTime() - start;
+
+        System.out.printf("%-28s %8d names %8d found %8d ms %10.1f names/s%n",
+            label, names.size(), found, TimeUnit.NANOSECONDS.toMillis(elapsed),
+            names.size() / (elapsed / 1e9));
+    }
+
+}
@@ -0,0 +1,129 @@
+/*
+ * SquirrelID, a UUID library for Minecraft
+ * Copyright (C) sk89q <http://www.sk89q.com>
+ * Copyright (C) SquirrelID team and contributors
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.enginehub.squirrelid.resolver;
+
+import com.google.common.collect.ImmutableList;
+import org.enginehub.squirrelid.Profile;
+import org.hamcrest.Matchers;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.allOf;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.equalTo;
+
+public class ParallelProfileServiceTest {
+
+    @Test
+    public void testFindAllByNameWithVirtualThreads() throws Exception {
+        HashMapService resolver = new HashMapService();
+        List<String> names = new ArrayList<>();
+        List<Profile> profiles = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            Profile profile = new Profile(UUID.randomUUID(), "player" + i);
+            resolver.put(profile);
+            names.add(profile.getName());
+            profiles.add(profile);
+        }
+
+        try (ParallelProfileService service = ParallelProfileService.withVirtualThreads(resolver)) {
+            service.setProfilesPerJob(10);
+
+            assertThat(
+                service.findAllByName(names),
+                allOf(
+                    Matchers.<Profile>hasSize(1000),
+                    containsInAnyOrder(profiles.toArray(new Profile[0]))));
+        }
+    }
+
+    @Test
+    public void testNormalizesNamesBeforePartitioning() throws Exception {
+        Profile notch = new Profile(UUID.randomUUID(), "Notch");
+        List<String> requested = Collections.synchronizedList(new ArrayList<>());
+        HashMapService resolver = new HashMapService() {
+            @Override
+            public Profile findByName(String name) throws IOException, InterruptedException {
+                requested.add(name);
+                return super.findByName(name);
+            }
+        };
+        resolver.put(notch);
+
+        try (ParallelProfileService service = new ParallelProfileService(resolver, 2)) {
+            service.setProfilesPerJob(1);
+
+            List<String> names = ImmutableList.of("Notch", "notch", "not valid", "nobody", "NOTCH");
+            assertThat(service.findAllByName(names), Matchers.<Profile>hasSize(3));
+            assertThat(requested, containsInAnyOrder("Notch", "nobody"));
+
+            List<Profile> consumed = Collections.synchronizedList(new ArrayList<>());
+            service.findAllByName(names, consumed::add);
+            assertThat(consumed, Matchers.<Profile>hasSize(3));
+        }
+    }
+
+    @Test
+    public void testFailureCancelsRemainingJobs() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch cancelled = new CountDownLatch(1);
+        ProfileService resolver = new HashMapService() {
+            @Override
+            public Profile findByName(String name) throws IOException, InterruptedException {
+                if (name.equals("broken")) {
+                    // Only fail once the slow job is running, so that it has to be interrupted
+                    started.await();
+                    throw new IOException("Simulated failure");
+                }
+                started.countDown();
+                try {
+                    Thread.sleep(TimeUnit.MINUTES.toMillis(1));
+                } catch (InterruptedException e) {
+                    cancelled.countDown();
+                    throw e;
+                }
+                return null;
+            }
+        };
+
+        try (ParallelProfileService service = new ParallelProfileService(resolver, 2)) {
+            service.setProfilesPerJob(1);
+
+            IOException thrown = null;
+            try {
+                service.findAllByName(ImmutableList.of("slow", "broken"));
+            } catch (IOException e) {
+                thrown = e;
+            }
+
+            assertThat(thrown != null, equalTo(true));
+            assertThat(cancelled.await(10, TimeUnit.SECONDS), equalTo(true));
+        }
+    }
+
+}
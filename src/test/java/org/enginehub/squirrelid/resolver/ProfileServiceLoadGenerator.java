@@ -0,0 +1,207 @@
+/*
+ * SquirrelID, a UUID library for Minecraft
+ * Copyright (C) sk89q <http://www.sk89q.com>
+ * Copyright (C) SquirrelID team and contributors
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.enginehub.squirrelid.resolver;
+
+import org.enginehub.squirrelid.Profile;
+import org.enginehub.squirrelid.cache.HashMapCache;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Drives {@link HttpRepositoryService}, {@link ParallelProfileService} and
+ * {@link CacheForwardingService} against a {@link MockProfileServer} at
+ * several concurrency levels, and reports throughput and latency
+ * percentiles. Calls that fail count towards both, and are also
+ * reported as errors.
+ *
+ * <p>Run the {@link #main(String[])} method from the test classpath.
+ * Arguments are the duration of each run in seconds, a comma separated
+ * list of concurrency levels, the median latency of the mock server in
+ * milliseconds, the share of requests that fail with 500 and the share of
+ * requests that are rejected with 429.</p>
+ */
+public final class ProfileServiceLoadGenerator {
+
+    private static final int NAME_COUNT = 10000;
+    private static final Logger resolverLog = Logger.getLogger(HttpRepositoryService.class.getCanonicalName());
+
+    private ProfileServiceLoadGenerator() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        long duration = args.length > 0 ? Long.parseLong(args[0]) : 10;
+        int[] concurrencyLevels = args.length > 1
+            ? Arrays.stream(args[1].split(",")).mapToInt(Integer::parseInt).toArray()
+            : new int[] { 1, 8, 32 };
+        long latency = args.length > 2 ? Long.parseLong(args[2]) : 20;
+        double errorRate = args.length > 3 ? Double.parseDouble(args[3]) : 0.01;
+        double rateLimitRate = args.length > 4 ? Double.parseDouble(args[4]) : 0.001;
+
+        // Injected failures are expected, so don't log every retry
+        resolverLog.setLevel(Level.SEVERE);
+
+        try (MockProfileServer server = new MockProfileServer()) {
+            server.setLatency(MockProfileServer.LatencyDistribution.logNormal(latency, 0.5));
+            server.setErrorRate(errorRate, 500);
+            server.setRateLimitRate(rateLimitRate, "1");
+
+            List<String> names = new ArrayList<>();
+            List<UUID> uuids = new ArrayList<>();
+            for (int i = 0; i < NAME_COUNT; i++) {
+                Profile profile = new Profile(UUID.randomUUID(), "player" + i);
+                server.register(profile);
+                names.add(profile.getName());
+                uuids.add(profile.getUniqueId());
+            }
+
+            HttpRepositoryService resolver = server.createService();
+            CacheForwardingService cached = new CacheForwardingService(resolver, new HashMapCache());
+
+            System.out.printf("%-32s %6s %10s %8s %10s %10s %10s %10s%n",
+                "scenario", "conc", "ops", "errors", "ops/s", "p50 ms", "p99 ms", "p999 ms");
+
+            try (ParallelProfileService parallel = new ParallelProfileService(resolver, 8)) {
+                for (int concurrency : concurrencyLevels) {
+                    run("http findByName", concurrency, duration,
+                        random -> resolver.findByName(pick(names, random)));
+                    run("http findAllByName x100", concurrency, duration,
+                        random -> resolver.findAllByName(sample(names, 100, random)));
+                    run("http findAllByUuid x10", concurrency, duration,
+                        random -> resolver.findAllByUuid(sample(uuids, 10, random)));
+                    run("parallel findAllByName x1000", concurrency, duration,
+                        random -> parallel.findAllByName(sample(names, 1000, random)));
+                    run("cache findByName", concurrency, duration,
+                        random -> cached.findByName(pick(names, random)));
+                    run("cache findByUuid", concurrency, duration,
+                        random -> cached.findByUuid(pick(uuids, random)));
+                }
+            }
+        }
+    }
+
+    private static void run(String label, int concurrency, long duration, Operation operation) throws InterruptedException {
+        // Warm up connections and JIT before measuring
+        load(concurrency, TimeUnit.SECONDS.toNanos(1), operation);
+
+        Worker[] workers = load(concurrency, TimeUnit.SECONDS.toNanos(duration), operation);
+
+        long[] latencies = new long[Arrays.stream(workers).mapToInt(worker -> worker.count).sum()];
+        int errors = 0;
+        int offset = 0;
+        for (Worker worker : workers) {
+            System.arraycopy(worker.latencies, 0, latencies, offset, worker.count);
+            offset += worker.count;
+            errors += worker.errors;
+        }
+        Arrays.sort(latencies);
+
+        System.out.printf("%-32s %6d %10d %8d %10.1f %10.2f %10.2f %10.2f%n",
+            label, concurrency, latencies.length, errors, latencies.length / (double) duration,
+            percentile(latencies, 0.5), percentile(latencies, 0.99), percentile(latencies, 0.999));
+    }
+
+    private static Worker[] load(int concurrency, long durationNanos, Operation operation) throws InterruptedException {
+        long deadline = System.nanoTime() + durationNanos;
+        Worker[] workers = new Worker[concurrency];
+        Thread[] threads = new Thread[concurrency];
+        for (int i = 0; i < concurrency; i++) {
+            workers[i] = new Worker(operation, deadline);
+            threads[i] = new Thread(workers[i], "load-generator-" + i);
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        return workers;
+    }
+
+    private static double percentile(long[] sorted, double percentile) {
+        if (sorted.length == 0) {
+            return Double.NaN;
+        }
+        int index = (int) Math.ceil(percentile * sorted.length) - 1;
+        return sorted[Math.max(0, index)] / 1e6;
+    }
+
+    private static <T> T pick(List<T> values, Random random) {
+        return values.get(random.nextInt(values.size()));
+    }
+
+    private static <T> List<T> sample(List<T> values, int count, Random random) {
+        List<T> sample = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            sample.add(pick(values, random));
+        }
+        return sample;
+    }
+
+    @FunctionalInterface
+    private interface Operation {
+        void run(Random random) throws IOException, InterruptedException;
+    }
+
+    /**
+     * Calls an operation in a loop until the deadline, recording the time
+     * each call took, whether or not it failed.
+     */
+    private static final class Worker implements Runnable {
+        private final Operation operation;
+        private final long deadline;
+        private long[] latencies = new long[1024];
+        private int count;
+        private int errors;
+
+        private Worker(Operation operation, long deadline) {
+            this.operation = operation;
+            this.deadline = deadline;
+        }
+
+        @Override
+        public void run() {
+            Random random = ThreadLocalRandom.current();
+            long start;
+            while ((start = System.nanoTime()) < deadline) {
+                try {
+                    operation.run(random);
+                } catch (IOException e) {
+                    // Failed calls are timed too, as they often take longest
+                    errors++;
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                if (count == latencies.length) {
+                    latencies = Arrays.copyOf(latencies, count * 2);
+                }
+                latencies[count++] = System.nanoTime() - start;
+            }
+        }
+    }
+
+}
@@ -0,0 +1,163 @@
+/*
+ * SquirrelID, a UUID library for Minecraft
+ * Copyright (C) sk89q <http://www.sk89q.com>
+ * Copyright (C) SquirrelID team and contributors
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.enginehub.squirrelid.resolver;
+
+import com.google.common.collect.ImmutableList;
+import org.enginehub.squirrelid.Profile;
+import org.hamcrest.Matchers;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.allOf;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.equalTo;
+
+public class SingleFlightProfileServiceTest {
+
+    private static final UUID NOTCH_UUID = UUID.fromString("069a79f4-44e9-4726-a5be-fca90e38aaf5");
+    private static final UUID JEB_UUID = UUID.fromString("853c80ef-3c37-49fd-aa49-938b674adae6");
+    private static final Profile NOTCH_PROFILE = new Profile(NOTCH_UUID, "Notch");
+    private static final Profile JEB_PROFILE = new Profile(JEB_UUID, "jeb_");
+
+    @Test
+    public void testConcurrentFindByName() throws Exception {
+        CountingService resolver = new CountingService();
+        SingleFlightProfileService service = new SingleFlightProfileService(resolver);
+
+        ExecutorService executor = Executors.newFixedThreadPool(30);
+        try {
+            List<Future<Profile>> futures = new ArrayList<>();
+            for (int i = 0; i < 30; i++) {
+                String name = i % 2 == 0 ? "Notch" : "NOTCH";
+                futures.add(executor.submit(() -> service.findByName(name)));
+            }
+
+            assertThat(resolver.started.await(10, TimeUnit.SECONDS), equalTo(true));
+            awaitJoined(service, 29);
+            resolver.release.countDown();
+
+            for (Future<Profile> future : futures) {
+                assertThat(future.get(10, TimeUnit.SECONDS), equalTo(NOTCH_PROFILE));
+            }
+            assertThat(resolver.lookedUpNames, Matchers.hasSize(1));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testOverlappingBatches() throws Exception {
+        CountingService resolver = new CountingService();
+        SingleFlightProfileService service = new SingleFlightProfileService(resolver);
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<ImmutableList<Profile>> first = executor.submit(() -> service.findAllByName(Arrays.asList("Notch", "nobody")));
+            assertThat(resolver.started.await(10, TimeUnit.SECONDS), equalTo(true));
+            Future<ImmutableList<Profile>> second = executor.submit(() -> service.findAllByName(Arrays.asList("notch", "jeb_")));
+            awaitJoined(service, 1);
+            resolver.release.countDown();
+
+            assertThat(
+                first.get(10, TimeUnit.SECONDS),
+                allOf(
+                    Matchers.<Profile>hasSize(1),
+                    containsInAnyOrder(NOTCH_PROFILE)));
+
+            assertThat(
+                second.get(10, TimeUnit.SECONDS),
+                allOf(
+                    Matchers.<Profile>hasSize(2),
+                    containsInAnyOrder(NOTCH_PROFILE, JEB_PROFILE)));
+
+            assertThat(resolver.lookedUpNames, containsInAnyOrder("Notch", "nobody", "jeb_"));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testFailureIsShared() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        ProfileService resolver = new HashMapService() {
+            @Override
+            public Profile findByUuid(UUID uuid) throws IOException {
+                calls.incrementAndGet();
+                throw new IOException("Simulated failure");
+            }
+        };
+        SingleFlightProfileService service = new SingleFlightProfileService(resolver);
+
+        IOException thrown = null;
+        try {
+            service.findByUuid(NOTCH_UUID);
+        } catch (IOException e) {
+            thrown = e;
+        }
+
+        assertThat(thrown != null, equalTo(true));
+        assertThat(calls.get(), equalTo(1));
+    }
+
+    private static void awaitJoined(SingleFlightProfileService service, long count) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (service.getJoinedCount() < count) {
+            assertThat(System.nanoTime() < deadline, equalTo(true));
+            Thread.sleep(1);
+        }
+    }
+
+    /**
+     * Blocks the first lookup until released and records every name looked up.
+     */
+    private static class CountingService extends HashMapService {
+        private final CountDownLatch started = new CountDownLatch(1);
+        private final CountDownLatch release = new CountDownLatch(1);
+        private final List<String> lookedUpNames = new CopyOnWriteArrayList<>();
+
+        CountingService() {
+            put(NOTCH_PROFILE);
+            put(JEB_PROFILE);
+        }
+
+        @Override
+        public Profile findByName(String name) throws IOException, InterruptedException {
+            lookedUpNames.add(name);
+            started.countDown();
+            release.await();
+            Profile profile = super.findByName(name);
+            return profile != null && profile.getUniqueId().equals(NOTCH_UUID) ? NOTCH_PROFILE : profile;
+        }
+    }
+
+}
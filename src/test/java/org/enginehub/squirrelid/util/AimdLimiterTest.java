@@ -0,0 +1,115 @@
+/*
+ * SquirrelID, a UUID library for Minecraft
+ * Copyright (C) sk89q <http://www.sk89q.com>
+ * Copyright (C) SquirrelID team and contributors
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.enginehub.squirrelid.util;
+
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class AimdLimiterTest {
+
+    @Test
+    public void testAdditiveIncrease() throws Exception {
+        FakeTicker ticker = new FakeTicker();
+        AimdLimiter limiter = new AimdLimiter(2, 1, 3, ticker);
+
+        for (int i = 0; i < 10; i++) {
+            complete(limiter, ticker, 10).success();
+        }
+
+        assertThat(limiter.getLimit(), equalTo(3));
+        assertThat(limiter.getInFlight(), equalTo(0));
+        assertThat(limiter.getAverageLatency(), equalTo(Duration.ofMillis(10)));
+    }
+
+    @Test
+    public void testMultiplicativeDecrease() throws Exception {
+        FakeTicker ticker = new FakeTicker();
+        AimdLimiter limiter = new AimdLimiter(16, 1, 16, ticker);
+
+        AimdLimiter.Permit first = limiter.acquire();
+        AimdLimiter.Permit second = limiter.acquire();
+        ticker.advance(10, TimeUnit.MILLISECONDS);
+        first.dropped();
+        assertThat(limiter.getLimit(), equalTo(8));
+
+        // Started before the limit was cut, so it does not cut it again
+        second.dropped();
+        assertThat(limiter.getLimit(), equalTo(8));
+
+        ticker.advance(1, TimeUnit.MILLISECONDS);
+        complete(limiter, ticker, 10).dropped();
+        assertThat(limiter.getLimit(), equalTo(4));
+
+        complete(limiter, ticker, 10).ignore();
+        assertThat(limiter.getLimit(), equalTo(4));
+    }
+
+    @Test
+    public void testLatencySpike() throws Exception {
+        FakeTicker ticker = new FakeTicker();
+        AimdLimiter limiter = new AimdLimiter(10, 1, 10, ticker);
+
+        complete(limiter, ticker, 10).success();
+        assertThat(limiter.getLimit(), equalTo(10));
+        complete(limiter, ticker, 100).success();
+        assertThat(limiter.getLimit(), equalTo(5));
+    }
+
+    @Test
+    public void testAcquireWaitsForLimit() throws Exception {
+        AimdLimiter limiter = new AimdLimiter(1, 1, 1);
+        AimdLimiter.Permit permit = limiter.acquire();
+        CountDownLatch acquired = new CountDownLatch(1);
+
+        Thread thread = new Thread(() -> {
+            try {
+                limiter.acquire().ignore();
+                acquired.countDown();
+            } catch (InterruptedException ignored) {
+            }
+        });
+        thread.start();
+
+        assertThat(acquired.await(100, TimeUnit.MILLISECONDS), equalTo(false));
+        permit.ignore();
+        assertThat(acquired.await(5, TimeUnit.SECONDS), equalTo(true));
+        thread.join();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testPermitCompletedTwice() throws Exception {
+        AimdLimiter.Permit permit = new AimdLimiter(1, 1, 1).acquire();
+        permit.success();
+        permit.success();
+    }
+
+    private static AimdLimiter.Permit complete(AimdLimiter limiter, FakeTicker ticker, long latency) throws InterruptedException {
+        AimdLimiter.Permit permit = limiter.acquire();
+        ticker.advance(latency, TimeUnit.MILLISECONDS);
+        return permit;
+    }
+
+}
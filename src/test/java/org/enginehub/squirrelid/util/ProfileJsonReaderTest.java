@@ -0,0 +1,97 @@
+/*
+ * SquirrelID, a UUID library for Minecraft
+ * Copyright (C) sk89q <http://www.sk89q.com>
+ * Copyright (C) SquirrelID team and contributors
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.enginehub.squirrelid.util;
+
+import org.enginehub.squirrelid.Profile;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class ProfileJsonReaderTest {
+
+    private static final Profile NOTCH = new Profile(UUID.fromString("069a79f4-44e9-4726-a5be-fca90e38aaf5"), "Notch");
+    private static final Profile JEB = new Profile(UUID.fromString("853c80ef-3c37-49fd-aa49-938b674adae6"), "jeb_");
+
+    @Test
+    public void testReadArray() throws Exception {
+        assertThat(read("[{\"id\":\"069a79f444e94726a5befca90e38aaf5\",\"name\":\"Notch\"},"
+            + " {\"name\" : \"jeb_\", \"legacy\": true, \"extra\": {\"a\": [1, 2.5e3, null, \"]}\"]},"
+            + " \"id\": \"853c80ef3c3749fdaa49938b674adae6\"}]"), equalTo(List.of(NOTCH, JEB)));
+    }
+
+    @Test
+    public void testReadObject() throws Exception {
+        assertThat(read("{\"id\":\"069a79f444e94726a5befca90e38aaf5\",\"name\":\"Notch\",\"properties\":[{\"name\":\"textures\",\"value\":\"e30=\"}]}"),
+            equalTo(List.of(NOTCH)));
+        assertThat(ProfileJsonReader.readName(stream("{\"properties\":[{\"name\":\"textures\"}],\"name\":\"N\\u006ftch\\n\"}")),
+            equalTo("Notch\n"));
+    }
+
+    @Test
+    public void testSkipsIncompleteEntries() throws Exception {
+        assertThat(read(""), equalTo(List.of()));
+        assertThat(read("[]"), equalTo(List.of()));
+        assertThat(read("{\"error\":\"BadRequestException\",\"errorMessage\":\"Invalid payload.\"}"), equalTo(List.of()));
+        assertThat(read("[{\"id\":\"not a uuid\",\"name\":\"Notch\"}, {\"id\": 5, \"name\": \"jeb_\"}, 7]"), equalTo(List.of()));
+    }
+
+    @Test
+    public void testReadsAcrossBuffers() throws Exception {
+        StringBuilder json = new StringBuilder("[");
+        List<Profile> expected = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            Profile profile = new Profile(UUID.randomUUID(), "Player" + i);
+            expected.add(profile);
+            if (i > 0) {
+                json.append(",");
+            }
+            json.append("{\"id\":\"").append(UUIDs.stripDashes(profile.getUniqueId().toString()))
+                .append("\",\"name\":\"").append(profile.getName()).append("\"}");
+        }
+        json.append("]");
+
+        assertThat(read(json.toString()), equalTo(expected));
+    }
+
+    @Test(expected = IOException.class)
+    public void testMalformed() throws Exception {
+        read("[{\"id\":\"069a79f444e94726a5befca90e38aaf5\",\"name\":\"Notch\"");
+    }
+
+    private static List<Profile> read(String json) throws IOException {
+        List<Profile> profiles = new ArrayList<>();
+        ProfileJsonReader.readProfiles(stream(json), profiles::add);
+        return profiles;
+    }
+
+    private static InputStream stream(String json) {
+        return new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8));
+    }
+
+}
@@ -0,0 +1,83 @@
+/*
+ * SquirrelID, a UUID library for Minecraft
+ * Copyright (C) sk89q <http://www.sk89q.com>
+ * Copyright (C) SquirrelID team and contributors
+ *
+ * This program is free software: you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as published by the
+ * Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General Public License
+ * for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.enginehub.squirrelid.util;
+
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class TokenBucketTest {
+
+    @Test
+    public void testBurstThenRate() {
+        FakeTicker ticker = new FakeTicker();
+        TokenBucket bucket = new TokenBucket(2, 10, ticker);
+
+        assertThat(bucket.reserve(), equalTo(0L));
+        assertThat(bucket.reserve(), equalTo(0L));
+        assertThat(bucket.reserve(), equalTo(TimeUnit.MILLISECONDS.toNanos(100)));
+        assertThat(bucket.reserve(), equalTo(TimeUnit.MILLISECONDS.toNanos(200)));
+        assertThat(bucket.getAvailableTokens(), equalTo(0.0));
+
+        ticker.advance(1, TimeUnit.SECONDS);
+        assertThat(bucket.getAvailableTokens(), equalTo(2.0));
+    }
+
+    @Test
+    public void testPause() {
+        FakeTicker ticker = new FakeTicker();
+        TokenBucket bucket = new TokenBucket(5, 10, ticker);
+
+        bucket.pause(Duration.ofSeconds(2));
+        assertThat(bucket.getAvailableTokens(), equalTo(0.0));
+        assertThat(bucket.getRemainingPause(), equalTo(Duration.ofSeconds(2)));
+        assertThat(bucket.reserve(), equalTo(TimeUnit.MILLISECONDS.toNanos(2100)));
+
+        ticker.advance(2, TimeUnit.SECONDS);
+        assertThat(bucket.getRemainingPause(), equalTo(Duration.ZERO));
+        assertThat(bucket.reserve(), equalTo(TimeUnit.MILLISECONDS.toNanos(200)));
+    }
+
+    @Test
+    public void testReservationsDuringPauseAreSpacedAfterIt() {
+        FakeTicker ticker = new FakeTicker();
+        TokenBucket bucket = new TokenBucket(5, 10, ticker);
+
+        bucket.pause(Duration.ofSeconds(1));
+        ticker.advance(500, TimeUnit.MILLISECONDS);
+        for (int i = 1; i <= 5; i++) {
+            assertThat(bucket.reserve(), equalTo(TimeUnit.MILLISECONDS.toNanos(500 + 100 * i)));
+        }
+    }
+
+    @Test
+    public void testUnlimited() {
+        TokenBucket bucket = TokenBucket.unlimited();
+
+        for (int i = 0; i < 1000; i++) {
+            assertThat(bucket.reserve(), equalTo(0L));
+        }
+    }
+
+}
@@ -21,6 +21,9 @@ package org.enginehub.squirrelid.util;
 
 import org.junit.Test;
 
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+
 import static org.hamcrest.CoreMatchers.equalTo;
 import static org.hamcrest.MatcherAssert.assertThat;
 
@@ -38,4 +41,26 @@ public class UUIDsTest {
         assertThat(UUIDs.stripDashes("a8fb55e584384bbc8d08633cce6078f8"), equalTo("a8fb55e584384bbc8d08633cce6078f8"));
     }
 
-}
\ No newline at end of file
+    @Test
+    public void testForOfflinePlayer() throws Exception {
+        for (String name : new String[] { "Notch", "notch", "", "a_name_much_longer_than_sixteen_characters_and_the_initial_buffer_size", "\u00dcn\u00efc\u00f6d\u00e9" }) {
+            UUID expected = UUID.nameUUIDFromBytes(("OfflinePlayer:" + name).getBytes(StandardCharsets.UTF_8));
+            assertThat(UUIDs.forOfflinePlayer(name), equalTo(expected));
+            assertThat(UUIDs.forOfflinePlayer(name).version(), equalTo(3));
+        }
+    }
+
+    @Test
+    public void testBytes() throws Exception {
+        UUID uuid = UUID.fromString("069a79f4-44e9-4726-a5be-fca90e38aaf5");
+        byte[] bytes = UUIDs.toBytes(uuid);
+        assertThat(bytes.length, equalTo(16));
+        assertThat(bytes[0], equalTo((byte) 0x06));
+        assertThat(bytes[15], equalTo((byte) 0xf5));
+        assertThat(UUIDs.fromBytes(bytes), equalTo(uuid));
+
+        UUID random = UUID.randomUUID();
+        assertThat(UUIDs.fromBytes(UUIDs.toBytes(random)), equalTo(random));
+    }
+
+}